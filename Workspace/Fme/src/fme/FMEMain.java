@@ -17,6 +17,8 @@ import fme.config.CM;
 import fme.gui.MainFrame;
 import fme.logging.DefaultHandler;
 import fme.logging.FMELogger;
+import fme.wsl.lexer.LexerAutomaton;
+import fme.wsl.lexer.WSLLexer;
 import fme.wsl.tables.LexerRuleTable;
 import fme.wsl.tables.LexerTokenTable;
 import fme.wsl.tables.WSLTreeGrammarTable;
@@ -95,6 +97,10 @@ public class FMEMain {
 		WSLTreeGrammarTable.parseWSLGrammer();
 		LexerRuleTable.parseLexerTable();
 		LexerTokenTable.parseLexerTable();
+		LexerAutomaton.compile();
+		WSLLexer.setParallel(CM.getAsString("fme.wsl.lexer.WSLLexer")
+				.equalsIgnoreCase("parallel"), CM
+				.getAsInt("fme.wsl.lexer.WSLLexer.ChunkSize"));
 
 		// Show the main frame (start the FME)
 		MainFrame.getMainFrame().setVisible(true);
@@ -28,6 +28,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import fme.components.catalogue.ApplicabilityCache;
 import fme.components.console.Console;
 import fme.config.CM;
 import fme.gui.MainFrame;
@@ -188,6 +189,9 @@ public class ProjectManager {
 		title.setText("Project: " + name + " ");
 		title.revalidate();
 
+		// Restore the applicability tests of the last session
+		ApplicabilityCache.getInstance().load();
+
 		if (currentFile != null && currentFile.exists()) {
 			Console.getInstance().loadFile(currentFile);
 		} else {
@@ -218,6 +222,11 @@ public class ProjectManager {
 		if (choice == 0)
 			saveProjectFile();
 
+		// Keep the applicability tests for the next session
+		if (prjFile != null)
+			ApplicabilityCache.getInstance().save();
+		ApplicabilityCache.getInstance().clear();
+
 		name = "-";
 		files = new Vector<File>();
 
@@ -28,7 +28,6 @@ import fme.components.tree.TreeGUI;
 import fme.config.CM;
 import fme.wsl.ast.AST;
 import fme.wsl.ast.ASTNode;
-import fme.wsl.ast.ASTNodePreOrderTreeIterator;
 
 /**
  * This class is to show a call graph for an WSL Action System
@@ -72,6 +71,7 @@ public class ActionSystemCallGraph {
         boolean ret = false;
         String action, target;
         ASTNode node;
+        Iterator<ASTNode> ti;
         CollapsableTextNode tn;
         HashMap<String, CollapsableTextNode> actions = new HashMap<String, CollapsableTextNode>();
         HashMap<String, Integer> actionsIN = new HashMap<String, Integer>();
@@ -111,9 +111,6 @@ public class ActionSystemCallGraph {
         // Initialise the graph
         main.initGraph(directedGraph);
 
-        ASTNodePreOrderTreeIterator ti = new ASTNodePreOrderTreeIterator(AST
-                .getAST());
-
         // The node to start an action system
         tn = addTextNode(directedGraph, "(Start)", TextNode.RectangularShape);
         actions.put("(Start)", tn);
@@ -125,13 +122,16 @@ public class ActionSystemCallGraph {
         actionsOUT.put("Z", new Integer(0));
         actionsVAR.put("Z", new HashSet<String>());
 
+        // Only the actions and variables are visited (in pre-order)
         action = null;
+        ti = AST.nodesOfType("T_Action", "T_Var_Lvalue", "T_Variable")
+                .iterator();
         while (ti.hasNext()) {
             node = ti.next();
 
             // Create Node
             if (node.getSpecificType().equals("T_Action")) {
-                action = node.getChildren().get(0).getValue();
+                action = node.getChildAt(0).getValue();
                 tn = addTextNode(directedGraph, action,
                         TextNode.RectangularShape);
                 actions.put(action, tn);
@@ -149,15 +149,15 @@ public class ActionSystemCallGraph {
             }
         }
 
-        ti.renew();
-
+        // Only the actions and calls are visited (in pre-order)
         action = null;
+        ti = AST.nodesOfType("T_Action", "T_Call", "T_A_S").iterator();
         while (ti.hasNext()) {
             node = ti.next();
 
             // Get the source node
             if (node.getSpecificType().equals("T_Action")) {
-                action = node.getChildren().get(0).getValue();
+                action = node.getChildAt(0).getValue();
             }
 
             // Create edge
@@ -173,7 +173,7 @@ public class ActionSystemCallGraph {
 
             // Create first edge
             if (node.getSpecificType().equals("T_A_S")) {
-                action = node.getChildren().get(0).getValue();
+                action = node.getChildAt(0).getValue();
                 addDirectedEdge(directedGraph, "", actions.get("(Start)"),
                         actions.get(action));
                 ret = true;
@@ -0,0 +1,410 @@
+/**
+ * Project: fme
+ */
+
+package fme.components.catalogue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fme.components.ProjectManager;
+import fme.wsl.ast.ASTNode;
+
+/**
+ * This class remembers the results of applicability tests of
+ * transformations. A transformation is tested at a position in the whole
+ * program and many transformations depend on the nodes around the tested
+ * item (e.g. its neighbours and its parent), so a result is stored under the
+ * structural hash of the whole program and the row of the tested node. It
+ * stays valid when the same version of the program is loaded again. The
+ * least recently used results are dropped if the cache is full. The cache is
+ * saved in the project directory together with a fingerprint of the
+ * transformation catalogue and the tree grammar; a saved cache of another
+ * catalogue or grammar is discarded.
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ApplicabilityCache {
+
+	/**
+	 * The file of the cache (relative to the project)
+	 */
+	private static String defaultCacheFile = ".fme/applicability";
+
+	/**
+	 * Magic number of a cache file ("FMEC")
+	 */
+	private static final int MAGIC = 0x464D4543;
+
+	/**
+	 * Version of the file format
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * The files which define the transformations and the syntax names (a
+	 * new engine comes with a new transformation table)
+	 */
+	private static String[] fingerprintFiles = {
+			"engine/wsl_trans/transformation_table.xml",
+			"engine/wsl_def/tree_grammar.xml" };
+
+	/**
+	 * The only instance of this class (singleton design pattern)
+	 */
+	private static ApplicabilityCache singleton = new ApplicabilityCache(4096);
+
+	/**
+	 * The results (via the hash of the program, the row of the node, the
+	 * transformation and the argument) in the order of their last use
+	 */
+	private LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * The fingerprint of the catalogue and the grammar
+	 */
+	private byte[] fingerprint;
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param maxEntries
+	 *            The maximal number of results
+	 */
+	public ApplicabilityCache(int maxEntries) {
+		this(maxEntries, getFingerprint());
+	}
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param maxEntries
+	 *            The maximal number of results
+	 * @param fingerprint
+	 *            The fingerprint of the transformations (a saved cache with
+	 *            another fingerprint isn't loaded)
+	 */
+	public ApplicabilityCache(final int maxEntries, byte[] fingerprint) {
+		this.fingerprint = fingerprint;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get the cache of the session
+	 * 
+	 * @return The only instance of this class
+	 */
+	public static ApplicabilityCache getInstance() {
+		return singleton;
+	}
+
+	/**
+	 * Get the result of an applicability test
+	 * 
+	 * @param node
+	 *            The tested node
+	 * @param trans
+	 *            The engine name of the transformation
+	 * @param argument
+	 *            The argument of the transformation
+	 * @return The result or null if the test wasn't done yet
+	 */
+	public synchronized Entry get(ASTNode node, String trans, String argument) {
+		return entries.get(getKey(node, trans, argument));
+	}
+
+	/**
+	 * Store the result of an applicability test
+	 * 
+	 * @param node
+	 *            The tested node
+	 * @param trans
+	 *            The engine name of the transformation
+	 * @param argument
+	 *            The argument of the transformation
+	 * @param applicable
+	 *            True if the transformation can be applied
+	 * @param message
+	 *            The message of the engine if the transformation can't be
+	 *            applied
+	 */
+	public synchronized void put(ASTNode node, String trans, String argument,
+			boolean applicable, String message) {
+		entries.put(getKey(node, trans, argument), new Entry(applicable,
+				message == null ? "" : message, null));
+	}
+
+	/**
+	 * Get the applicable transformations of a node
+	 * 
+	 * @param node
+	 *            The tested node
+	 * @return The indices of the applicable transformations in the catalogue
+	 *         or null if the test wasn't done yet
+	 */
+	public synchronized int[] getApplicable(ASTNode node) {
+		Entry e = entries.get(getKey(node, "*", ""));
+		return e == null ? null : e.transformations.clone();
+	}
+
+	/**
+	 * Store the applicable transformations of a node
+	 * 
+	 * @param node
+	 *            The tested node
+	 * @param transformations
+	 *            The indices of the applicable transformations in the
+	 *            catalogue
+	 */
+	public synchronized void putApplicable(ASTNode node, int[] transformations) {
+		entries.put(getKey(node, "*", ""), new Entry(true, "", transformations
+				.clone()));
+	}
+
+	/**
+	 * Get the number of results
+	 * 
+	 * @return The number of results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Remove all results
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Replace the results with those saved in the current project
+	 */
+	public void load() {
+		load(new File(ProjectManager.relativeToAbsolute(defaultCacheFile)));
+	}
+
+	/**
+	 * Save the results in the current project
+	 */
+	public void save() {
+		save(new File(ProjectManager.relativeToAbsolute(defaultCacheFile)));
+	}
+
+	/**
+	 * Replace the results with those of a cache file
+	 * 
+	 * @param file
+	 *            The cache file
+	 */
+	public synchronized void load(File file) {
+		DataInputStream in = null;
+		int size, count;
+		String key;
+		boolean applicable;
+		String message;
+		int[] transformations;
+		byte[] b;
+
+		entries.clear();
+		if (!file.exists())
+			return;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a cache file");
+			b = new byte[in.readInt()];
+			in.readFully(b);
+			if (!Arrays.equals(b, fingerprint)) {
+				Logger.getLogger(ApplicabilityCache.class.getCanonicalName())
+						.log(Level.INFO,
+								"Discarding applicability cache " + file
+										+ " of other transformations");
+				return;
+			}
+			size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				key = in.readUTF();
+				applicable = in.readBoolean();
+				message = in.readUTF();
+				count = in.readInt();
+				transformations = count < 0 ? null : new int[count];
+				for (int j = 0; j < count; j++)
+					transformations[j] = in.readInt();
+				entries.put(key, new Entry(applicable, message,
+						transformations));
+			}
+		} catch (IOException e) {
+			Logger.getLogger(ApplicabilityCache.class.getCanonicalName()).log(
+					Level.WARNING, "Can't read applicability cache " + file
+							+ ": " + e);
+			entries.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save the results in a cache file
+	 * 
+	 * @param file
+	 *            The cache file
+	 */
+	public synchronized void save(File file) {
+		DataOutputStream out = null;
+		Iterator<Map.Entry<String, Entry>> i;
+		Map.Entry<String, Entry> e;
+		File tmp = null;
+		int[] t;
+
+		// Write a temporary file first so that a broken write never
+		// replaces the old file
+		try {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			tmp = File.createTempFile("applicability", ".tmp", file
+					.getAbsoluteFile().getParentFile());
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(fingerprint.length);
+			out.write(fingerprint);
+			out.writeInt(entries.size());
+
+			// The least recently used results come first
+			i = entries.entrySet().iterator();
+			while (i.hasNext()) {
+				e = i.next();
+				t = e.getValue().transformations;
+				out.writeUTF(e.getKey());
+				out.writeBoolean(e.getValue().applicable);
+				out.writeUTF(e.getValue().message);
+				out.writeInt(t == null ? -1 : t.length);
+				for (int j = 0; t != null && j < t.length; j++)
+					out.writeInt(t[j]);
+			}
+			out.close();
+			out = null;
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+		} catch (IOException ex) {
+			Logger.getLogger(ApplicabilityCache.class.getCanonicalName()).log(
+					Level.WARNING, "Can't write applicability cache " + file
+							+ ": " + ex);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ex) {
+				}
+			}
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	// Internal Methods
+	// ================
+
+	/**
+	 * Get the fingerprint of the transformation table and the tree grammar
+	 */
+	private static byte[] getFingerprint() {
+		MessageDigest digest;
+		File f;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			return new byte[0];
+		}
+		for (int i = 0; i < fingerprintFiles.length; i++) {
+			f = new File(fingerprintFiles[i]);
+			try {
+				digest.update(Files.readAllBytes(f.toPath()));
+			} catch (IOException e) {
+				// A missing file is part of the fingerprint
+				digest.update((byte) i);
+			}
+		}
+		return digest.digest();
+	}
+
+	private static String getKey(ASTNode node, String trans, String argument) {
+		ASTNode root = node;
+
+		while (root.getParent() != null)
+			root = root.getParent();
+		return Long.toHexString(root.getStructuralHash()) + "@"
+				+ node.getRow() + "#" + trans + "#" + argument;
+	}
+
+	// Internal Classes
+	// ================
+
+	/**
+	 * The result of an applicability test
+	 */
+	public static class Entry {
+
+		private boolean applicable;
+
+		private String message;
+
+		private int[] transformations;
+
+		private Entry(boolean applicable, String message,
+				int[] transformations) {
+			this.applicable = applicable;
+			this.message = message;
+			this.transformations = transformations;
+		}
+
+		/**
+		 * True if the transformation can be applied
+		 */
+		public boolean isApplicable() {
+			return applicable;
+		}
+
+		/**
+		 * Get the message of the engine if the transformation can't be
+		 * applied
+		 * 
+		 * @return The message or an empty string
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -4,7 +4,6 @@
 
 package fme.components.catalogue;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
@@ -13,9 +12,9 @@ import java.util.logging.Logger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
+
+import fme.wsl.tables.TableCache;
 
 public class Catalogue {
 
@@ -78,14 +77,9 @@ public class Catalogue {
      */
     private void parseTransformationCatalogue(String filename) {
 
-        System.setProperty("org.xml.sax.driver",
-            "org.apache.xerces.parsers.SAXParser");
-
         try {
-            XMLReader xmlReader = XMLReaderFactory.createXMLReader();
             DefaultHandler handler = new TransformationCatalogueParser();
-            xmlReader.setContentHandler(handler);
-            xmlReader.parse(new File(filename).toURI().toURL().toString());
+            TableCache.parse(filename, handler);
         } catch (SAXException e) {
             Logger.getLogger(this.getClass().getCanonicalName()).log(
                 Level.SEVERE, "SAX: XML Parser Error");
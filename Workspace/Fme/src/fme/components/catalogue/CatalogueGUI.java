@@ -128,7 +128,7 @@ public class CatalogueGUI extends GUIComponent {
 	 * @see fme.components.abstraction.GUIComponent#update()
 	 */
 	public void update() {
-		listener.invalidTransformationApplicability();
+		// The applicability cache is keyed by the content of the tree
 	}
 
 	public String getSelectedElement() {
@@ -7,8 +7,6 @@ package fme.components.catalogue;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashMap;
-import java.util.Vector;
 
 import javax.swing.JOptionPane;
 import javax.swing.event.ListSelectionEvent;
@@ -16,20 +14,14 @@ import javax.swing.event.ListSelectionListener;
 
 import fme.components.ComponentRegistry;
 import fme.components.console.Console;
-import fme.components.editor.EditorGUI;
 import fme.components.tree.TreeGUI;
 import fme.gui.MainFrame;
+import fme.wsl.ast.ASTNode;
 
 public class CatalogueListener implements ActionListener, ListSelectionListener {
 
 	private CatalogueGUI parent;
 
-	private HashMap<Integer, Vector<String>> validTransformations;
-
-	private HashMap<Integer, Vector<String>> invalidTransformations;
-
-	private HashMap<Integer, Vector<String>> invalidTransformationsMsgs;
-
 	private String msg;
 
 	public CatalogueListener(CatalogueGUI parent) {
@@ -64,8 +56,6 @@ public class CatalogueListener implements ActionListener, ListSelectionListener
 				in = parent.getSelectedIndex();
 				Console.getInstance().applyTransformation(t, "");
 				parent.setSelectedIndex(in);
-				validTransformations = null;
-				invalidTransformations = null;
 			} else {
 				JOptionPane.showMessageDialog(MainFrame.getMainFrame(),
 						"Transformation applicability check failed!\n" + msg,
@@ -94,8 +84,6 @@ public class CatalogueListener implements ActionListener, ListSelectionListener
 				in = parent.getSelectedIndex();
 				Console.getInstance().applyTransformation(t, args);
 				parent.setSelectedIndex(in);
-				validTransformations = null;
-				invalidTransformations = null;
 			} else {
 				JOptionPane.showMessageDialog(MainFrame.getMainFrame(),
 						"Transformation applicability check failed!\n" + msg,
@@ -140,8 +128,18 @@ public class CatalogueListener implements ActionListener, ListSelectionListener
 				|| e.getActionCommand().equals(
 						"CatalogueToolBar:TestAllTransformation")) {
 
-			parent.selectElements(Console.getInstance()
-					.testAllTransformations(), Color.BLACK, Color.GREEN);
+			ASTNode node = ((TreeGUI) ComponentRegistry
+					.getGUIComponent("TreeGUI")).getSelectedNode();
+			int[] applicable = node == null ? null : ApplicabilityCache
+					.getInstance().getApplicable(node);
+
+			if (applicable == null) {
+				applicable = Console.getInstance().testAllTransformations();
+				if (applicable != null && node != null)
+					ApplicabilityCache.getInstance().putApplicable(node,
+							applicable);
+			}
+			parent.selectElements(applicable, Color.BLACK, Color.GREEN);
 
 		} else {
 			parent.setList(e.getActionCommand());
@@ -149,69 +147,28 @@ public class CatalogueListener implements ActionListener, ListSelectionListener
 
 	}
 
-	public void invalidTransformationApplicability() {
-		validTransformations = null;
-	}
-
 	private boolean testTransformation(String trans) {
+		ASTNode node = ((TreeGUI) ComponentRegistry.getGUIComponent("TreeGUI"))
+				.getSelectedNode();
+		ApplicabilityCache.Entry cached;
+		boolean result;
+
 		msg = "";
 
-		if (((TreeGUI) ComponentRegistry.getGUIComponent("TreeGUI"))
-				.getSelectedNode() == null)
+		if (node == null)
 			return false;
 
-		int currentRow = ((TreeGUI) ComponentRegistry
-				.getGUIComponent("TreeGUI")).getSelectedNode().getRow();
-		boolean result;
-
-		// If the cache is empty or invalid (Document has been modified)
-		// recreate it
-		if (validTransformations == null
-				|| ((EditorGUI) ComponentRegistry.getGUIComponent("EditorGUI"))
-						.isDocumentModified()) {
-			validTransformations = new HashMap<Integer, Vector<String>>();
-			invalidTransformations = new HashMap<Integer, Vector<String>>();
-			invalidTransformationsMsgs = new HashMap<Integer, Vector<String>>();
-		}
-		// If the cache is valid than use it
-		else {
-			if (validTransformations.get(new Integer(currentRow)) != null) {
-				if (validTransformations.get(new Integer(currentRow)).contains(
-						trans)) {
-					return true;
-				}
-			}
-
-			if (invalidTransformations.get(new Integer(currentRow)) != null) {
-				if (invalidTransformations.get(new Integer(currentRow))
-						.contains(trans)) {
-					msg = invalidTransformationsMsgs.get(
-							new Integer(currentRow)).elementAt(
-							(invalidTransformations
-									.get(new Integer(currentRow))
-									.indexOf(trans)));
-					return false;
-				}
-			}
+		// The result depends on the program and the selected position
+		cached = ApplicabilityCache.getInstance().get(node, trans, "");
+		if (cached != null) {
+			msg = cached.getMessage();
+			return cached.isApplicable();
 		}
 
 		result = Console.getInstance().testTransformation(trans);
-		if (result) {
-			if (validTransformations.get(new Integer(currentRow)) == null)
-				validTransformations.put(new Integer(currentRow),
-						new Vector<String>());
-			validTransformations.get(new Integer(currentRow)).add(trans);
-		} else {
-			if (invalidTransformations.get(new Integer(currentRow)) == null) {
-				invalidTransformations.put(new Integer(currentRow),
-						new Vector<String>());
-				invalidTransformationsMsgs.put(new Integer(currentRow),
-						new Vector<String>());
-			}
-			invalidTransformations.get(new Integer(currentRow)).add(trans);
+		if (!result)
 			msg = Console.getInstance().getLastErrorMessage();
-			invalidTransformationsMsgs.get(new Integer(currentRow)).add(msg);
-		}
+		ApplicabilityCache.getInstance().put(node, trans, "", result, msg);
 
 		return result;
 	}
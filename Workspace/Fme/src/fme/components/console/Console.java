@@ -6,6 +6,10 @@ package fme.components.console;
 
 import java.io.File;
 import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,6 +27,9 @@ import fme.components.tree.TreeGUI;
 import fme.config.CM;
 import fme.gui.MainFrame;
 import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTBuilder;
+import fme.wsl.ast.ASTCache;
+import fme.wsl.ast.MappedAST;
 
 /**
  * This class provides a high level interface to the FermaT console. It
@@ -163,7 +170,7 @@ public class Console {
 	 */
 	public String getLastErrorMessage() {
 		String buf;
-		buf = sendBufferCommand("(@Fail_Message)\n", null);
+		buf = sendBufferCommand("(@Fail_Message)\n");
 		return buf;
 	}
 
@@ -299,6 +306,7 @@ public class Console {
 				"\\\\");
 		for (int i = 0; i < f.length; i++) {
 			if (f[i].getAbsolutePath().matches(filename2 + ".*-[0-9]+.wsl")) {
+				MappedAST.remove(f[i]);
 				if (!f[i].delete()) {
 					Logger.getLogger(this.getClass().getCanonicalName())
 							.log(Level.SEVERE,
@@ -335,18 +343,32 @@ public class Console {
 		int row = ((TreeGUI) ComponentRegistry.getGUIComponent("TreeGUI"))
 				.getSelectedNode().getRow();
 		String buf, file, oldfile, newPos, cmd;
+		Vector<CompletableFuture<String>> replies;
 
+		// Construct a new Filename
+		file = IOManager.extendWSLFileName(workingFile);
+
+		// Apply the transformation, get the new position of the current item
+		// and write the new file in one go
 		cmd = "(@TRANS " + trans + " \"" + data + "\")\n";
-		buf = sendBufferCommand("(@TRANS " + trans + " \"" + data
-				+ "\")(display \"***EndOfOperation***\")\n",
-				"***EndOfOperation***");
-		buf = buf.replace("***EndOfOperation***", "");
+		replies = ConsoleObserver.getConsoleObserver().submitAll(
+				cmd,
+				"(@posn)\n",
+				"(@PP_Item (@Program) 80 \"" + file.replace("\\", "\\\\")
+						+ "\")\n");
+		buf = getReply(replies.get(0));
 
 		if (debug) {
 			System.out.println("Sending:" + cmd);
 			System.out.println("Received:\n" + buf);
 		}
 
+		if (buf.toLowerCase().contains("error")) {
+			// The new file was written in vain
+			getReply(replies.get(2));
+			new File(file).delete();
+		}
+
 		if (buf.toLowerCase().contains("error") && !ignoreErrors) {
 			JOptionPane.showMessageDialog(MainFrame.getMainFrame(),
 					"Transformation failed!");
@@ -366,17 +388,14 @@ public class Console {
 		ret = true;
 
 		// Get the new position of the current item
-		newPos = sendBufferCommand("(@posn)\n", ")");
+		newPos = getReply(replies.get(1));
 		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
 				"New Position is:" + newPos);
-		newPos = newPos.substring(1, newPos.indexOf(")"));
-
-		// Construct a new Filename
-		file = IOManager.extendWSLFileName(workingFile);
+		newPos = newPos.substring(newPos.indexOf("(") + 1, newPos
+				.indexOf(")"));
 
-		// Now write and load the new file
-		buf = sendBufferCommand("(@PP_Item (@Program) 80 \""
-				+ file.replace("\\", "\\\\") + "\")\n", null);
+		// Now load the new file
+		getReply(replies.get(2));
 
 		oldfile = workingFile;
 
@@ -409,7 +428,7 @@ public class Console {
 		String buf;
 
 		// Test transformation of current item
-		buf = sendBufferCommand("(@TRANS? " + trans + ")\n", "#");
+		buf = sendBufferCommand("(@TRANS? " + trans + ")\n");
 		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
 				"Test transformation: " + trans + " result:" + buf);
 
@@ -422,13 +441,16 @@ public class Console {
 	public int[] testAllTransformations() {
 		String buf, alist, names, n[], a[];
 		int ret[];
+		Vector<CompletableFuture<String>> replies;
 
 		// Test transformation of current item
-		buf = sendBufferCommand("(@What_Trans ())\n", ")");
+		replies = ConsoleObserver.getConsoleObserver().submitAll(
+				"(@What_Trans ())\n", "//T/Rs_/Name\n");
+		buf = getReply(replies.get(0));
 		if (buf.contains("ERROR"))
 			return null;
-		alist = buf.substring(1, buf.indexOf(")"));
-		buf = sendBufferCommand("//T/Rs_/Name\n", "()");
+		alist = buf.substring(buf.indexOf("(") + 1, buf.indexOf(")"));
+		buf = getReply(replies.get(1));
 		names = buf.substring(2, buf.indexOf("()") - 1).replace("`", "")
 				.replace("'", "");
 		n = names.split("\" \"");
@@ -464,12 +486,10 @@ public class Console {
 	 */
 	public void updateTreePosition(String position) {
 
-		// Reset the @I pointer
-		sendBufferCommand("(@New_Program (@Program))\n", "#<unspecified>");
-
-		// Set position
-		sendBufferCommand("(" + position.replace(" ", ")\n(") + ")\n",
-				"#<unspecified>");
+		// Reset the @I pointer and set the position
+		getReply(ConsoleObserver.getConsoleObserver().submitAll(
+				"(@New_Program (@Program))\n",
+				"(" + position.replace(" ", ")\n(") + ")\n").lastElement());
 	}
 
 	/**
@@ -481,6 +501,9 @@ public class Console {
 	 */
 	public boolean loadFile(File file) {
 		String buf, filename = file.getAbsolutePath();
+		ConsoleObserver co = ConsoleObserver.getConsoleObserver();
+		CompletableFuture<String> treeReply = null;
+		ASTBuilder builder = new ASTBuilder();
 
 		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
 				"Loading file:" + filename);
@@ -490,8 +513,21 @@ public class Console {
 		// Load the file into the engine
 		filename = filename.replace("\\", "\\\\");
 
-		buf = sendBufferCommand("(@New_Program (@Parse_File \"" + filename
-				+ "\" //T_/Statements))\n", null);
+		// Load the file into the engine and print its tree (unless there is
+		// a snapshot of the tree) in one go
+		buf = "(@New_Program (@Parse_File \"" + filename
+				+ "\" //T_/Statements))\n";
+		if (ASTCache.isCached(file)) {
+			buf = sendBufferCommand(buf);
+		} else {
+			CompletableFuture<String> programReply = co.submit(buf, null);
+
+			// Build the tree while the engine prints it
+			treeReply = co.submit("(@Print_WSL (@Program) \"\")\n",
+					builder);
+			co.flush();
+			buf = getReply(programReply);
+		}
 
 		// Show an error if something goes wrong ...
 		if (buf.contains("not found!")) {
@@ -532,13 +568,23 @@ public class Console {
 
 		documentErroneous = false;
 
-		buf = sendBufferCommand("(@Print_WSL (@Program) \"\")\n", "\n#t");
-
 		// Set the file
 		AST.setFile(new File(filename));
 
-		// Parse the Tree
-		if (!AST.parseTree(buf)) {
+		// Restore the tree of a known version of the file
+		boolean cached = ASTCache.load(file);
+
+		// Wait for the tree (print it if the snapshot was unusable)
+		if (!cached && treeReply == null)
+			buf = sendBufferCommand("(@Print_WSL (@Program) \"\")\n",
+					builder);
+		else if (!cached)
+			buf = getReply(treeReply);
+
+		// Parse the Tree (again if the builder failed on the way)
+		if (!cached
+				&& !(builder.hasFailed() ? AST.parseTree(buf) : AST
+						.parseTree(builder))) {
 			ComponentRegistry
 					.updateGUI(ComponentRegistry.NEW_FILE_WITH_ERROR_LOADED);
 
@@ -560,6 +606,14 @@ public class Console {
 				.getGUIComponent("EditorGUI"));
 		eg.removeMarks();
 
+		// Remember the tree and the lexer tokens for the next visit
+		if (!cached)
+			ASTCache.store(file, eg.getText());
+
+		// Keep the tree of a project module for cross-module analyses
+		if (isProjectModule(file))
+			MappedAST.store(file, AST.getAST());
+
 		// Select the first Node in the AST
 		TreeGUI tg = ((TreeGUI) ComponentRegistry.getGUIComponent("TreeGUI"));
 		tg.expandTreeToRow(0);
@@ -593,36 +647,68 @@ public class Console {
 	// Internal Methods
 	// ================
 
+	/**
+	 * Check if a file is a module of the current project
+	 */
+	private boolean isProjectModule(File file) {
+		Vector<File> files = ProjectManager.getProjectManager().getFiles();
+
+		if (files == null)
+			return false;
+		for (int i = 0; i < files.size(); i++) {
+			if (files.get(i).getAbsoluteFile().equals(file.getAbsoluteFile()))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Send a command to the engine and return the result in a buffer (not on
 	 * the graphical console)
 	 * 
 	 * @param cmd
 	 *            The command to send
-	 * @param waitFor
-	 *            A character sequence which indicates the end of the result
 	 * @return The buffer holding the result
 	 */
-	private String sendBufferCommand(String cmd, String waitFor) {
-		String ret;
-		// Tell the transformation engine to load the file
-		ConsoleObserver co = ConsoleObserver.getConsoleObserver();
-		co.setSendToBuffer(true);
-		co.setWaitForString(waitFor);
-		co.sendCommand(cmd);
+	private String sendBufferCommand(String cmd) {
+		return sendBufferCommand(cmd, null);
+	}
 
-		while (co.isBusy()) {
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException ex) {
-			}
-		}
+	/**
+	 * Send a command to the engine and return the result in a buffer (not on
+	 * the graphical console)
+	 * 
+	 * @param cmd
+	 *            The command to send
+	 * @param listener
+	 *            A listener which receives the result while it arrives (or
+	 *            null)
+	 * @return The buffer holding the result
+	 */
+	private String sendBufferCommand(String cmd, Appendable listener) {
+		ConsoleObserver co = ConsoleObserver.getConsoleObserver();
+		CompletableFuture<String> ret = co.submit(cmd, listener);
 
-		ret = co.getBuffer();
-		co.setWaitForString(null);
-		co.setSendToBuffer(false);
+		co.flush();
+		return getReply(ret);
+	}
 
-		return ret;
+	/**
+	 * Wait until the result of a pipelined command has arrived
+	 * 
+	 * @param reply
+	 *            The result of the command
+	 * @return The buffer holding the result
+	 */
+	private String getReply(Future<String> reply) {
+		try {
+			return reply.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return "";
+		} catch (ExecutionException ex) {
+			return "";
+		}
 	}
 
 	// Internal Classes
@@ -12,8 +12,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.swing.JTextArea;
 
@@ -22,7 +28,11 @@ import fme.config.CM;
 
 /**
  * This class observes the console. It receives and sends commands. The class
- * provides a low level interface to the console
+ * provides a low level interface to the console. The output streams of the
+ * engine are read by blocking reader threads, so a reply is handled as soon
+ * as it arrives. Pipelined requests are followed by a numbered end marker,
+ * so many requests can be sent without waiting for the replies of the
+ * previous ones.
  * 
  * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
  */
@@ -35,9 +45,32 @@ public class ConsoleObserver implements Runnable {
 	private static final boolean messageLogging = false;
 
 	/**
-	 * The wait time for a reply
+	 * The markers around output of the error stream
 	 */
-	private static int waitForReply = 100;
+	private static final String errorBegin = System
+			.getProperty("line.separator")
+			+ "==ERROR Stream================="
+			+ System.getProperty("line.separator");
+
+	private static final String errorEnd = System
+			.getProperty("line.separator")
+			+ "==============================="
+			+ System.getProperty("line.separator");
+
+	/**
+	 * The end marker of a pipelined request consists of the beginning, the
+	 * number of the request and the end
+	 */
+	private static final String markerBegin = "***END-";
+
+	private static final String markerEnd = "***";
+
+	/**
+	 * The output of the engine after an end marker (the value of the display
+	 * command)
+	 */
+	private static final Pattern markerEcho = Pattern
+			.compile("(\\r?\\n)?(#<unspecified>)?(\\r?\\n)?");
 
 	/**
 	 * The only instance of this class (singleton design pattern)
@@ -56,21 +89,6 @@ public class ConsoleObserver implements Runnable {
 
 	// The different streams
 
-	/**
-	 * The output stream of the engine
-	 */
-	private InputStream in, err;
-
-	/**
-	 * The input stream of the engine
-	 */
-	private OutputStream out;
-
-	/**
-	 * The buffered output stream of the engine
-	 */
-	private BufferedReader lineIn, lineErr;
-
 	/**
 	 * The buffered input stream of the engine
 	 */
@@ -87,15 +105,83 @@ public class ConsoleObserver implements Runnable {
 	 */
 	private StringBuffer buffer;
 
+	/**
+	 * A listener which receives the engine output together with the internal
+	 * buffer
+	 */
+	private Appendable bufferListener;
+
 	/**
 	 * A character sequence indicating the expected end of a response
 	 */
 	private String waitFor;
 
+	/**
+	 * Detects the end of a response in the engine output
+	 */
+	private SentinelMatcher matcher;
+
+	/**
+	 * The reply of the current request
+	 */
+	private CompletableFuture<String> reply;
+
 	/**
 	 * Indicates if the engine is writing output
 	 */
-	private boolean busy;
+	private volatile boolean busy;
+
+	/**
+	 * Indicates if the engine is writing to its error stream
+	 */
+	private boolean errorOutput;
+
+	/**
+	 * Indicates if an output stream of the engine was closed
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * The pipelined requests which wait for their replies (in the order in
+	 * which they were sent)
+	 */
+	private LinkedList<PipelinedRequest> pipeline = new LinkedList<PipelinedRequest>();
+
+	/**
+	 * The number of the last pipelined request
+	 */
+	private int lastId;
+
+	/**
+	 * The engine output since the last end marker
+	 */
+	private StringBuilder pipe = new StringBuilder();
+
+	/**
+	 * Detects the beginning of an end marker
+	 */
+	private SentinelMatcher markerMatcher = new SentinelMatcher(markerBegin);
+
+	/**
+	 * The position of the request number of an end marker in the pipe (or -1)
+	 */
+	private int markerPos = -1;
+
+	/**
+	 * Indicates if the pipe may begin with the echo of an end marker
+	 */
+	private boolean echo;
+
+	/**
+	 * The number of characters of the pipe which were passed to the listener
+	 * of the first pipelined request
+	 */
+	private int delivered;
+
+	/**
+	 * Keeps the commands of different threads apart
+	 */
+	private final Object writeLock = new Object();
 
 	/**
 	 * Indicates if the engine is writing output
@@ -117,10 +203,6 @@ public class ConsoleObserver implements Runnable {
 	 */
 	public void run() {
 
-		int d;
-		boolean end = false, update = false;
-		String cmd;
-
 		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
 				"Starting console ...");
 
@@ -132,123 +214,92 @@ public class ConsoleObserver implements Runnable {
 					.log(Level.INFO,
 							"Executing " + CM.getAsString("ConsoleCommand"));
 
-			consoleProc = Runtime.getRuntime().exec(
-					CM.getAsString("ConsoleCommand"));
+			// The error stream is merged so that error messages arrive in
+			// order with the end markers of the pipelined requests
+			ProcessBuilder pb = new ProcessBuilder(CM
+					.getAsCommand("ConsoleCommand"));
+			pb.redirectErrorStream(true);
+			consoleProc = pb.start();
 
-			in = consoleProc.getInputStream();
-			lineIn = new BufferedReader(new InputStreamReader(in));
-			err = consoleProc.getErrorStream();
-			lineErr = new BufferedReader(new InputStreamReader(err));
-			out = consoleProc.getOutputStream();
-			lineOut = new BufferedWriter(new PrintWriter(out));
+			connect(consoleProc.getInputStream(), null, consoleProc
+					.getOutputStream());
 
 			graphicConsole.append("Initialising FermaT engine ...\n");
-			
-			// Setting internal variables
-			// Necessary for some transformations (e.g. STATIC SLICING)
-			cmd = "(define fermat \".\")\n";
-			lineOut.write(cmd.replace("\\", "\\\\"));
-			Logger.getLogger(this.getClass().getCanonicalName()).log(
-					Level.INFO,
-					"Initialise engine:"
-							+ cmd.replace("\\", "\\\\").replace("\n", ""));
-			cmd = "(define perl \"perl\")\n".replace("\\", "\\\\");
-			lineOut.write(cmd.replace("\\", "\\\\"));
-			Logger.getLogger(this.getClass().getCanonicalName()).log(
-					Level.INFO,
-					"Initialise engine:"
-							+ cmd.replace("\\", "\\\\").replace("\n", ""));
-			cmd = "(define ds \"" + File.separator + "\")\n";
-			lineOut.write(cmd.replace("\\", "\\\\"));
-			Logger.getLogger(this.getClass().getCanonicalName()).log(
-					Level.INFO,
-					"Initialise engine:"
-							+ cmd.replace("\\", "\\\\").replace("\n", ""));
-			lineOut.flush();
-
-			d = 0;
-			while (!end) {
-
-				// Output standard input
-				if (lineIn.ready()) {
-					busy = true;
-					while (lineIn.ready()) {
-						d = lineIn.read();
-						if (d == -1) {
-							end = true;
-							break;
-						}
-						if (sendToBuffer) {
-							buffer.append("" + (char) d);
-							if (debug)
-								graphicConsole.append("" + (char) d);
-						} else
-							graphicConsole.append("" + (char) d);
-					}
-					if (waitFor == null)
-						busy = false;
-					else {
-						if (sendToBuffer && buffer.toString().contains(waitFor))
-							busy = false;
-						else if (graphicConsole.getText().contains(waitFor))
-							busy = false;
-					}
-					update = true;
-				}
 
-				// Output standard error
-				if (lineErr.ready()) {
-					busy = true;
-					if (sendToBuffer)
-						buffer.append(CM.ls + "==ERROR Stream================="
-								+ CM.ls);
-					else
-						graphicConsole.append(CM.ls
-								+ "==ERROR Stream=================" + CM.ls);
-					while (lineErr.ready()) {
-						d = lineErr.read();
-						if (d == -1) {
-							end = true;
-							break;
-						}
-						if (sendToBuffer)
-							buffer.append("" + (char) d);
-						else
-							graphicConsole.append("" + (char) d);
-					}
-					if (sendToBuffer)
-						buffer.append(CM.ls + "==============================="
-								+ CM.ls);
-					else
-						graphicConsole.append(CM.ls
-								+ "===============================" + CM.ls);
-					busy = false;
-					update = true;
-				}
+			initialise();
 
-				// Update the caret if necessary
-				if (update) {
-					graphicConsole.setCaretPosition(graphicConsole.getText()
-							.length());
-					update = false;
-				}
-
-				// Sleppe a litte
-				try {
-					Thread.sleep(waitForReply);
-				} catch (InterruptedException e) {
-				}
-			}
+			// The reader threads do the work
+			consoleProc.waitFor();
 
 		} catch (IOException e) {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.SEVERE, "IOException in the pipe");
+		} catch (InterruptedException e) {
 		}
 
 		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
 				"Ending console Thread");
 	}
 
+	/**
+	 * Connect the observer with the streams of an engine and start reading
+	 * its output
+	 * 
+	 * @param in
+	 *            The output stream of the engine
+	 * @param err
+	 *            The error stream of the engine (or null if it is merged
+	 *            into the output stream)
+	 * @param out
+	 *            The input stream of the engine
+	 */
+	public void connect(InputStream in, InputStream err, OutputStream out) {
+		lineOut = new BufferedWriter(new PrintWriter(out));
+
+		Thread t = new Thread(new StreamReader(new BufferedReader(
+				new InputStreamReader(in)), false), "Engine output");
+		t.setDaemon(true);
+		t.start();
+		if (err == null)
+			return;
+		t = new Thread(new StreamReader(new BufferedReader(
+				new InputStreamReader(err)), true), "Engine error output");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Set the internal variables of a new engine
+	 * 
+	 * @throws IOException
+	 *             If the engine can't receive the commands
+	 */
+	void initialise() throws IOException {
+		String cmd;
+
+		// Setting internal variables
+		// Necessary for some transformations (e.g. STATIC SLICING)
+		cmd = "(define fermat \".\")\n";
+		lineOut.write(cmd.replace("\\", "\\\\"));
+		Logger.getLogger(this.getClass().getCanonicalName()).log(
+				Level.INFO,
+				"Initialise engine:"
+						+ cmd.replace("\\", "\\\\").replace("\n", ""));
+		cmd = "(define perl \"perl\")\n".replace("\\", "\\\\");
+		lineOut.write(cmd.replace("\\", "\\\\"));
+		Logger.getLogger(this.getClass().getCanonicalName()).log(
+				Level.INFO,
+				"Initialise engine:"
+						+ cmd.replace("\\", "\\\\").replace("\n", ""));
+		cmd = "(define ds \"" + File.separator + "\")\n";
+		lineOut.write(cmd.replace("\\", "\\\\"));
+		Logger.getLogger(this.getClass().getCanonicalName()).log(
+				Level.INFO,
+				"Initialise engine:"
+						+ cmd.replace("\\", "\\\\").replace("\n", ""));
+		lineOut.flush();
+	}
+
 	/**
 	 * Sends a string to the console
 	 * 
@@ -256,17 +307,124 @@ public class ConsoleObserver implements Runnable {
 	 *            The string to send
 	 */
 	public void sendCommand(String cmd) {
-		try {
-			if (messageLogging)
+		busy = true;
+		synchronized (writeLock) {
+			try {
+				if (messageLogging)
+					Logger.getLogger(this.getClass().getCanonicalName()).log(
+							Level.INFO, "Sending :\"" + cmd + "\"");
+				lineOut.write(cmd);
+				lineOut.flush();
+			} catch (IOException e) {
 				Logger.getLogger(this.getClass().getCanonicalName()).log(
-						Level.INFO, "Sending :\"" + cmd + "\"");
-			lineOut.write(cmd);
-			lineOut.flush();
-		} catch (IOException e) {
-			Logger.getLogger(this.getClass().getCanonicalName()).log(
-					Level.SEVERE, "Can't write command:" + cmd);
+						Level.SEVERE, "Can't write command:" + cmd);
+			}
 		}
-		busy = true;
+	}
+
+	/**
+	 * Send a command as a pipelined request. The command is followed by an
+	 * end marker with the number of the request, so further requests can be
+	 * sent before the reply has arrived. The command is buffered until
+	 * flush() is called.
+	 * 
+	 * @param cmd
+	 *            The command to send
+	 * @param listener
+	 *            A listener which receives the reply while it arrives (or
+	 *            null)
+	 * @return The reply which is completed when the end marker of the request
+	 *         (or some error output) has arrived
+	 */
+	public CompletableFuture<String> submit(String cmd, Appendable listener) {
+		PipelinedRequest r;
+
+		synchronized (writeLock) {
+			synchronized (this) {
+				if (pipeline.isEmpty())
+					resetPipe();
+				r = new PipelinedRequest(++lastId, listener);
+				pipeline.add(r);
+				busy = true;
+			}
+			cmd = cmd + "(display \"" + markerBegin + r.id + markerEnd
+					+ "\")\n";
+			try {
+				if (messageLogging)
+					Logger.getLogger(this.getClass().getCanonicalName()).log(
+							Level.INFO, "Sending :\"" + cmd + "\"");
+				lineOut.write(cmd);
+			} catch (IOException e) {
+				Logger.getLogger(this.getClass().getCanonicalName()).log(
+						Level.SEVERE, "Can't write command:" + cmd);
+				synchronized (this) {
+					pipeline.remove(r);
+				}
+				r.reply.completeExceptionally(e);
+			}
+		}
+		return r.reply;
+	}
+
+	/**
+	 * Send some commands as pipelined requests in one go
+	 * 
+	 * @param cmds
+	 *            The commands to send
+	 * @return The replies (in the order of the commands)
+	 */
+	public Vector<CompletableFuture<String>> submitAll(String... cmds) {
+		Vector<CompletableFuture<String>> ret = new Vector<CompletableFuture<String>>();
+
+		synchronized (writeLock) {
+			for (int i = 0; i < cmds.length; i++)
+				ret.add(submit(cmds[i], null));
+			flush();
+		}
+		return ret;
+	}
+
+	/**
+	 * Send all buffered pipelined requests to the engine
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			try {
+				lineOut.flush();
+			} catch (IOException e) {
+				Logger.getLogger(this.getClass().getCanonicalName()).log(
+						Level.SEVERE, "Can't write commands");
+			}
+		}
+	}
+
+	/**
+	 * Send a command and receive the reply in the back buffer (not on the
+	 * graphical console). The output is written to the back buffer until
+	 * setSendToBuffer(false) is called.
+	 * 
+	 * @param cmd
+	 *            The command to send
+	 * @param waitFor
+	 *            A character sequence which indicates the end of the reply
+	 *            (or null if the reply ends with the first output)
+	 * @param listener
+	 *            A listener which receives the reply while it arrives (or
+	 *            null)
+	 * @return The reply which is completed with the back buffer when the end
+	 *         of the reply (or some error output) has arrived
+	 */
+	public CompletableFuture<String> sendRequest(String cmd, String waitFor,
+			Appendable listener) {
+		CompletableFuture<String> ret = new CompletableFuture<String>();
+		synchronized (this) {
+			setSendToBuffer(true);
+			setBufferListener(listener);
+			setWaitForString(waitFor);
+			reply = ret;
+		}
+		sendCommand(cmd);
+		return ret;
 	}
 
 	/**
@@ -274,12 +432,12 @@ public class ConsoleObserver implements Runnable {
 	 */
 	public static void start() {
 		if (singleton == null) {
+			// The "fast" observer doesn't poll either
 			if (CM.getAsString("fme.components.console.ConsoleObserver")
-					.equalsIgnoreCase("default"))
+					.equalsIgnoreCase("default")
+					|| CM.getAsString("fme.components.console.ConsoleObserver")
+							.equalsIgnoreCase("fast"))
 				singleton = new ConsoleObserver();
-			else if (CM.getAsString("fme.components.console.ConsoleObserver")
-					.equalsIgnoreCase("fast"))
-				singleton = new ConsoleObserver2();
 			else {
 				singleton = new ConsoleObserver();
 
@@ -299,12 +457,12 @@ public class ConsoleObserver implements Runnable {
 	 */
 	public static ConsoleObserver getConsoleObserver() {
 		if (singleton == null) {
+			// The "fast" observer doesn't poll either
 			if (CM.getAsString("fme.components.console.ConsoleObserver")
-					.equalsIgnoreCase("default")) {
+					.equalsIgnoreCase("default")
+					|| CM.getAsString("fme.components.console.ConsoleObserver")
+							.equalsIgnoreCase("fast")) {
 				singleton = new ConsoleObserver();
-			} else if (CM.getAsString("fme.components.console.ConsoleObserver")
-					.equalsIgnoreCase("fast")) {
-				singleton = new ConsoleObserver2();
 			} else {
 				singleton = new ConsoleObserver();
 
@@ -324,8 +482,10 @@ public class ConsoleObserver implements Runnable {
 	 * @param sendToBuffer
 	 *            True if the output should be written to the back buffer
 	 */
-	public void setSendToBuffer(boolean sendToBuffer) {
+	public synchronized void setSendToBuffer(boolean sendToBuffer) {
 		buffer = new StringBuffer();
+		if (matcher != null)
+			matcher.reset();
 		this.sendToBuffer = sendToBuffer;
 	}
 
@@ -334,10 +494,21 @@ public class ConsoleObserver implements Runnable {
 	 * 
 	 * @return The buffer
 	 */
-	public String getBuffer() {
+	public synchronized String getBuffer() {
 		return buffer.toString();
 	}
 
+	/**
+	 * Set a listener which receives the engine output together with the back
+	 * buffer (e.g. to process a reply while it is printed)
+	 * 
+	 * @param bufferListener
+	 *            The listener or null
+	 */
+	public synchronized void setBufferListener(Appendable bufferListener) {
+		this.bufferListener = bufferListener;
+	}
+
 	/**
 	 * Indicates if the engine is busy with filling its output streams
 	 * 
@@ -347,8 +518,14 @@ public class ConsoleObserver implements Runnable {
 		return busy;
 	}
 
-	public void setWaitForReply(int i) {
-		waitForReply = i;
+	/**
+	 * Indicates if the engine has closed its output (e.g. because it has
+	 * terminated)
+	 * 
+	 * @return True if no more output will arrive
+	 */
+	public boolean isClosed() {
+		return closed;
 	}
 
 	/**
@@ -358,7 +535,300 @@ public class ConsoleObserver implements Runnable {
 	 * @param waitFor
 	 *            The sequence of characters
 	 */
-	public void setWaitForString(String waitFor) {
+	public synchronized void setWaitForString(String waitFor) {
 		this.waitFor = waitFor;
+		matcher = waitFor == null || waitFor.length() == 0 ? null
+				: new SentinelMatcher(waitFor);
+	}
+
+	// Internal Methods
+	// ================
+
+	/**
+	 * Handle output of the engine
+	 * 
+	 * @param text
+	 *            The output
+	 * @param error
+	 *            True if the output is from the error stream
+	 * @param last
+	 *            True if no more output is available at the moment
+	 */
+	private synchronized void received(char[] text, int length,
+			boolean error, boolean last) {
+		if (!pipeline.isEmpty()) {
+			pipelineReceived(text, length, error, last);
+			return;
+		}
+		echo = false;
+
+		busy = true;
+		if (error && !errorOutput) {
+			errorOutput = true;
+			output(errorBegin);
+		}
+
+		output(new String(text, 0, length));
+
+		if (error) {
+			// An error ends the current reply
+			if (last) {
+				errorOutput = false;
+				output(errorEnd);
+				replyReceived();
+			}
+		} else if (matcher == null) {
+			if (last)
+				replyReceived();
+		} else if (matcher.feed(text, 0, length))
+			replyReceived();
+
+		// Update the caret if necessary
+		if (!sendToBuffer && graphicConsole != null)
+			graphicConsole.setCaretPosition(graphicConsole.getText().length());
+	}
+
+	/**
+	 * Handle the end of an output stream of the engine
+	 */
+	private synchronized void closed() {
+		Logger.getLogger(this.getClass().getCanonicalName()).log(Level.INFO,
+				"Engine output closed");
+		closed = true;
+		// Nothing more will arrive
+		replyReceived();
+		while (!pipeline.isEmpty())
+			pipeline.removeFirst().reply.complete(pipe.toString());
+		resetPipe();
+	}
+
+	/**
+	 * Handle output of the engine while pipelined requests wait for their
+	 * replies
+	 */
+	private void pipelineReceived(char[] text, int length, boolean error,
+			boolean last) {
+		int start = 0, end, n;
+		char c;
+
+		busy = true;
+		if (error) {
+			// A separate error stream isn't ordered with the end markers: the
+			// text is kept in front of a partly read marker and the request
+			// still ends with its marker
+			start = n = markerPos >= 0 ? markerPos - markerBegin.length()
+					: pipe.length() - markerMatcher.getMatchedLength();
+			if (!errorOutput) {
+				errorOutput = true;
+				pipe.insert(n, errorBegin);
+				n += errorBegin.length();
+			}
+			pipe.insert(n, text, 0, length);
+			n += length;
+			if (last) {
+				errorOutput = false;
+				pipe.insert(n, errorEnd);
+				n += errorEnd.length();
+			}
+			if (markerPos >= 0)
+				markerPos += n - start;
+			return;
+		}
+
+		while (start < length) {
+			if (markerPos < 0) {
+				end = markerMatcher.find(text, start, length - start);
+				pipe.append(text, start, (end < 0 ? length : end) - start);
+				if (end < 0)
+					break;
+				markerPos = pipe.length();
+				start = end;
+				continue;
+			}
+
+			// Read the number of the request and the end of the marker
+			c = text[start++];
+			pipe.append(c);
+			n = pipe.length() - markerPos;
+			if (c >= '0' && c <= '9' ? pipe.charAt(pipe.length() - 2) != '*'
+					: c == '*' && n > 1) {
+				if (n > markerEnd.length()
+						&& pipe.lastIndexOf(markerEnd) == pipe.length()
+								- markerEnd.length()) {
+					markerReceived();
+					if (pipeline.isEmpty()) {
+						// The rest belongs to the console
+						if (start < length)
+							received(Arrays.copyOfRange(text, start, length),
+									length - start, error, last);
+						return;
+					}
+				}
+			} else {
+				// Not an end marker: the character is searched again
+				pipe.setLength(pipe.length() - 1);
+				start--;
+				markerPos = -1;
+			}
+		}
+
+		if (trimEcho(false) && !pipeline.isEmpty())
+			deliver(pipeline.getFirst(),
+					markerPos >= 0 ? markerPos - markerBegin.length() : pipe
+							.length()
+							- markerMatcher.getMatchedLength());
+	}
+
+	/**
+	 * Complete the request of an end marker
+	 */
+	private void markerReceived() {
+		int id = Integer.parseInt(pipe.substring(markerPos, pipe.length()
+				- markerEnd.length()));
+		PipelinedRequest r;
+
+		pipe.setLength(markerPos - markerBegin.length());
+		markerPos = -1;
+		trimEcho(true);
+		busy = pipeline.getLast().id > id;
+		while (!pipeline.isEmpty() && pipeline.getFirst().id <= id) {
+			r = pipeline.removeFirst();
+			if (r.id == id) {
+				deliver(r, pipe.length());
+				r.reply.complete(pipe.toString());
+			} else
+				// The end marker of the request was lost
+				r.reply.complete("");
+		}
+		resetPipe();
+		echo = true;
+	}
+
+	/**
+	 * Remove the echo of an end marker from the beginning of the pipe
+	 * 
+	 * @param complete
+	 *            True if no more output belongs to the pipe
+	 * @return False if the pipe may still begin with the echo
+	 */
+	private boolean trimEcho(boolean complete) {
+		Matcher m;
+
+		if (!echo)
+			return true;
+		m = markerEcho.matcher(pipe);
+		m.lookingAt();
+		if (m.hitEnd() && !complete)
+			return false;
+		pipe.delete(0, m.end());
+		if (markerPos >= 0)
+			markerPos -= m.end();
+		echo = false;
+		return true;
+	}
+
+	/**
+	 * Pass the pipe up to a position to the listener of a request
+	 */
+	private void deliver(PipelinedRequest r, int end) {
+		if (r.listener != null && end > delivered) {
+			try {
+				r.listener.append(pipe, delivered, end);
+			} catch (Exception e) {
+				Logger.getLogger(this.getClass().getCanonicalName()).log(
+						Level.WARNING, "Buffer listener failed: " + e);
+				r.listener = null;
+			}
+		}
+		delivered = Math.max(delivered, end);
+	}
+
+	private void resetPipe() {
+		pipe.setLength(0);
+		markerMatcher.reset();
+		markerPos = -1;
+		delivered = 0;
+	}
+
+	private void replyReceived() {
+		busy = false;
+		if (reply != null) {
+			reply.complete(buffer.toString());
+			reply = null;
+		}
+	}
+
+	private void output(String text) {
+		if (sendToBuffer) {
+			buffer.append(text);
+			appendToListener(text);
+			if (debug && graphicConsole != null)
+				graphicConsole.append(text);
+		} else if (graphicConsole != null)
+			graphicConsole.append(text);
+	}
+
+	private void appendToListener(CharSequence text) {
+		Appendable l = bufferListener;
+		if (l == null)
+			return;
+		try {
+			l.append(text);
+		} catch (Exception e) {
+			// The buffer still receives the output
+			Logger.getLogger(this.getClass().getCanonicalName()).log(
+					Level.WARNING, "Buffer listener failed: " + e);
+			bufferListener = null;
+		}
+	}
+
+	// Internal Classes
+	// ================
+
+	/**
+	 * A pipelined request which waits for its reply
+	 */
+	private static class PipelinedRequest {
+
+		private int id;
+
+		private Appendable listener;
+
+		private CompletableFuture<String> reply = new CompletableFuture<String>();
+
+		public PipelinedRequest(int id, Appendable listener) {
+			this.id = id;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * A thread which reads an output stream of the engine (the thread
+	 * blocks until output arrives)
+	 */
+	private class StreamReader implements Runnable {
+
+		private BufferedReader reader;
+
+		private boolean error;
+
+		public StreamReader(BufferedReader reader, boolean error) {
+			this.reader = reader;
+			this.error = error;
+		}
+
+		public void run() {
+			char[] buf = new char[8192];
+			int n;
+
+			try {
+				while ((n = reader.read(buf)) != -1)
+					received(buf, n, error, !reader.ready());
+			} catch (IOException e) {
+				Logger.getLogger(ConsoleObserver.class.getCanonicalName())
+						.log(Level.SEVERE, "IOException in the pipe");
+			}
+			closed();
+		}
 	}
 }
@@ -0,0 +1,331 @@
+/**
+ * Project: fme
+ */
+
+package fme.components.console;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fme.config.CM;
+
+/**
+ * This class holds a number of engine processes (workers) which work in
+ * parallel to the engine of the console. Every worker has its own program
+ * state. A worker can be leased for a sequence of commands (e.g. load a
+ * program and test some transformations) or single requests can be put into
+ * the work queue of the pool. Terminated or hanging engines are restarted.
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class EnginePool {
+
+	/**
+	 * The only instance of this class (singleton design pattern)
+	 */
+	private static EnginePool singleton;
+
+	/**
+	 * The command which starts an engine
+	 */
+	private String[] command;
+
+	/**
+	 * The maximal time for a reply in milliseconds
+	 */
+	private long timeout;
+
+	/**
+	 * The workers
+	 */
+	private Worker[] workers;
+
+	/**
+	 * The workers which are not leased
+	 */
+	private LinkedBlockingQueue<Worker> idle = new LinkedBlockingQueue<Worker>();
+
+	/**
+	 * The threads of the work queue
+	 */
+	private ExecutorService queue;
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param command
+	 *            The command which starts an engine
+	 * @param size
+	 *            The number of workers
+	 * @param timeout
+	 *            The maximal time for a reply in milliseconds
+	 */
+	public EnginePool(String[] command, int size, long timeout) {
+		this.command = command;
+		this.timeout = timeout;
+		workers = new Worker[size];
+		for (int i = 0; i < size; i++) {
+			workers[i] = new Worker(i);
+			idle.add(workers[i]);
+		}
+		queue = Executors.newFixedThreadPool(size, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Engine pool");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Get the pool of the session (the workers run the console command)
+	 * 
+	 * @return The only instance of this class
+	 */
+	public static synchronized EnginePool getInstance() {
+		if (singleton == null)
+			singleton = new EnginePool(CM.getAsCommand("ConsoleCommand"), CM
+					.getAsInt("fme.components.console.EnginePool.Size"),
+					10 * 60 * 1000);
+		return singleton;
+	}
+
+	/**
+	 * Get the number of workers
+	 * 
+	 * @return The number of workers
+	 */
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Lease a worker. The caller has exclusive use of the worker until it is
+	 * released.
+	 * 
+	 * @return A worker (its engine is restarted if necessary)
+	 * @throws InterruptedException
+	 *             If the caller is interrupted while all workers are leased
+	 */
+	public Worker lease() throws InterruptedException {
+		Worker ret = idle.take();
+		ret.leased();
+		return ret;
+	}
+
+	/**
+	 * Lease a worker. The caller has exclusive use of the worker until it is
+	 * released.
+	 * 
+	 * @param wait
+	 *            The maximal time to wait for a worker
+	 * @param unit
+	 *            The unit of the time
+	 * @return A worker (its engine is restarted if necessary) or null if no
+	 *         worker became available in time
+	 * @throws InterruptedException
+	 *             If the caller is interrupted while all workers are leased
+	 */
+	public Worker lease(long wait, TimeUnit unit) throws InterruptedException {
+		Worker ret = idle.poll(wait, unit);
+		if (ret != null)
+			ret.leased();
+		return ret;
+	}
+
+	/**
+	 * Put a request into the work queue. The request is sent to the next
+	 * free worker.
+	 * 
+	 * @param cmd
+	 *            The command to send
+	 * @return The reply (completed exceptionally if the worker failed)
+	 */
+	public CompletableFuture<String> submit(final String cmd) {
+		final CompletableFuture<String> ret = new CompletableFuture<String>();
+
+		queue.execute(new Runnable() {
+			public void run() {
+				Worker w = null;
+				try {
+					w = lease();
+					ret.complete(w.request(cmd));
+				} catch (Exception e) {
+					ret.completeExceptionally(e);
+				} finally {
+					if (w != null)
+						w.release();
+				}
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Stop all workers. The pool can't be used afterwards.
+	 */
+	public void shutdown() {
+		queue.shutdownNow();
+		for (int i = 0; i < workers.length; i++)
+			workers[i].stop();
+		synchronized (EnginePool.class) {
+			if (singleton == this)
+				singleton = null;
+		}
+	}
+
+	// Internal Classes
+	// ================
+
+	/**
+	 * An engine process of the pool
+	 */
+	public class Worker {
+
+		private int number;
+
+		private Process process;
+
+		private ConsoleObserver observer;
+
+		/**
+		 * The number of starts of the engine
+		 */
+		private int starts;
+
+		/**
+		 * Indicates if the worker is leased
+		 */
+		private boolean leased;
+
+		private Worker(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * Send a request to the engine and wait for the reply
+		 * 
+		 * @param cmd
+		 *            The command to send
+		 * @return The reply (the output of the engine up to the end of the
+		 *         command)
+		 * @throws IOException
+		 *             If the engine terminated or didn't reply in time (the
+		 *             engine is restarted and has lost its program state)
+		 */
+		public String request(String cmd) throws IOException {
+			if (!checkHealth())
+				throw new IOException("Engine " + number + " can't be started");
+			return send(observer, cmd);
+		}
+
+		/**
+		 * Check the engine and restart it if it has terminated
+		 * 
+		 * @return True if the engine is running
+		 */
+		public synchronized boolean checkHealth() {
+			if (process != null && process.isAlive() && !observer.isClosed())
+				return true;
+			stop();
+			return start();
+		}
+
+		/**
+		 * Get the number of restarts of the engine (every restart loses the
+		 * program state)
+		 * 
+		 * @return The number of restarts
+		 */
+		public int getRestarts() {
+			return Math.max(0, starts - 1);
+		}
+
+		/**
+		 * Give the worker back to the pool (further calls are ignored until
+		 * the worker is leased again)
+		 */
+		public synchronized void release() {
+			if (!leased) {
+				Logger.getLogger(EnginePool.class.getCanonicalName()).log(
+						Level.WARNING,
+						"Engine " + number + " was released twice");
+				return;
+			}
+			leased = false;
+			idle.add(this);
+		}
+
+		// Internal Methods
+		// ================
+
+		private synchronized void leased() {
+			leased = true;
+			checkHealth();
+		}
+
+		private String send(ConsoleObserver o, String cmd) throws IOException {
+			String ret;
+
+			try {
+				CompletableFuture<String> reply = o.submit(cmd, null);
+				o.flush();
+				ret = reply.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			} catch (TimeoutException e) {
+				stop();
+				throw new IOException("Engine " + number
+						+ " didn't reply in time");
+			}
+
+			if (o.isClosed()) {
+				stop();
+				throw new IOException("Engine " + number + " terminated");
+			}
+			return ret;
+		}
+
+		private synchronized boolean start() {
+			Logger.getLogger(EnginePool.class.getCanonicalName()).log(
+					Level.INFO, "Starting engine " + number);
+			starts++;
+			try {
+				process = new ProcessBuilder(command).redirectErrorStream(true)
+						.start();
+				observer = new ConsoleObserver();
+				observer.connect(process.getInputStream(), null, process
+						.getOutputStream());
+				observer.initialise();
+
+				// The startup output must not end up in the first reply
+				send(observer, "");
+				return true;
+			} catch (IOException e) {
+				Logger.getLogger(EnginePool.class.getCanonicalName()).log(
+						Level.SEVERE, "Can't start engine " + number + ": " + e);
+				stop();
+				return false;
+			}
+		}
+
+		private synchronized void stop() {
+			if (process != null)
+				process.destroy();
+			process = null;
+			observer = null;
+		}
+	}
+}
@@ -99,6 +99,11 @@ public class ExecutionConsole extends JFrame implements Runnable,
 	 */
 	private String waitFor;
 
+	/**
+	 * Detects the end of a response in the engine output
+	 */
+	private SentinelMatcher matcher;
+
 	/**
 	 * Indicates if the engine is writing output
 	 */
@@ -120,6 +125,7 @@ public class ExecutionConsole extends JFrame implements Runnable,
 	public void run() {
 
 		int d;
+		char[] chunk = new char[8192];
 		boolean end = false, update = false;
 
 		Logger.getLogger(this.getClass().getCanonicalName()).log(
@@ -145,24 +151,20 @@ public class ExecutionConsole extends JFrame implements Runnable,
 				if (lineIn.ready()) {
 					busy = true;
 					while (lineIn.ready()) {
-						d = lineIn.read();
+						d = lineIn.read(chunk);
 						if (d == -1) {
 							end = true;
 							break;
 						}
 						if (sendToBuffer)
-							buffer.append("" + (char) d);
+							buffer.append(chunk, 0, d);
 						else
-							graphicConsole.append("" + (char) d);
-					}
-					if (waitFor == null)
-						busy = false;
-					else {
-						if (sendToBuffer && buffer.toString().contains(waitFor))
-							busy = false;
-						else if (graphicConsole.getText().contains(waitFor))
+							graphicConsole.append(new String(chunk, 0, d));
+						if (matcher != null && matcher.feed(chunk, 0, d))
 							busy = false;
 					}
+					if (matcher == null)
+						busy = false;
 					update = true;
 				}
 
@@ -176,15 +178,15 @@ public class ExecutionConsole extends JFrame implements Runnable,
 						graphicConsole.append(CM.ls
 								+ "==ERROR Stream=================" + CM.ls);
 					while (lineErr.ready()) {
-						d = lineErr.read();
+						d = lineErr.read(chunk);
 						if (d == -1) {
 							end = true;
 							break;
 						}
 						if (sendToBuffer)
-							buffer.append("" + (char) d);
+							buffer.append(chunk, 0, d);
 						else
-							graphicConsole.append("" + (char) d);
+							graphicConsole.append(new String(chunk, 0, d));
 					}
 					if (sendToBuffer)
 						buffer.append(CM.ls + "==============================="
@@ -286,6 +288,8 @@ public class ExecutionConsole extends JFrame implements Runnable,
 	 */
 	public void setSendToBuffer(boolean sendToBuffer) {
 		buffer = new StringBuffer();
+		if (matcher != null)
+			matcher.reset();
 		this.sendToBuffer = sendToBuffer;
 	}
 
@@ -316,6 +320,8 @@ public class ExecutionConsole extends JFrame implements Runnable,
 	 */
 	public void setWaitForString(String waitFor) {
 		this.waitFor = waitFor;
+		matcher = waitFor == null || waitFor.length() == 0 ? null
+				: new SentinelMatcher(waitFor);
 	}
 
 	/**
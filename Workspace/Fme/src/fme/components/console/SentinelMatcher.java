@@ -0,0 +1,151 @@
+/**
+ * Project: fme
+ */
+
+package fme.components.console;
+
+/**
+ * This class detects a sequence of characters (e.g. the end of an engine's
+ * response) in a stream of characters. The characters are fed in as they
+ * arrive; every character is looked at only once (Knuth-Morris-Pratt), so
+ * neither the received text nor the console history has to be searched
+ * again.
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class SentinelMatcher {
+
+	/**
+	 * The sequence of characters to detect
+	 */
+	private char[] sentinel;
+
+	/**
+	 * The length of the longest proper prefix of the sentinel which is also a
+	 * suffix of the first i+1 characters of the sentinel
+	 */
+	private int[] fallback;
+
+	/**
+	 * The number of matched characters of the sentinel
+	 */
+	private int matched;
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param sentinel
+	 *            The sequence of characters to detect (not empty)
+	 */
+	public SentinelMatcher(String sentinel) {
+		int k = 0;
+
+		if (sentinel.length() == 0)
+			throw new IllegalArgumentException("Empty sentinel");
+		this.sentinel = sentinel.toCharArray();
+		fallback = new int[this.sentinel.length];
+		for (int i = 1; i < this.sentinel.length; i++) {
+			while (k > 0 && this.sentinel[i] != this.sentinel[k])
+				k = fallback[k - 1];
+			if (this.sentinel[i] == this.sentinel[k])
+				k++;
+			fallback[i] = k;
+		}
+	}
+
+	/**
+	 * Feed characters into the matcher
+	 * 
+	 * @param text
+	 *            The characters
+	 * @param offset
+	 *            The position of the first character
+	 * @param length
+	 *            The number of characters
+	 * @return True if the sentinel was detected (in these or earlier
+	 *         characters)
+	 */
+	public boolean feed(char[] text, int offset, int length) {
+		char c;
+		int end = offset + length;
+
+		for (int i = offset; i < end && matched < sentinel.length; i++) {
+			c = text[i];
+			while (matched > 0 && c != sentinel[matched])
+				matched = fallback[matched - 1];
+			if (c == sentinel[matched])
+				matched++;
+		}
+		return matched == sentinel.length;
+	}
+
+	/**
+	 * Search the sentinel in characters which follow the characters fed so
+	 * far. After the sentinel was found the matcher starts again, so every
+	 * occurrence of the sentinel in a stream is found.
+	 * 
+	 * @param text
+	 *            The characters
+	 * @param offset
+	 *            The position of the first character
+	 * @param length
+	 *            The number of characters
+	 * @return The position after the sentinel or -1 if the sentinel wasn't
+	 *         completed in these characters
+	 */
+	public int find(char[] text, int offset, int length) {
+		char c;
+		int end = offset + length;
+
+		if (matched == sentinel.length)
+			matched = 0;
+		for (int i = offset; i < end; i++) {
+			c = text[i];
+			while (matched > 0 && c != sentinel[matched])
+				matched = fallback[matched - 1];
+			if (c == sentinel[matched] && ++matched == sentinel.length) {
+				matched = 0;
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the number of characters at the end of the fed characters which
+	 * may be the beginning of the sentinel
+	 * 
+	 * @return The number of matched characters of the sentinel
+	 */
+	public int getMatchedLength() {
+		return matched;
+	}
+
+	/**
+	 * Feed characters into the matcher
+	 * 
+	 * @param text
+	 *            The characters
+	 * @return True if the sentinel was detected (in these or earlier
+	 *         characters)
+	 */
+	public boolean feed(String text) {
+		return feed(text.toCharArray(), 0, text.length());
+	}
+
+	/**
+	 * Check if the sentinel was detected
+	 * 
+	 * @return True if the sentinel was detected
+	 */
+	public boolean isMatched() {
+		return matched == sentinel.length;
+	}
+
+	/**
+	 * Forget all fed characters
+	 */
+	public void reset() {
+		matched = 0;
+	}
+}
@@ -103,9 +103,20 @@ public class EditorGUI extends GUIComponent {
 
 		if (AST.getFile() == null)
 			return;
-		editorPane.setText(AST.getAST().prettyPrint(-1).toString());
+		StringBuilder code = new StringBuilder();
+		try {
+			AST.prettyPrint(code);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw IOExceptions
+		}
+		// The new text is lexed once when it is linked with the tree (and
+		// not while it replaces the old text)
+		document.removeDocumentListener(listener);
+		editorPane.setText(code.toString());
 		document = (StyledDocument) editorPane.getDocument();
+		document.removeDocumentListener(listener);
 		document.addDocumentListener(listener);
+		document.removeUndoableEditListener(listener);
 		document.addUndoableEditListener(listener);
 
 		AST.identifyTokens(document);
@@ -124,7 +135,9 @@ public class EditorGUI extends GUIComponent {
 			editorPane.setPage(Console.getInstance().getWorkingFile().toURI()
 					.toURL());
 			document = (StyledDocument) editorPane.getDocument();
+			document.removeDocumentListener(listener);
 			document.addDocumentListener(listener);
+			document.removeUndoableEditListener(listener);
 			document.addUndoableEditListener(listener);
 			getInternalFrame().setTitle(getName());
 		} catch (IOException e) {
@@ -9,7 +9,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +34,7 @@ import fme.components.tree.TreeGUI;
 import fme.config.CM;
 import fme.wsl.ast.ASTNode;
 import fme.wsl.lexer.LexerToken;
+import fme.wsl.lexer.TokenStream;
 import fme.wsl.lexer.WSLLexer;
 
 public class EditorListener implements CaretListener, DocumentListener,
@@ -123,14 +123,7 @@ public class EditorListener implements CaretListener, DocumentListener,
                 editorGUI.markText(0, 0, Color.WHITE);
                 blockColoring = false;
             } else {
-                if (editorGUI.isDocumentModified()) {
-                    disableBlockColoring();
-                    JOptionPane
-                            .showMessageDialog(
-                                    editorGUI,
-                                    "Document has been modified.\nPlease save the changes to enable the coloring.",
-                                    "Message", JOptionPane.ERROR_MESSAGE);
-                } else if (Console.getInstance().isDocumentErroneous()) {
+                if (Console.getInstance().isDocumentErroneous()) {
                     JOptionPane
                             .showMessageDialog(
                                     editorGUI,
@@ -165,10 +158,10 @@ public class EditorListener implements CaretListener, DocumentListener,
      * @see javax.swing.event.CaretListener#caretUpdate(javax.swing.event.CaretEvent)
      */
     public void caretUpdate(CaretEvent e) {
-        int j, st, en, row, pos;
+        int st, en, row, pos;
         LexerToken token = null;
         ASTNode astNode = null;
-        Vector<LexerToken> tokenList = WSLLexer.getTokens();
+        TokenStream tokenList = WSLLexer.getTokenStream();
         Color col;
 
         editorGUI.updateStatusBar();
@@ -186,12 +179,9 @@ public class EditorListener implements CaretListener, DocumentListener,
         pos = e.getDot();
 
         // Search for the token begin
-        for (j = pos; j >= 0; j--) {
-            if ((token = WSLLexer.getToken(j)) != null) {
-                Logger.getLogger(this.getClass().getCanonicalName()).log(
-                        Level.INFO, "Click on Token:" + token.getName());
-                break;
-            }
+        if ((token = WSLLexer.tokenAt(pos)) != null) {
+            Logger.getLogger(this.getClass().getCanonicalName()).log(
+                    Level.INFO, "Click on Token:" + token.getName());
         }
 
         // If a token has been identified mark it and its corresponding tree
@@ -216,33 +206,26 @@ public class EditorListener implements CaretListener, DocumentListener,
                 noUpdate = false;
 
                 // Mark a block
-                if (astNode.getLexerToken().size() == 2) {
-                    st = tokenList.get(
-                            astNode.getLexerToken().get(0).intValue())
-                            .getPosStart();
+                if (astNode.getLexerTokenCount() == 2) {
+                    st = tokenList.getStart(astNode.getFirstLexerToken());
 
-                    en = astNode.getLexerToken().get(1).intValue();
+                    en = astNode.getLastLexerToken();
 
                     // Detect if the last token consists of more than one token
-                    if (!tokenList.get(en).getASTNode().equals(astNode)) {
-                        en = tokenList.get(en).getASTNode().getLexerToken()
-                                .lastElement().intValue();
+                    if (!tokenList.getASTNode(en).equals(astNode)) {
+                        en = tokenList.getASTNode(en).getLastLexerToken();
                     }
 
-                    en = tokenList.get(en).getPosEnd();
+                    en = tokenList.getEnd(en);
                     Logger.getLogger(this.getClass().getCanonicalName()).log(
                             Level.INFO,
                             "  Marking block from:" + st + " to " + en);
                 }
                 // Mark a single statement
                 else {
-                    st = tokenList.get(
-                            astNode.getLexerToken().get(0).intValue())
-                            .getPosStart();
+                    st = tokenList.getStart(astNode.getFirstLexerToken());
 
-                    en = tokenList.get(
-                            astNode.getLexerToken().get(0).intValue())
-                            .getPosEnd();
+                    en = tokenList.getEnd(astNode.getFirstLexerToken());
 
                     Logger.getLogger(this.getClass().getCanonicalName()).log(
                             Level.INFO,
@@ -275,8 +258,8 @@ public class EditorListener implements CaretListener, DocumentListener,
     }
 
     public void insertUpdate(DocumentEvent e) {
+        WSLLexer.update(e);
         if (!editorGUI.isDocumentModified()) {
-            disableBlockColoring();
             editorGUI.setDocumentModified(true);
             editorGUI.getInternalFrame().setTitle(
                     editorGUI.getInternalFrame().getTitle() + " - Modified");
@@ -284,8 +267,8 @@ public class EditorListener implements CaretListener, DocumentListener,
     }
 
     public void removeUpdate(DocumentEvent e) {
+        WSLLexer.update(e);
         if (!editorGUI.isDocumentModified()) {
-            disableBlockColoring();
             editorGUI.setDocumentModified(true);
             editorGUI.getInternalFrame().setTitle(
                     editorGUI.getInternalFrame().getTitle() + " - Modified");
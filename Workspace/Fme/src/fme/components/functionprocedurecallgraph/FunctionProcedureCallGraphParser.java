@@ -13,7 +13,7 @@ import fme.components.console.Console;
 import fme.gui.MainFrame;
 import fme.wsl.ast.AST;
 import fme.wsl.ast.ASTNode;
-import fme.wsl.ast.ASTNodePreOrderTreeIterator;
+import fme.wsl.ast.ASTVisitor;
 
 /**
  * This class gathers the information for the Function/Procedure Call Graph
@@ -35,6 +35,16 @@ public class FunctionProcedureCallGraphParser {
 
 	private static Vector<WSLCodeArea> areas;
 
+	/**
+	 * The node types which are analysed (calls, definitions and variables)
+	 */
+	private static final String[] ANALYSED_TYPES = { "T_Proc_Call",
+			"T_Funct_Call", "T_BFunct_Call", "T_MW_Proc_Call",
+			"T_MW_Funct_Call", "T_MW_BFunct_Call", "T_X_Proc_Call",
+			"T_X_Funct_Call", "T_X_BFunct_Call", "T_A_Proc_Call", "T_BFunct",
+			"T_Funct", "T_Proc", "T_MW_BFunct", "T_MW_Funct", "T_MW_Proc",
+			"T_Var_Lvalue", "T_Variable" };
+
 	public static Vector<WSLCodeArea> parse(boolean allProjectFiles,boolean showExternalCalls) {
 
 		Iterator<File> i;
@@ -72,7 +82,7 @@ public class FunctionProcedureCallGraphParser {
 				name = file.getName().toUpperCase().replace(".WSL", "");
 				currentModule = name;
 				area = new WSLCodeArea(name, WSLCodeArea.MODULE, file, root);
-				analyse(area, new ASTNodePreOrderTreeIterator(root));
+				analyse(area, root);
 			}
 			Console.getInstance().loadFile(cf);
 		} else {
@@ -84,7 +94,7 @@ public class FunctionProcedureCallGraphParser {
 			name = file.getName().toUpperCase().replace(".WSL", "");
 			area = new WSLCodeArea(name, WSLCodeArea.MODULE, file, root);
 			currentModule = name;
-			analyse(area, new ASTNodePreOrderTreeIterator(root));
+			analyse(area, root);
 		}
 
 		return areas;
@@ -93,93 +103,18 @@ public class FunctionProcedureCallGraphParser {
 	// Internal Methods
 	// ================
 
-	private static void analyse(WSLCodeArea area, ASTNodePreOrderTreeIterator it) {
-		ASTNode node;
+	private static void analyse(final WSLCodeArea area, ASTNode... roots) {
 
 		Logger.getLogger(FunctionProcedureCallGraphParser.class.getCanonicalName()).log(
 				Level.INFO, "Analysing Code Area: " + area + "");
 
-		while (it.hasNext()) {
-			node = it.next();
-			if (node.getSpecificType().equals("T_Proc_Call")) {
-				area.addCall(node.getChildAt(0).getValue(),
-						WSLCodeArea.PROCEDURE, node);
-			} else if (node.getSpecificType().equals("T_Funct_Call")) {
-				area.addCall(currentModule+":"+node.getChildAt(0).getValue(),
-						WSLCodeArea.FUNCTION, node);
-			} else if (node.getSpecificType().equals("T_BFunct_Call")) {
-				area.addCall(currentModule+":"+node.getChildAt(0).getValue(),
-						WSLCodeArea.BFUNCTION, node);
-			} else if (node.getSpecificType().equals("T_MW_Proc_Call")) {
-				area.addCall(node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_PROCEDURE, node);
-			} else if (node.getSpecificType().equals("T_MW_Funct_Call")) {
-				area.addCall(node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_FUNCTION, node);
-			} else if (node.getSpecificType().equals("T_MW_BFunct_Call")) {
-				area.addCall(node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_BFUNCTION, node);
-			}
-			if (parseExternCalls) {
-				if (node.getSpecificType().equals("T_X_Proc_Call")) {
-					area.addCall(node.getChildAt(0).getValue(),
-							WSLCodeArea.External_PROCEDURE, node);
-				} else if (node.getSpecificType().equals("T_X_Funct_Call")) {
-					area.addCall(node.getChildAt(0).getValue(),
-							WSLCodeArea.External_FUNCTION, node);
-				} else if (node.getSpecificType().equals("T_X_BFunct_Call")) {
-					area.addCall(node.getChildAt(0).getValue(),
-							WSLCodeArea.External_BFUNCTION, node);
-				} else if (node.getSpecificType().equals("T_A_Proc_Call")) {
-					area.addCall(node.getChildAt(0).getValue(),
-							WSLCodeArea.External_A_PROCEDURE, node);
-				}
-			}
-			// Scan Functions
-			if (node.getSpecificType().equals("T_BFunct")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(), WSLCodeArea.BFUNCTION,
-						file, node), new ASTNodePreOrderTreeIterator(node
-						.getChildAt(3)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_Funct")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(), WSLCodeArea.FUNCTION,
-						file, node), new ASTNodePreOrderTreeIterator(node
-						.getChildAt(3)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_Proc")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(), WSLCodeArea.PROCEDURE,
-						file, node), new ASTNodePreOrderTreeIterator(node
-						.getChildAt(3)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_MW_BFunct")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_BFUNCTION, file, node),
-						new ASTNodePreOrderTreeIterator((ASTNode) node
-								.getChildAt(3), node.getChildAt(4)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_MW_Funct")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_FUNCTION, file, node),
-						new ASTNodePreOrderTreeIterator(node.getChildAt(3),
-								node.getChildAt(4)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_MW_Proc")) {
-				analyse(new WSLCodeArea(area.getName() + ":"
-						+ node.getChildAt(0).getValue(),
-						WSLCodeArea.MetaWSL_PROCEDURE, file, node),
-						new ASTNodePreOrderTreeIterator(node.getChildAt(3)));
-				it.skipChildren();
-			} else if (node.getSpecificType().equals("T_Var_Lvalue")
-					|| node.getSpecificType().equals("T_Variable")) {
-				area.addVariable(node.getValue());
+		ASTVisitor visitor = new ASTVisitor() {
+			public boolean visit(ASTNode node) {
+				return analyseNode(area, node);
 			}
-
-		}
+		};
+		for (int i = 0; i < roots.length; i++)
+			roots[i].accept(visitor, ANALYSED_TYPES);
 
 		areas.add(area);
 
@@ -187,6 +122,87 @@ public class FunctionProcedureCallGraphParser {
 				Level.INFO, "Code Area: " + area + " done ...");
 	}
 
+	/**
+	 * Analyse a node of the code area
+	 * 
+	 * @return False if the node starts a new code area
+	 */
+	private static boolean analyseNode(WSLCodeArea area, ASTNode node) {
+		if (node.getSpecificType().equals("T_Proc_Call")) {
+			area.addCall(node.getChildAt(0).getValue(),
+					WSLCodeArea.PROCEDURE, node);
+		} else if (node.getSpecificType().equals("T_Funct_Call")) {
+			area.addCall(currentModule+":"+node.getChildAt(0).getValue(),
+					WSLCodeArea.FUNCTION, node);
+		} else if (node.getSpecificType().equals("T_BFunct_Call")) {
+			area.addCall(currentModule+":"+node.getChildAt(0).getValue(),
+					WSLCodeArea.BFUNCTION, node);
+		} else if (node.getSpecificType().equals("T_MW_Proc_Call")) {
+			area.addCall(node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_PROCEDURE, node);
+		} else if (node.getSpecificType().equals("T_MW_Funct_Call")) {
+			area.addCall(node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_FUNCTION, node);
+		} else if (node.getSpecificType().equals("T_MW_BFunct_Call")) {
+			area.addCall(node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_BFUNCTION, node);
+		}
+		if (parseExternCalls) {
+			if (node.getSpecificType().equals("T_X_Proc_Call")) {
+				area.addCall(node.getChildAt(0).getValue(),
+						WSLCodeArea.External_PROCEDURE, node);
+			} else if (node.getSpecificType().equals("T_X_Funct_Call")) {
+				area.addCall(node.getChildAt(0).getValue(),
+						WSLCodeArea.External_FUNCTION, node);
+			} else if (node.getSpecificType().equals("T_X_BFunct_Call")) {
+				area.addCall(node.getChildAt(0).getValue(),
+						WSLCodeArea.External_BFUNCTION, node);
+			} else if (node.getSpecificType().equals("T_A_Proc_Call")) {
+				area.addCall(node.getChildAt(0).getValue(),
+						WSLCodeArea.External_A_PROCEDURE, node);
+			}
+		}
+		// Scan Functions
+		if (node.getSpecificType().equals("T_BFunct")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(), WSLCodeArea.BFUNCTION,
+					file, node), node.getChildAt(3));
+			return false;
+		} else if (node.getSpecificType().equals("T_Funct")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(), WSLCodeArea.FUNCTION,
+					file, node), node.getChildAt(3));
+			return false;
+		} else if (node.getSpecificType().equals("T_Proc")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(), WSLCodeArea.PROCEDURE,
+					file, node), node.getChildAt(3));
+			return false;
+		} else if (node.getSpecificType().equals("T_MW_BFunct")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_BFUNCTION, file, node),
+					node.getChildAt(3), node.getChildAt(4));
+			return false;
+		} else if (node.getSpecificType().equals("T_MW_Funct")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_FUNCTION, file, node),
+					node.getChildAt(3), node.getChildAt(4));
+			return false;
+		} else if (node.getSpecificType().equals("T_MW_Proc")) {
+			analyse(new WSLCodeArea(area.getName() + ":"
+					+ node.getChildAt(0).getValue(),
+					WSLCodeArea.MetaWSL_PROCEDURE, file, node),
+					node.getChildAt(3));
+			return false;
+		} else if (node.getSpecificType().equals("T_Var_Lvalue")
+				|| node.getSpecificType().equals("T_Variable")) {
+			area.addVariable(node.getValue());
+		}
+		return true;
+	}
+
 	private static ASTNode parseFile(File file) {
 
 		// SimpleNode tree = null;
@@ -0,0 +1,158 @@
+/**
+ * Project: fme
+ */
+
+package fme.components.tree;
+
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+import fme.wsl.ast.ASTCursor;
+import fme.wsl.ast.MappedAST;
+
+/**
+ * This class is a tree model of a mapped tree (see MappedAST). The JTree
+ * only gets small handles of the nodes it displays; the data of the nodes
+ * stays in the mapped file.
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class MappedTreeModel implements TreeModel {
+
+    private MappedAST ast;
+
+    private ASTCursor cursor;
+
+    /**
+     * The Constructor
+     * 
+     * @param ast
+     *            The mapped tree
+     */
+    public MappedTreeModel(MappedAST ast) {
+        this.ast = ast;
+        cursor = ast.getCursor();
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getRoot()
+     */
+    public Object getRoot() {
+        return new Node(0);
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getChild(java.lang.Object, int)
+     */
+    public Object getChild(Object parent, int index) {
+        cursor.moveTo(((Node) parent).row);
+        if (!cursor.toChild(index))
+            return null;
+        return new Node(cursor.getRow());
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getChildCount(java.lang.Object)
+     */
+    public int getChildCount(Object parent) {
+        cursor.moveTo(((Node) parent).row);
+        return cursor.getChildCount();
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.tree.TreeModel#isLeaf(java.lang.Object)
+     */
+    public boolean isLeaf(Object node) {
+        return getChildCount(node) == 0;
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getIndexOfChild(java.lang.Object,
+     *      java.lang.Object)
+     */
+    public int getIndexOfChild(Object parent, Object child) {
+        if (!(parent instanceof Node) || !(child instanceof Node))
+            return -1;
+        cursor.moveTo(((Node) child).row);
+        if (!cursor.toParent() || cursor.getRow() != ((Node) parent).row)
+            return -1;
+        cursor.moveTo(((Node) child).row);
+        return cursor.getIndex();
+    }
+
+    /**
+     * The tree can't be changed
+     * 
+     * @see javax.swing.tree.TreeModel#valueForPathChanged(javax.swing.tree.TreePath,
+     *      java.lang.Object)
+     */
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    public void addTreeModelListener(TreeModelListener l) {
+    }
+
+    public void removeTreeModelListener(TreeModelListener l) {
+    }
+
+    // Internal Classes
+    // ================
+
+    /**
+     * A node of the displayed tree
+     */
+    public class Node {
+
+        private int row;
+
+        private Node(int row) {
+            this.row = row;
+        }
+
+        /**
+         * Get the row of the node
+         * 
+         * @return The row (in pre-order)
+         */
+        public int getRow() {
+            return row;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Node && ((Node) o).row == row
+                && ((Node) o).getModel() == getModel();
+        }
+
+        public int hashCode() {
+            return row;
+        }
+
+        /**
+         * The same text as ASTNode.toString
+         * 
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            ASTCursor c = new ASTCursor(ast, row);
+            if (c.getValue() == null)
+                return c.getSyntaxName();
+            else
+                return c.getSyntaxName() + " (" + c.getValue() + ")";
+        }
+
+        private MappedTreeModel getModel() {
+            return MappedTreeModel.this;
+        }
+    }
+}
@@ -6,7 +6,6 @@ package fme.components.tree;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,7 +19,7 @@ import fme.components.editor.EditorGUI;
 import fme.config.CM;
 import fme.wsl.ast.AST;
 import fme.wsl.ast.ASTNode;
-import fme.wsl.lexer.LexerToken;
+import fme.wsl.lexer.TokenStream;
 import fme.wsl.lexer.WSLLexer;
 
 /**
@@ -71,7 +70,7 @@ public class TreeListener implements ActionListener, TreeSelectionListener {
      */
     public void valueChanged(TreeSelectionEvent e) {
 
-        Vector<LexerToken> tokenList = WSLLexer.getTokens();
+        TokenStream tokenList = WSLLexer.getTokenStream();
         int st, en;
 
         if (noUpdate || Console.getInstance().isDocumentErroneous()
@@ -92,26 +91,22 @@ public class TreeListener implements ActionListener, TreeSelectionListener {
         // Mark the AST Node in the source code
 
         // Mark nothing cause the AST node is not in the source code
-        if (astNode.getLexerToken().size() == 0) {
+        if (astNode.getLexerTokenCount() == 0) {
             ComponentRegistry.updateGUI(ComponentRegistry.TREE_MARKING);
             return;
         }
         // Mark a block
-        else if (astNode.getLexerToken().size() == 2) {
-            st = tokenList.get(astNode.getLexerToken().get(0).intValue())
-                .getPosStart();
-            en = tokenList.get(astNode.getLexerToken().get(1).intValue())
-                .getPosEnd();
+        else if (astNode.getLexerTokenCount() == 2) {
+            st = tokenList.getStart(astNode.getFirstLexerToken());
+            en = tokenList.getEnd(astNode.getLastLexerToken());
 
             Logger.getLogger(this.getClass().getCanonicalName()).log(
                 Level.INFO, "  Marking block from:" + st + " to " + en);
         }
         // Mark a single statement
         else {
-            st = tokenList.get(astNode.getLexerToken().get(0).intValue())
-                .getPosStart();
-            en = tokenList.get(astNode.getLexerToken().get(0).intValue())
-                .getPosEnd();
+            st = tokenList.getStart(astNode.getFirstLexerToken());
+            en = tokenList.getEnd(astNode.getFirstLexerToken());
 
             Logger.getLogger(this.getClass().getCanonicalName()).log(
                 Level.INFO, "  Marking single token from:" + st + " to " + en);
@@ -156,6 +156,10 @@ public class CM {
             Color.DARK_GRAY);
 
         config.put("fme.components.console.ConsoleObserver", "default");
+        config.put("fme.components.console.EnginePool.Size", new Integer(2));
+
+        config.put("fme.wsl.lexer.WSLLexer", "default");
+        config.put("fme.wsl.lexer.WSLLexer.ChunkSize", new Integer(65536));
 
         // Parse config XML file to override
         // =================================
@@ -238,6 +242,16 @@ public class CM {
         return ((Color) singleton.config.get(key));
     }
 
+    /**
+     * Gets a command line value
+     * 
+     * @return The arguments of the command (surrounding whitespace is
+     *         ignored)
+     */
+    public static String[] getAsCommand(String key) {
+        return ((String) singleton.config.get(key)).trim().split("\\s+");
+    }
+
     /**
      * Gets a value
      * 
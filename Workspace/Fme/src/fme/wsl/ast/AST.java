@@ -5,19 +5,16 @@
 package fme.wsl.ast;
 
 import java.io.File;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
+import java.io.IOException;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
-import javax.swing.text.PlainDocument;
 
-import fme.wsl.lexer.LexerToken;
+import fme.wsl.lexer.TokenStream;
 import fme.wsl.lexer.WSLLexer;
-import fme.wsl.tables.WSLTreeGrammarTable;
 
 /**
  * This class holds the AST of the current WSL program
@@ -26,6 +23,12 @@ import fme.wsl.tables.WSLTreeGrammarTable;
  */
 public class AST {
 
+	/**
+	 * The number of lexer token moves which are kept until they are applied
+	 * to all nodes
+	 */
+	private static final int MAX_MOVES = 256;
+
 	/**
 	 * The AST of a WSL program
 	 */
@@ -41,6 +44,46 @@ public class AST {
 	 */
 	private static Vector<ASTNode> nodes;
 
+	/**
+	 * The index of the node types and values
+	 */
+	private static ASTIndex index;
+
+	/**
+	 * The source code of a tree which was restored from the cache (until the
+	 * tree is linked with the editor's document)
+	 */
+	private static String cachedSource;
+
+	/**
+	 * The lexer tokens of the cached source code
+	 */
+	private static TokenStream cachedTokens;
+
+	/**
+	 * The restored lexer token indices of the nodes (count, first and last
+	 * token of every row). Edits of the document before the tree is linked
+	 * move the indices of the nodes.
+	 */
+	private static int[] cachedNodeTokens;
+
+	/**
+	 * The lexer token moves which weren't applied to all nodes yet (first,
+	 * last and newLast of every move). A node applies them when its lexer
+	 * tokens are read.
+	 */
+	private static int[] moves = new int[3 * MAX_MOVES];
+
+	/**
+	 * The number of moves in the array
+	 */
+	private static int moveCount;
+
+	/**
+	 * The number of all moves before the moves in the array
+	 */
+	private static int moveBase;
+
 	/**
 	 * Parse a tree from the FermaT engine
 	 * 
@@ -48,52 +91,28 @@ public class AST {
 	 *            The text representation of the engine's tree
 	 */
 	public static boolean parseTree(String buffer) {
+		ASTBuilder builder = new ASTBuilder();
+		builder.addText(buffer);
+		return parseTree(builder);
+	}
 
-		int level, i;
-		Vector<TreeNode> tree = new Vector<TreeNode>();
-		String line, name;
-		StringTokenizer st = new StringTokenizer(buffer, "\n");
-
-		while (st.hasMoreTokens()) {
-			line = st.nextToken();
-			if (line.contains("\r"))
-				line = line.substring(0, line.length() - 1);
-			for (i = 0; i < line.length(); i++) {
-				if (line.charAt(i) != ' ' && line.charAt(i) != ':')
-					break;
-			}
-			name = line.substring(i, line.length());
-			if (name.equals("#t"))
-				break;
-			level = (line.length() - name.length()) / 3;
-
-			if (WSLTreeGrammarTable.getGrammarOfNode(name.split(" ")[0]) == null) {
-				tree.lastElement().append("\n" + name);
-			} else {
-				tree.add(new TreeNode(level, name));
-			}
-		}
+	/**
+	 * Take over a tree which was built from the FermaT engine's output (e.g.
+	 * while the engine was printing it)
+	 * 
+	 * @param builder
+	 *            The builder which received the text representation of the
+	 *            engine's tree
+	 */
+	public static boolean parseTree(ASTBuilder builder) {
 
-		TreeNode tn = tree.firstElement();
-		tree.remove(0);
+		ASTNode node = builder.finish();
 
 		// File contains no element
-		try {
-			if (tree.firstElement().name.equals(""))
-				return false;
-		} catch (NoSuchElementException e) {
+		if (node == null)
 			return false;
-		}
-
-		ASTNode node = new ASTNode(tn.name, null);
-		addNode(tree, node);
 
-		ast = node;
-
-		// Create the list of Nodes
-		nodes = new Vector<ASTNode>();
-		nodes.add(ast);
-		fillNodes(ast);
+		setTree(node, null, null);
 
 		Logger.getLogger(AST.class.getCanonicalName()).log(Level.INFO,
 				"New tree successfully parsed.");
@@ -101,15 +120,41 @@ public class AST {
 	}
 
 	/**
-	 * Fill the list of nodes
+	 * Take over a tree together with its source code and lexer tokens (e.g.
+	 * restored from the cache)
 	 * 
-	 * @param n
-	 *            The start node
+	 * @param node
+	 *            The top level node
+	 * @param source
+	 *            The source code of the tree or null
+	 * @param tokens
+	 *            The lexer tokens of the source code or null
 	 */
-	private static void fillNodes(ASTNode n) {
-		for (int i = 0; i < n.getChildren().size(); i++) {
-			nodes.add(n.getChildren().get(i));
-			fillNodes(n.getChildren().get(i));
+	static void setTree(ASTNode node, String source, TokenStream tokens) {
+		ast = node;
+		cachedSource = source;
+		cachedTokens = tokens;
+
+		// Create the list of Nodes and number them
+		nodes = new Vector<ASTNode>();
+		ast.numberSubTree(0, nodes);
+		index = new ASTIndex(nodes);
+
+		// The lexer token indices of the new tree are up to date
+		moveBase += moveCount;
+		moveCount = 0;
+		for (int i = 0; i < nodes.size(); i++)
+			nodes.get(i).setLexerTokensMoved();
+
+		cachedNodeTokens = null;
+		if (tokens != null) {
+			cachedNodeTokens = new int[3 * nodes.size()];
+			for (int i = 0; i < nodes.size(); i++) {
+				cachedNodeTokens[3 * i] = nodes.get(i).getLexerTokenCount();
+				cachedNodeTokens[3 * i + 1] = nodes.get(i)
+						.getFirstLexerToken();
+				cachedNodeTokens[3 * i + 2] = nodes.get(i).getLastLexerToken();
+			}
 		}
 	}
 
@@ -123,35 +168,87 @@ public class AST {
 		Logger.getLogger(AST.class.getCanonicalName()).log(Level.INFO,
 				"Trying to link the tree nodes with the WSL source code.");
 
-		Vector<LexerToken> ltl;
-		Iterator<LexerToken> i1, i2;
+		TokenStream linked, tokens;
+
+		// Take the lexer tokens of a restored tree if the document still
+		// contains the cached source code
+		if (cachedTokens != null) {
+			tokens = cachedTokens;
+			cachedTokens = null;
+			try {
+				if (document.getLength() == cachedSource.length()
+						&& document.getText(0, document.getLength()).equals(
+								cachedSource)) {
+					WSLLexer.setTokenStream(document, tokens);
+					for (int i = 0; i < nodes.size(); i++)
+						nodes.get(i).setLexerTokens(cachedNodeTokens[3 * i],
+								cachedNodeTokens[3 * i + 1],
+								cachedNodeTokens[3 * i + 2]);
+					cachedSource = null;
+					cachedNodeTokens = null;
+					return;
+				}
+			} catch (BadLocationException e) {
+			}
+			cachedSource = null;
+			cachedNodeTokens = null;
 
-		// Generate the source code from the tree with linkage information
-		PlainDocument pdoc = new PlainDocument();
-		try {
-			pdoc.insertString(0, ast.prettyPrint(0, true).toString(), null);
-			//System.out.println(ast.prettyPrint(0, false).toString());
-		} catch (Exception e) {
-			e.printStackTrace();
+			// The restored lexer token indices belong to the cached source
+			for (int i = 0; i < nodes.size(); i++)
+				nodes.get(i).setLexerTokens(0, -1, -1);
 		}
 
-		// Generate the linkage between tree and source code
-		WSLLexer.parseWSL(pdoc);
-
-		ltl = new Vector<LexerToken>(WSLLexer.getTokens());
+		// Generate the source code from the tree with linkage information and
+		// generate the linkage between tree and source code
+		StringBuilder code = new StringBuilder();
+		try {
+			new PrettyPrinter(code, true).print(ast, 0);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw IOExceptions
+		}
+		WSLLexer.lex(code);
 
-		i1 = ltl.iterator();
+		linked = WSLLexer.getTokenStream();
 
 		// Now generate the lexer token list with the correct position
 		// information
 		WSLLexer.parseWSL(document);
 
-		i2 = WSLLexer.getTokens().iterator();
+		tokens = WSLLexer.getTokenStream();
 
 		// Set the AST Nodes in the correct LexerToken list
-		while (i1.hasNext() && i2.hasNext()) {
-			i2.next().setASTNode(i1.next().getASTNode());
+		for (int i = 0; i < linked.size() && i < tokens.size(); i++) {
+			tokens.setASTRow(i, linked.getASTRow(i));
+		}
+	}
+
+	/**
+	 * Moves the lexer token indices of the tree nodes after a range of lexer
+	 * tokens has been replaced. The move is recorded and applied to a node
+	 * when its lexer tokens are read (all nodes are only visited when the
+	 * record is full).
+	 * 
+	 * @param first
+	 *            The index of the first replaced token
+	 * @param last
+	 *            The index after the last replaced token
+	 * @param newLast
+	 *            The index after the last new token
+	 */
+	public static void moveLexerTokens(int first, int last, int newLast) {
+		if (nodes == null)
+			return;
+
+		if (moveCount == MAX_MOVES) {
+			for (int i = 0; i < nodes.size(); i++)
+				nodes.get(i).getFirstLexerToken();
+			moveBase += moveCount;
+			moveCount = 0;
 		}
+		moves[3 * moveCount] = first;
+		moves[3 * moveCount + 1] = last;
+		moves[3 * moveCount + 2] = newLast;
+		moveCount++;
 	}
 
 	/**
@@ -163,6 +260,19 @@ public class AST {
 		return ast;
 	}
 
+	/**
+	 * Pretty Print the AST of the current program into source code
+	 * 
+	 * @param out
+	 *            The destination of the source code (e.g. a StringBuilder or
+	 *            a Writer)
+	 * @throws IOException
+	 *             If the destination can't be written
+	 */
+	public static void prettyPrint(Appendable out) throws IOException {
+		new PrettyPrinter(out, false).print(ast, -1);
+	}
+
 	/**
 	 * Get a node from a specific row
 	 * 
@@ -174,6 +284,33 @@ public class AST {
 		return nodes.get(row);
 	}
 
+	/**
+	 * Get all nodes of certain types
+	 * 
+	 * @param types
+	 *            The specific types of the nodes (e.g. T_Call)
+	 * @return The nodes in pre-order
+	 */
+	public static Vector<ASTNode> nodesOfType(String... types) {
+		if (index == null)
+			return new Vector<ASTNode>();
+		return getNodes(index.getRows(types));
+	}
+
+	/**
+	 * Get all names and variables (T_Name, T_Variable and T_Var_Lvalue nodes)
+	 * with a certain value
+	 * 
+	 * @param value
+	 *            The value (e.g. the name of a variable)
+	 * @return The nodes in pre-order
+	 */
+	public static Vector<ASTNode> nodesWithValue(String value) {
+		if (index == null)
+			return new Vector<ASTNode>();
+		return getNodes(index.getRowsWithValue(value));
+	}
+
 	/**
 	 * Get the current source file
 	 * 
@@ -193,50 +330,51 @@ public class AST {
 		AST.file = file;
 	}
 
-	// Internal Methods
-	// ================
-
-	private static void addNode(Vector<TreeNode> tree, ASTNode node) {
-
-		if (tree.size() == 0)
-			return;
-
-		TreeNode tn = tree.firstElement(), tnNew;
-		tree.remove(0);
-		ASTNode childnode = new ASTNode(tn.name, node);
-		node.addChild(childnode);
-
-		while (tree.size() > 0) {
-			tnNew = tree.firstElement();
-			if (tnNew.level == tn.level) {
-				tree.remove(0);
-				tn = tnNew;
-				childnode = new ASTNode(tn.name, node);
-				node.addChild(childnode);
-			} else if (tnNew.level > tn.level)
-				addNode(tree, childnode);
-			else if (tnNew.level < tn.level)
-				return;
-		}
+	/**
+	 * Get the number of lexer token moves so far
+	 * 
+	 * @return The number of moves
+	 */
+	static int getLexerTokenMoves() {
+		return moveBase + moveCount;
 	}
 
-	private static class TreeNode {
-
-		public int level;
-
-		public String name;
+	/**
+	 * Apply the lexer token moves after a number of moves to a lexer token
+	 * index
+	 * 
+	 * @param index
+	 *            The lexer token index
+	 * @param moved
+	 *            The number of moves which were already applied to the index
+	 * @return The moved index (the index is unchanged if the moves are no
+	 *         longer recorded, i.e. the node isn't part of the current tree)
+	 */
+	static int moveLexerToken(int index, int moved) {
+		if (moved < moveBase)
+			return index;
+		for (int i = moved - moveBase; i < moveCount; i++)
+			index = moveLexerToken(index, moves[3 * i], moves[3 * i + 1],
+					moves[3 * i + 2]);
+		return index;
+	}
 
-		public TreeNode(int level, String name) {
-			this.level = level;
-			this.name = name;
-		}
+	// Internal Methods
+	// ================
 
-		public void append(String toAdd) {
-			name = name + toAdd;
-		}
+	private static Vector<ASTNode> getNodes(int[] rows) {
+		Vector<ASTNode> ret = new Vector<ASTNode>(rows.length);
+		for (int i = 0; i < rows.length; i++)
+			ret.add(nodes.get(rows[i]));
+		return ret;
+	}
 
-		public String toString() {
-			return "TreeNode:" + name + " (level=" + level + ")";
-		}
+	private static int moveLexerToken(int index, int first, int last,
+			int newLast) {
+		if (index >= last)
+			return index + newLast - last;
+		else if (index >= newLast)
+			return Math.max(first, newLast - 1);
+		return index;
 	}
 }
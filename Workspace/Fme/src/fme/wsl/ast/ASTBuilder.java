@@ -0,0 +1,311 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.util.NoSuchElementException;
+
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * This class builds an AST from the text representation of the FermaT
+ * engine's tree (output of @Print_WSL). The lines are pushed one by one and
+ * the nodes are created with a stack of the open levels, so the tree is
+ * built in a single pass. The builder can also be used as Appendable which
+ * receives the engine's reply while it is printed.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTBuilder implements Appendable {
+
+	/**
+	 * The top level node (null until the second node has been read)
+	 */
+	private ASTNode root;
+
+	/**
+	 * The parents of the open levels
+	 */
+	private ASTNode[] parents = new ASTNode[32];
+
+	/**
+	 * The last created child of the open levels
+	 */
+	private ASTNode[] lasts = new ASTNode[32];
+
+	/**
+	 * The indention levels of the children of the open levels (-1 if the
+	 * level has no child yet)
+	 */
+	private int[] levels = new int[32];
+
+	/**
+	 * The number of open levels
+	 */
+	private int depth;
+
+	/**
+	 * The level of the node which was read last (and is not created yet)
+	 */
+	private int pendingLevel;
+
+	/**
+	 * The name of the node which was read last or null
+	 */
+	private String pendingName;
+
+	/**
+	 * The continuation lines of the node which was read last or null
+	 */
+	private StringBuilder pendingLines;
+
+	/**
+	 * True if the end of the tree was read
+	 */
+	private boolean finished;
+
+	/**
+	 * True if the following nodes are not part of the tree
+	 */
+	private boolean stopped;
+
+	/**
+	 * True if a line couldn't be added
+	 */
+	private boolean failed;
+
+	/**
+	 * The incomplete line of appended text
+	 */
+	private StringBuilder line = new StringBuilder();
+
+	/**
+	 * Add a line of the text representation
+	 *
+	 * @param text
+	 *            The text which contains the line
+	 * @param start
+	 *            The start of the line
+	 * @param end
+	 *            The end of the line (without the line break)
+	 * @return False if the end of the tree (#t) was read
+	 */
+	public synchronized boolean addLine(CharSequence text, int start, int end) {
+		boolean ok = false;
+
+		if (finished)
+			return false;
+		if (start == end)
+			return true;
+
+		try {
+			ok = readLine(text, start, end);
+		} finally {
+			failed |= !ok && !finished;
+		}
+		return ok;
+	}
+
+	/**
+	 * Add a text which contains several lines
+	 *
+	 * @param text
+	 *            The text
+	 * @return False if the end of the tree (#t) was read
+	 */
+	public synchronized boolean addText(CharSequence text) {
+		int start = 0, end, len = text.length();
+
+		while (start < len) {
+			end = start;
+			while (end < len && text.charAt(end) != '\n')
+				end++;
+			if (!addLine(text, start, end))
+				return false;
+			start = end + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Appendable#append(char)
+	 */
+	public synchronized ASTBuilder append(char c) {
+		if (c == '\n') {
+			addLine(line, 0, line.length());
+			line.setLength(0);
+		} else if (!finished) {
+			line.append(c);
+		}
+		return this;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Appendable#append(java.lang.CharSequence)
+	 */
+	public ASTBuilder append(CharSequence csq) {
+		if (csq == null)
+			csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	/**
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Appendable#append(java.lang.CharSequence, int, int)
+	 */
+	public synchronized ASTBuilder append(CharSequence csq, int start, int end) {
+		int i = start;
+
+		if (csq == null)
+			csq = "null";
+		while (i < end && !finished) {
+			start = i;
+			while (i < end && csq.charAt(i) != '\n')
+				i++;
+			if (i == end) {
+				line.append(csq, start, end);
+			} else if (line.length() == 0) {
+				addLine(csq, start, i++);
+			} else {
+				line.append(csq, start, i++);
+				addLine(line, 0, line.length());
+				line.setLength(0);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Finish the tree
+	 *
+	 * @return The top level node or null if the tree has no nodes apart from
+	 *         the top level node
+	 */
+	public synchronized ASTNode finish() {
+		if (line.length() > 0) {
+			addLine(line, 0, line.length());
+			line.setLength(0);
+		}
+		finished = true;
+		if (pendingName == null)
+			throw new NoSuchElementException();
+		if (root == null)
+			return null;
+		createPending();
+		return root;
+	}
+
+	/**
+	 * Test if a line couldn't be added (the tree is incomplete)
+	 *
+	 * @return True if a line couldn't be added
+	 */
+	public synchronized boolean hasFailed() {
+		return failed;
+	}
+
+	// Internal Methods
+	// ================
+
+	private boolean readLine(CharSequence text, int start, int end) {
+		int i, nameEnd;
+		String key;
+
+		// Remove the carriage return
+		for (i = start; i < end; i++) {
+			if (text.charAt(i) == '\r') {
+				end--;
+				break;
+			}
+		}
+
+		for (i = start; i < end; i++) {
+			if (text.charAt(i) != ' ' && text.charAt(i) != ':')
+				break;
+		}
+		if (end - i == 2 && text.charAt(i) == '#' && text.charAt(i + 1) == 't') {
+			finished = true;
+			return false;
+		}
+
+		for (nameEnd = i; nameEnd < end; nameEnd++) {
+			if (text.charAt(nameEnd) == ' ')
+				break;
+		}
+		key = text.subSequence(i, nameEnd).toString();
+
+		// A line without a known node continues the last node
+		if (WSLTreeGrammarTable.getGrammarOfNode(key) == null) {
+			if (pendingName == null)
+				throw new NoSuchElementException();
+			if (pendingLines == null)
+				pendingLines = new StringBuilder(pendingName);
+			pendingLines.append('\n').append(text, i, end);
+			return true;
+		}
+
+		if (pendingName != null)
+			createPending();
+		pendingLevel = (i - start) / 3;
+		pendingName = nameEnd == end ? key : text.subSequence(i, end)
+				.toString();
+		pendingLines = null;
+		return true;
+	}
+
+	private void createPending() {
+		String name = pendingLines == null ? pendingName : pendingLines
+				.toString();
+		pendingName = null;
+		pendingLines = null;
+
+		if (root == null) {
+			root = new ASTNode(name, null);
+			parents[0] = root;
+			levels[0] = -1;
+			depth = 1;
+			return;
+		}
+
+		while (!stopped) {
+			if (levels[depth - 1] == -1 || pendingLevel == levels[depth - 1]) {
+				// A sibling of the last child
+				levels[depth - 1] = pendingLevel;
+				lasts[depth - 1] = new ASTNode(name, parents[depth - 1]);
+				parents[depth - 1].addChild(lasts[depth - 1]);
+				return;
+			} else if (pendingLevel > levels[depth - 1]) {
+				// A child of the last child
+				if (depth == parents.length)
+					grow();
+				parents[depth] = lasts[depth - 1];
+				levels[depth] = -1;
+				depth++;
+			} else {
+				// A node of an outer level (nodes left of the first level
+				// are not part of the tree)
+				depth--;
+				if (depth == 0)
+					stopped = true;
+			}
+		}
+	}
+
+	private void grow() {
+		int n = parents.length * 2;
+		ASTNode[] p = new ASTNode[n], l = new ASTNode[n];
+		int[] v = new int[n];
+		System.arraycopy(parents, 0, p, 0, depth);
+		System.arraycopy(lasts, 0, l, 0, depth);
+		System.arraycopy(levels, 0, v, 0, depth);
+		parents = p;
+		lasts = l;
+		levels = v;
+	}
+}
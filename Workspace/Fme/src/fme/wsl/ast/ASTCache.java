@@ -0,0 +1,383 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fme.wsl.lexer.LexerAutomaton;
+import fme.wsl.lexer.TokenStream;
+import fme.wsl.lexer.WSLLexer;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * This class holds binary snapshots of loaded WSL programs. The tree, the
+ * lexer tokens of the nodes, the source code and the lexer tokens of the
+ * source code are stored for every file together with its path, size,
+ * modification time and a hash of its content. If a file is loaded again
+ * (e.g. a version in the history) the snapshot is restored instead of
+ * printing and parsing the engine's tree and lexing the source code.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTCache {
+
+	/**
+	 * The default cache directory
+	 */
+	private static String defaultCacheDir = "engine/.cache/ast";
+
+	/**
+	 * Magic number of a cache file ("FMEA")
+	 */
+	private static final int MAGIC = 0x464D4541;
+
+	/**
+	 * Version of the cache file format
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The maximum number of cache files
+	 */
+	private static final int MAX_FILES = 64;
+
+	/**
+	 * The cache directory
+	 */
+	private static File cacheDir = new File(defaultCacheDir);
+
+	/**
+	 * Set the cache directory
+	 *
+	 * @param dirname
+	 *            The cache directory or null to disable the cache
+	 */
+	public static synchronized void setCacheDir(String dirname) {
+		cacheDir = dirname == null ? null : new File(dirname);
+	}
+
+	/**
+	 * Restore the tree of a WSL file. The restored tree becomes the current
+	 * AST.
+	 *
+	 * @param file
+	 *            The WSL file
+	 * @return True if the tree was restored, false if the file has no
+	 *         snapshot or the file was changed
+	 */
+	public static synchronized boolean load(File file) {
+
+		File cacheFile;
+		ByteBuffer buffer;
+		String path, strings[], source;
+		ASTNode root;
+		TokenStream tokens;
+
+		if (cacheDir == null)
+			return false;
+
+		path = file.getAbsolutePath();
+		cacheFile = getCacheFile(path);
+		if (!cacheFile.exists())
+			return false;
+
+		try {
+			// The snapshot is read into the heap; a mapped file can't be
+			// replaced on Windows until the mapping is garbage collected
+			buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| !path.equals(readString(buffer))
+					|| buffer.getLong() != file.length()
+					|| buffer.getLong() != file.lastModified())
+				return false;
+
+			byte[] hash = new byte[buffer.getInt()];
+			buffer.get(hash);
+			if (!Arrays.equals(hash, hash(file)))
+				return false;
+
+			strings = new String[buffer.getInt()];
+			for (int i = 0; i < strings.length; i++)
+				strings[i] = readString(buffer);
+
+			root = readNode(buffer, strings, null);
+			source = readString(buffer);
+			tokens = TokenStream.read(buffer, LexerAutomaton.getAutomaton());
+		} catch (Exception e) {
+			Logger.getLogger(ASTCache.class.getCanonicalName()).log(
+					Level.WARNING, "Can't read tree cache " + cacheFile + ": "
+							+ e);
+			return false;
+		}
+
+		AST.setTree(root, source, tokens);
+
+		Logger.getLogger(ASTCache.class.getCanonicalName()).log(Level.INFO,
+				"Tree restored from cache " + cacheFile);
+		return true;
+	}
+
+	/**
+	 * Check if there is a snapshot of a WSL file which was taken after the
+	 * last change of the file (the content of the snapshot isn't checked)
+	 *
+	 * @param file
+	 *            The WSL file
+	 * @return True if the tree of the file can probably be restored
+	 */
+	public static synchronized boolean isCached(File file) {
+
+		File cacheFile;
+		ByteBuffer buffer;
+		DataInputStream in = null;
+		String path;
+		byte[] header;
+
+		if (cacheDir == null)
+			return false;
+
+		path = file.getAbsolutePath();
+		cacheFile = getCacheFile(path);
+		if (!cacheFile.exists())
+			return false;
+
+		try {
+			// Only the header is read (magic, version, path, length and
+			// modification time of the file)
+			header = new byte[28 + path.getBytes("UTF-8").length];
+			in = new DataInputStream(new FileInputStream(cacheFile));
+			in.readFully(header);
+			buffer = ByteBuffer.wrap(header);
+			return buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+					&& path.equals(readString(buffer))
+					&& buffer.getLong() == file.length()
+					&& buffer.getLong() == file.lastModified();
+		} catch (Exception e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Store the current AST of a WSL file together with the lexer tokens of
+	 * its source code
+	 *
+	 * @param file
+	 *            The WSL file
+	 * @param source
+	 *            The source code which was lexed last (the source code of the
+	 *            current AST)
+	 */
+	public static synchronized void store(File file, String source) {
+
+		File cacheFile, tmp = null;
+		FileOutputStream out = null;
+		String path;
+		ASTNode root = AST.getAST();
+		HashMap<String, Integer> lookup;
+		Vector<String> strings;
+
+		if (cacheDir == null || root == null)
+			return;
+
+		path = file.getAbsolutePath();
+		cacheFile = getCacheFile(path);
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(bytes);
+
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			writeString(data, path);
+			data.writeLong(file.length());
+			data.writeLong(file.lastModified());
+			byte[] hash = hash(file);
+			data.writeInt(hash.length);
+			data.write(hash);
+
+			// Syntax names and values are written once into a string table
+			lookup = new HashMap<String, Integer>();
+			strings = new Vector<String>();
+			collectStrings(root, lookup, strings);
+			data.writeInt(strings.size());
+			for (int i = 0; i < strings.size(); i++)
+				writeString(data, strings.get(i));
+
+			writeNode(data, lookup, root);
+			writeString(data, source);
+			WSLLexer.getTokenStream().write(data);
+			data.flush();
+
+			// Write a temporary file first so that concurrent starts never
+			// see a half written cache
+			cacheDir.mkdirs();
+			tmp = File.createTempFile("ast", ".tmp", cacheDir);
+			out = new FileOutputStream(tmp);
+			bytes.writeTo(out);
+			out.close();
+			out = null;
+			Files.move(tmp.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+
+			removeOldFiles();
+		} catch (IOException e) {
+			Logger.getLogger(ASTCache.class.getCanonicalName()).log(
+					Level.WARNING, "Can't write tree cache " + cacheFile + ": "
+							+ e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	// Internal Methods
+	// ================
+
+	private static File getCacheFile(String path) {
+		StringBuilder name = new StringBuilder();
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+					path.getBytes("UTF-8"));
+			for (int i = 0; i < hash.length; i++)
+				name.append(Integer.toHexString((hash[i] & 0xFF) | 0x100)
+						.substring(1));
+		} catch (Exception e) {
+			name.append(Integer.toHexString(path.hashCode()));
+		}
+		return new File(cacheDir, name + ".bin");
+	}
+
+	private static byte[] hash(File file) throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(
+					Files.readAllBytes(file.toPath()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("No SHA-1 available");
+		}
+	}
+
+	/**
+	 * Remove the least recently written cache files if there are too many
+	 */
+	private static void removeOldFiles() {
+		File[] f = cacheDir.listFiles();
+		if (f == null || f.length <= MAX_FILES)
+			return;
+		long[] modified = new long[f.length];
+		for (int i = 0; i < f.length; i++)
+			modified[i] = f[i].lastModified();
+		Arrays.sort(modified);
+		long limit = modified[f.length - MAX_FILES];
+		for (int i = 0; i < f.length; i++) {
+			if (f[i].lastModified() < limit && f[i].getName().endsWith(".bin"))
+				f[i].delete();
+		}
+	}
+
+	private static void collectStrings(ASTNode node,
+			HashMap<String, Integer> lookup, Vector<String> strings) {
+		addString(node.getSyntaxName(), lookup, strings);
+		if (node.getValue() != null)
+			addString(node.getValue(), lookup, strings);
+		for (int i = 0; i < node.getChildCount(); i++)
+			collectStrings(node.getChildAt(i), lookup, strings);
+	}
+
+	private static void addString(String s, HashMap<String, Integer> lookup,
+			Vector<String> strings) {
+		if (!lookup.containsKey(s)) {
+			lookup.put(s, Integer.valueOf(strings.size()));
+			strings.add(s);
+		}
+	}
+
+	private static void writeNode(DataOutputStream data,
+			HashMap<String, Integer> lookup, ASTNode node) throws IOException {
+		data.writeInt(lookup.get(node.getSyntaxName()).intValue());
+		data.writeInt(node.getValue() == null ? -1 : lookup.get(
+				node.getValue()).intValue());
+		data.writeInt(node.getLexerTokenCount());
+		data.writeInt(node.getFirstLexerToken());
+		data.writeInt(node.getLastLexerToken());
+		data.writeInt(node.getChildCount());
+		for (int i = 0; i < node.getChildCount(); i++)
+			writeNode(data, lookup, node.getChildAt(i));
+	}
+
+	private static ASTNode readNode(ByteBuffer buffer, String[] strings,
+			ASTNode parent) throws IOException {
+		int i, count;
+		String name = strings[buffer.getInt()];
+		int value = buffer.getInt();
+		ASTNode node;
+
+		// Don't construct nodes which are unknown to the current grammar
+		if (WSLTreeGrammarTable.getGrammarOfNode(name) == null)
+			throw new IOException("Unknown node " + name);
+		node = new ASTNode(value < 0 ? name : name + " " + strings[value],
+				parent);
+
+		node.setLexerTokens(buffer.getInt(), buffer.getInt(), buffer.getInt());
+
+		count = buffer.getInt();
+		for (i = 0; i < count; i++) {
+			node.addChild(readNode(buffer, strings, node));
+			if (node.getChildCount() != i + 1)
+				throw new IOException("Invalid child of " + name);
+		}
+		return node;
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int len = buffer.getInt();
+		if (len < 0)
+			return null;
+		byte[] b = new byte[len];
+		buffer.get(b);
+		return new String(b, "UTF-8");
+	}
+
+	private static void writeString(DataOutputStream data, String s)
+			throws IOException {
+		if (s == null) {
+			data.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes("UTF-8");
+		data.writeInt(b.length);
+		data.write(b);
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import fme.wsl.tables.GrammarEntry;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * This class is a cursor on a mapped tree (see MappedAST). The cursor is
+ * positioned on a node and can be moved through the tree. It can also
+ * travel through a subtree in pre-order (top down and from left to right):
+ * 
+ * <pre>
+ * ASTCursor c = ast.getCursor();
+ * do {
+ * 	...
+ * } while (c.next());
+ * </pre>
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTCursor {
+
+	private MappedAST ast;
+
+	/**
+	 * The row of the current node
+	 */
+	private int row;
+
+	/**
+	 * The row after the subtree which is travelled by next
+	 */
+	private int end;
+
+	/**
+	 * True if next should skip the children of the current node
+	 */
+	private boolean skip;
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param ast
+	 *            The mapped tree
+	 * @param row
+	 *            The row of the node (the subtree of this node is travelled
+	 *            by next)
+	 */
+	public ASTCursor(MappedAST ast, int row) {
+		if (row < 0 || row >= ast.size())
+			throw new ArrayIndexOutOfBoundsException(row);
+		this.ast = ast;
+		this.row = row;
+		end = ast.get(MappedAST.END, row);
+	}
+
+	/**
+	 * Get the row of the current node
+	 * 
+	 * @return The row (in pre-order)
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Get the id of the node type of the current node
+	 * 
+	 * @return The id
+	 */
+	public int getId() {
+		return ast.get(MappedAST.TYPE, row);
+	}
+
+	/**
+	 * Get the specific type of the current node
+	 * 
+	 * @return The specific type (e.g. T_Call)
+	 */
+	public String getSpecificType() {
+		GrammarEntry grammar = WSLTreeGrammarTable.getGrammarOfNode(getId());
+		return grammar == null ? null : grammar.getName();
+	}
+
+	/**
+	 * Get the syntax name of the current node
+	 * 
+	 * @return The syntax name (e.g. Call)
+	 */
+	public String getSyntaxName() {
+		GrammarEntry grammar = WSLTreeGrammarTable.getGrammarOfNode(getId());
+		return grammar == null ? null : grammar.getSyntaxName();
+	}
+
+	/**
+	 * Get the value of the current node
+	 * 
+	 * @return The value or null
+	 */
+	public String getValue() {
+		return ast.getValue(row);
+	}
+
+	/**
+	 * Get the number of children of the current node
+	 * 
+	 * @return The number of children
+	 */
+	public int getChildCount() {
+		return ast.get(MappedAST.CHILD_COUNT, row);
+	}
+
+	/**
+	 * Get the number of all nodes below the current node
+	 * 
+	 * @return The number of nodes of the subtree without the current node
+	 */
+	public int getAllChildrenCount() {
+		return ast.get(MappedAST.END, row) - row - 1;
+	}
+
+	/**
+	 * Move to a node
+	 * 
+	 * @param row
+	 *            The row of the node
+	 */
+	public void moveTo(int row) {
+		if (row < 0 || row >= ast.size())
+			throw new ArrayIndexOutOfBoundsException(row);
+		this.row = row;
+		skip = false;
+	}
+
+	/**
+	 * Move to the parent of the current node
+	 * 
+	 * @return False if the current node is the top level node
+	 */
+	public boolean toParent() {
+		return move(ast.get(MappedAST.PARENT, row));
+	}
+
+	/**
+	 * Move to the first child of the current node
+	 * 
+	 * @return False if the current node has no children
+	 */
+	public boolean toFirstChild() {
+		return move(ast.get(MappedAST.FIRST_CHILD, row));
+	}
+
+	/**
+	 * Move to the next sibling of the current node
+	 * 
+	 * @return False if the current node is the last child
+	 */
+	public boolean toNextSibling() {
+		return move(ast.get(MappedAST.NEXT_SIBLING, row));
+	}
+
+	/**
+	 * Move to a child of the current node
+	 * 
+	 * @param index
+	 *            The index of the child
+	 * @return False if the current node has no such child
+	 */
+	public boolean toChild(int index) {
+		if (index < 0 || index >= getChildCount())
+			return false;
+		return move(ast.getChild(row, index));
+	}
+
+	/**
+	 * Get the index of the current node in the children of its parent
+	 * 
+	 * @return The index or -1 for the top level node
+	 */
+	public int getIndex() {
+		return ast.get(MappedAST.INDEX, row);
+	}
+
+	/**
+	 * Move to the next node in pre-order (within the subtree of the node the
+	 * cursor was created with)
+	 * 
+	 * @return False if there are no more nodes
+	 */
+	public boolean next() {
+		int next = skip ? ast.get(MappedAST.END, row) : row + 1;
+
+		skip = false;
+		if (next >= end)
+			return false;
+		row = next;
+		return true;
+	}
+
+	/**
+	 * Don't visit the children of the current node with the next call of next
+	 */
+	public void skipChildren() {
+		skip = true;
+	}
+
+	// Internal Methods
+	// ================
+
+	private boolean move(int row) {
+		if (row < 0)
+			return false;
+		this.row = row;
+		skip = false;
+		return true;
+	}
+}
@@ -0,0 +1,695 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * This class computes an edit script (insert, delete, replace and move)
+ * between two versions of an AST, e.g. the trees before and after a
+ * transformation. The nodes of both trees are matched in four phases:
+ *
+ * 1. Subtrees whose structural hash occurs once in both trees are matched
+ * (higher subtrees first).
+ *
+ * 2. Unmatched nodes are matched with the parents of the old nodes which
+ * were matched with their children (bottom-up).
+ *
+ * 3. The children of matched nodes are aligned (top-down): equal subtrees
+ * via a diff of the hash sequences, the rest by syntax name and position.
+ *
+ * 4. Remaining equal subtrees are matched wherever they are (moves).
+ *
+ * Every phase visits each node a constant number of times (the alignment of
+ * children is bounded), so the diff stays near-linear on large trees.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTDiff {
+
+	/**
+	 * Subtrees lower than this are not matched via their hashes (small
+	 * subtrees like single numbers are too common to be matched anywhere in
+	 * the tree)
+	 */
+	private static final int MIN_HEIGHT = 2;
+
+	/**
+	 * The maximum number of differences of an alignment of children before
+	 * the remaining children are matched in order
+	 */
+	private static final int MAX_DIFFERENCES = 128;
+
+	private Tree oldTree;
+
+	private Tree newTree;
+
+	/**
+	 * The old subtrees via structural hash: the first row of the chain of
+	 * subtrees with the hash (see next), the number of old subtrees and the
+	 * number of new subtrees with the hash
+	 */
+	private HashMap<Long, int[]> candidates = new HashMap<Long, int[]>();
+
+	/**
+	 * The next row of an old subtree with the same hash (in pre-order)
+	 */
+	private int[] next;
+
+	/**
+	 * The rows of the new nodes sorted by height (descending)
+	 */
+	private int[] order;
+
+	private Vector<ASTEdit> edits;
+
+	/**
+	 * The Constructor. The edit script is computed immediately.
+	 *
+	 * @param oldRoot
+	 *            The top level node of the old tree
+	 * @param newRoot
+	 *            The top level node of the new tree
+	 */
+	public ASTDiff(ASTNode oldRoot, ASTNode newRoot) {
+		oldTree = new Tree(oldRoot);
+		newTree = new Tree(newRoot);
+
+		collectCandidates();
+		matchSubtrees(true);
+		matchParents();
+		if (newTree.match[0] < 0 && oldTree.match[0] < 0
+				&& oldRoot.getSyntaxName().equals(newRoot.getSyntaxName()))
+			match(0, 0);
+		matchChildren();
+		matchSubtrees(false);
+		oldTree.countUnmatched();
+		newTree.countUnmatched();
+
+		edits = new Vector<ASTEdit>();
+		addInsertsMovesReplaces();
+		addDeletes(0);
+	}
+
+	/**
+	 * Get the edit script which transforms the old tree into the new tree.
+	 * Inserts, moves and replaces are listed in pre-order of the new tree,
+	 * followed by the deletes in post-order of the old tree.
+	 *
+	 * @return The edit operations
+	 */
+	public Vector<ASTEdit> getEdits() {
+		return edits;
+	}
+
+	/**
+	 * Get the node of the old tree which was matched with a node of the new
+	 * tree
+	 *
+	 * @param newNode
+	 *            The node of the new tree
+	 * @return The node of the old tree or null if the node is new
+	 */
+	public ASTNode getOldNode(ASTNode newNode) {
+		int row = newTree.match[newTree.row(newNode)];
+		return row < 0 ? null : oldTree.nodes.get(row);
+	}
+
+	/**
+	 * Get the node of the new tree which was matched with a node of the old
+	 * tree
+	 *
+	 * @param oldNode
+	 *            The node of the old tree
+	 * @return The node of the new tree or null if the node was deleted
+	 */
+	public ASTNode getNewNode(ASTNode oldNode) {
+		int row = oldTree.match[oldTree.row(oldNode)];
+		return row < 0 ? null : newTree.nodes.get(row);
+	}
+
+	// Internal Methods
+	// ================
+
+	private void match(int oldRow, int newRow) {
+		oldTree.match[oldRow] = newRow;
+		newTree.match[newRow] = oldRow;
+	}
+
+	private void collectCandidates() {
+		int i, h, row, n = newTree.size();
+		int[] first = new int[newTree.maxHeight + 2], entry;
+		Long key;
+
+		// Chain the old subtrees with the same hash (in pre-order)
+		next = new int[oldTree.size()];
+		for (i = oldTree.size() - 1; i >= 0; i--) {
+			if (oldTree.height[i] < MIN_HEIGHT)
+				continue;
+			key = Long.valueOf(oldTree.hash(i));
+			entry = candidates.get(key);
+			if (entry == null) {
+				candidates.put(key, new int[] { i, 1, 0 });
+				next[i] = -1;
+			} else {
+				next[i] = entry[0];
+				entry[0] = i;
+				entry[1]++;
+			}
+		}
+		for (i = 0; i < n; i++) {
+			if (newTree.height[i] < MIN_HEIGHT)
+				continue;
+			entry = candidates.get(Long.valueOf(newTree.hash(i)));
+			if (entry != null)
+				entry[2]++;
+		}
+
+		// Sort the new nodes by height (counting sort)
+		order = new int[n];
+		for (i = 0; i < n; i++)
+			first[newTree.height[i]]++;
+		for (h = newTree.maxHeight, i = 0; h >= 0; h--) {
+			row = first[h];
+			first[h] = i;
+			i += row;
+		}
+		for (i = 0; i < n; i++)
+			order[first[newTree.height[i]]++] = i;
+	}
+
+	/**
+	 * Phase 1 and 4: Match equal subtrees (the new subtrees sorted by height
+	 * descending)
+	 *
+	 * @param unique
+	 *            True if only subtrees whose hash occurs once in both trees
+	 *            should be matched
+	 */
+	private void matchSubtrees(boolean unique) {
+		int i, row, oldRow, prev;
+		int[] entry;
+
+		for (i = 0; i < order.length; i++) {
+			row = order[i];
+			if (newTree.height[row] < MIN_HEIGHT)
+				break;
+			if (newTree.match[row] >= 0)
+				continue;
+			entry = candidates.get(Long.valueOf(newTree.hash(row)));
+			if (entry == null || (unique && (entry[1] != 1 || entry[2] != 1)))
+				continue;
+
+			// Take the first equal candidate (matched candidates are removed
+			// from the chain)
+			prev = -1;
+			for (oldRow = entry[0]; oldRow >= 0; oldRow = next[oldRow]) {
+				if (oldTree.match[oldRow] >= 0) {
+					if (prev < 0)
+						entry[0] = next[oldRow];
+					else
+						next[prev] = next[oldRow];
+					continue;
+				}
+				if (equalSubtrees(oldRow, row)) {
+					matchSubtree(oldRow, row);
+					break;
+				}
+				prev = oldRow;
+			}
+		}
+	}
+
+	/**
+	 * Test if two subtrees are equal and completely unmatched
+	 */
+	private boolean equalSubtrees(int oldRow, int newRow) {
+		int size = newTree.nodes.get(newRow).getAllChildrenCount() + 1;
+		ASTNode a, b;
+
+		if (oldTree.nodes.get(oldRow).getAllChildrenCount() + 1 != size)
+			return false;
+		for (int i = 0; i < size; i++) {
+			a = oldTree.nodes.get(oldRow + i);
+			b = newTree.nodes.get(newRow + i);
+			if (oldTree.match[oldRow + i] >= 0
+					|| newTree.match[newRow + i] >= 0
+					|| !a.getSyntaxName().equals(b.getSyntaxName())
+					|| a.getChildCount() != b.getChildCount()
+					|| (a.getValue() == null ? b.getValue() != null : !a
+							.getValue().equals(b.getValue())))
+				return false;
+		}
+		return true;
+	}
+
+	private void matchSubtree(int oldRow, int newRow) {
+		int size = newTree.nodes.get(newRow).getAllChildrenCount() + 1;
+		// Equal subtrees have the same pre-order
+		for (int i = 0; i < size; i++)
+			match(oldRow + i, newRow + i);
+	}
+
+	/**
+	 * Phase 2: Match unmatched nodes with the parents of the old nodes which
+	 * were matched with their children (in post-order)
+	 */
+	private void matchParents() {
+		int i, j, child, candidate;
+		ASTNode node;
+
+		for (i = newTree.size() - 1; i >= 0; i--) {
+			if (newTree.match[i] >= 0)
+				continue;
+			node = newTree.nodes.get(i);
+			for (j = 0; j < node.getChildCount(); j++) {
+				child = newTree.match[newTree.row(node.getChildAt(j))];
+				if (child < 0)
+					continue;
+				candidate = oldTree.parent[child];
+				if (candidate >= 0
+						&& oldTree.match[candidate] < 0
+						&& oldTree.nodes.get(candidate).getSyntaxName().equals(
+								node.getSyntaxName())) {
+					match(candidate, i);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Phase 3: Align the children of matched nodes (in pre-order, so the
+	 * children of the newly matched nodes are aligned as well)
+	 */
+	private void matchChildren() {
+		int i;
+		ASTNode oldNode, newNode;
+
+		for (i = 0; i < newTree.size(); i++) {
+			if (newTree.match[i] < 0)
+				continue;
+			newNode = newTree.nodes.get(i);
+			oldNode = oldTree.nodes.get(newTree.match[i]);
+			if (oldNode.getChildCount() == 0 || newNode.getChildCount() == 0)
+				continue;
+			alignChildren(oldNode, newNode);
+			matchChildrenByName(oldNode, newNode);
+		}
+	}
+
+	/**
+	 * Match the equal children of two nodes along the shortest edit script
+	 * of their hash sequences (common prefix and suffix first, then the diff
+	 * algorithm of Myers on the rest)
+	 */
+	private void alignChildren(ASTNode oldNode, ASTNode newNode) {
+		int i, n = oldNode.getChildCount(), m = newNode.getChildCount();
+		int[] oldRows = new int[n], newRows = new int[m];
+		int lo = 0, oldHi = n, newHi = m;
+
+		for (i = 0; i < n; i++)
+			oldRows[i] = oldTree.row(oldNode.getChildAt(i));
+		for (i = 0; i < m; i++)
+			newRows[i] = newTree.row(newNode.getChildAt(i));
+
+		while (lo < n && lo < m && same(oldRows[lo], newRows[lo]))
+			take(oldRows[lo], newRows[lo++]);
+		while (oldHi > lo && newHi > lo
+				&& same(oldRows[oldHi - 1], newRows[newHi - 1]))
+			take(oldRows[--oldHi], newRows[--newHi]);
+		if (lo == oldHi || lo == newHi)
+			return;
+
+		if (!alignMyers(oldRows, lo, oldHi, newRows, lo, newHi)) {
+			// Too many differences: take the equal children in order
+			HashMap<Long, LinkedList<Integer>> rows;
+			rows = new HashMap<Long, LinkedList<Integer>>();
+			LinkedList<Integer> list;
+			for (i = lo; i < oldHi; i++) {
+				if (oldTree.match[oldRows[i]] >= 0)
+					continue;
+				list = rows.get(Long.valueOf(oldTree.hash(oldRows[i])));
+				if (list == null) {
+					list = new LinkedList<Integer>();
+					rows.put(Long.valueOf(oldTree.hash(oldRows[i])), list);
+				}
+				list.add(Integer.valueOf(oldRows[i]));
+			}
+			for (i = lo; i < newHi; i++) {
+				if (newTree.match[newRows[i]] >= 0)
+					continue;
+				list = rows.get(Long.valueOf(newTree.hash(newRows[i])));
+				if (list != null && !list.isEmpty())
+					take(list.removeFirst().intValue(), newRows[i]);
+			}
+		}
+	}
+
+	private boolean alignMyers(int[] oldRows, int oldLo, int oldHi,
+			int[] newRows, int newLo, int newHi) {
+		int d, k, x, y, prevK, prevX;
+		int n = oldHi - oldLo, m = newHi - newLo;
+		int max = Math.min(n + m, MAX_DIFFERENCES), off = max + 1;
+		int[] v = new int[2 * max + 3];
+		Vector<int[]> trace = new Vector<int[]>();
+
+		for (d = 0; d <= max; d++) {
+			trace.add(v.clone());
+			for (k = -d; k <= d; k += 2) {
+				if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1]))
+					x = v[off + k + 1];
+				else
+					x = v[off + k - 1] + 1;
+				y = x - k;
+				while (x < n && y < m
+						&& same(oldRows[oldLo + x], newRows[newLo + y])) {
+					x++;
+					y++;
+				}
+				v[off + k] = x;
+				if (x >= n && y >= m) {
+					// Walk back along the snakes
+					for (; d > 0; d--) {
+						v = trace.get(d);
+						k = x - y;
+						if (k == -d
+								|| (k != d && v[off + k - 1] < v[off + k + 1]))
+							prevK = k + 1;
+						else
+							prevK = k - 1;
+						prevX = v[off + prevK];
+						while (x > prevX && x - k > prevX - prevK) {
+							x--;
+							take(oldRows[oldLo + x], newRows[newLo + x - k]);
+						}
+						x = prevX;
+						y = prevX - prevK;
+					}
+					while (x > 0 && y > 0)
+						take(oldRows[oldLo + --x], newRows[newLo + --y]);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test if two children may be equal (matched with each other or
+	 * unmatched with the same hash)
+	 */
+	private boolean same(int oldRow, int newRow) {
+		if (oldTree.match[oldRow] >= 0 || newTree.match[newRow] >= 0)
+			return oldTree.match[oldRow] == newRow;
+		return oldTree.hash(oldRow) == newTree.hash(newRow);
+	}
+
+	private void take(int oldRow, int newRow) {
+		if (oldTree.match[oldRow] < 0 && newTree.match[newRow] < 0
+				&& equalSubtrees(oldRow, newRow))
+			matchSubtree(oldRow, newRow);
+	}
+
+	/**
+	 * Match the remaining children of two nodes in the gaps between the
+	 * aligned children, first by syntax name and then by position (replaced
+	 * nodes)
+	 */
+	private void matchChildrenByName(ASTNode oldNode, ASTNode newNode) {
+		int j, p, oldStart = 0, newStart = 0, oldRow;
+		int n = oldNode.getChildCount(), m = newNode.getChildCount();
+
+		for (j = 0; j <= m; j++) {
+			p = n;
+			if (j < m) {
+				// An aligned child ends the gap
+				oldRow = newTree.match[newTree.row(newNode.getChildAt(j))];
+				if (oldRow < 0
+						|| oldTree.parent[oldRow] != oldTree.row(oldNode)
+						|| oldTree.index[oldRow] < oldStart)
+					continue;
+				p = oldTree.index[oldRow];
+			}
+			if (p > oldStart && j > newStart)
+				matchGap(oldNode, oldStart, p, newNode, newStart, j);
+			oldStart = p + 1;
+			newStart = j + 1;
+		}
+	}
+
+	private void matchGap(ASTNode oldNode, int oldLo, int oldHi,
+			ASTNode newNode, int newLo, int newHi) {
+		int i, k;
+		ASTNode child;
+		HashMap<String, LinkedList<ASTNode>> names = null;
+		LinkedList<ASTNode> list;
+		Vector<ASTNode> rest = new Vector<ASTNode>();
+
+		for (i = oldLo; i < oldHi; i++) {
+			child = oldNode.getChildAt(i);
+			if (oldTree.match[oldTree.row(child)] >= 0)
+				continue;
+			if (names == null)
+				names = new HashMap<String, LinkedList<ASTNode>>();
+			list = names.get(child.getSyntaxName());
+			if (list == null) {
+				list = new LinkedList<ASTNode>();
+				names.put(child.getSyntaxName(), list);
+			}
+			list.add(child);
+		}
+		if (names == null)
+			return;
+
+		// Same syntax name in order
+		for (i = newLo; i < newHi; i++) {
+			child = newNode.getChildAt(i);
+			if (newTree.match[newTree.row(child)] >= 0)
+				continue;
+			list = names.get(child.getSyntaxName());
+			if (list != null && !list.isEmpty())
+				match(oldTree.row(list.removeFirst()), newTree.row(child));
+			else
+				rest.add(child);
+		}
+
+		// The remaining children in order (replaced nodes)
+		k = 0;
+		for (i = oldLo; i < oldHi && k < rest.size(); i++) {
+			child = oldNode.getChildAt(i);
+			if (oldTree.match[oldTree.row(child)] < 0)
+				match(oldTree.row(child), newTree.row(rest.get(k++)));
+		}
+	}
+
+	private void addInsertsMovesReplaces() {
+		int i, j, n = newTree.size(), oldRow, end;
+		ASTNode node;
+
+		for (i = 0; i < n; i++) {
+			node = newTree.nodes.get(i);
+			oldRow = newTree.match[i];
+
+			if (oldRow < 0) {
+				end = i + node.getAllChildrenCount() + 1;
+				if (newTree.unmatched[i] == end - i) {
+					// Insert the whole subtree
+					edits.add(new ASTEdit(ASTEdit.INSERT, null, node, true));
+					i = end - 1;
+					continue;
+				}
+				edits.add(new ASTEdit(ASTEdit.INSERT, null, node, false));
+			} else {
+				ASTNode old = oldTree.nodes.get(oldRow);
+				if (!old.getSyntaxName().equals(node.getSyntaxName())
+						|| (old.getValue() == null ? node.getValue() != null
+								: !old.getValue().equals(node.getValue())))
+					edits.add(new ASTEdit(ASTEdit.REPLACE, old, node, false));
+				j = newTree.parent[i];
+				if (j >= 0 && oldTree.parent[oldRow] != newTree.match[j])
+					edits.add(new ASTEdit(ASTEdit.MOVE, old, node, false));
+			}
+
+			if (oldRow >= 0)
+				addReorderings(oldRow, i);
+		}
+	}
+
+	/**
+	 * Add moves for the children which stay with their parent but aren't
+	 * part of the longest increasing sequence of old positions
+	 */
+	private void addReorderings(int oldRow, int newRow) {
+		int i, k, lo, hi, mid, len = 0, child;
+		ASTNode node = newTree.nodes.get(newRow);
+		int count = node.getChildCount();
+		int[] rows = new int[count], pos = new int[count];
+		int[] tails, prev;
+		boolean[] stay;
+
+		// The children which were children of the matched old node
+		for (i = 0, k = 0; i < count; i++) {
+			child = newTree.row(node.getChildAt(i));
+			if (newTree.match[child] >= 0
+					&& oldTree.parent[newTree.match[child]] == oldRow) {
+				rows[k] = child;
+				pos[k++] = oldTree.index[newTree.match[child]];
+			}
+		}
+		if (k < 2)
+			return;
+
+		// Longest increasing sequence of the old positions
+		tails = new int[k];
+		prev = new int[k];
+		for (i = 0; i < k; i++) {
+			lo = 0;
+			hi = len;
+			while (lo < hi) {
+				mid = (lo + hi) >>> 1;
+				if (pos[tails[mid]] < pos[i])
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			prev[i] = lo > 0 ? tails[lo - 1] : -1;
+			tails[lo] = i;
+			if (lo == len)
+				len++;
+		}
+		if (len == k)
+			return;
+
+		stay = new boolean[k];
+		for (i = tails[len - 1]; i >= 0; i = prev[i])
+			stay[i] = true;
+		for (i = 0; i < k; i++) {
+			if (!stay[i])
+				edits.add(new ASTEdit(ASTEdit.MOVE, oldTree.nodes
+						.get(newTree.match[rows[i]]), newTree.nodes
+						.get(rows[i]), false));
+		}
+	}
+
+	private void addDeletes(int row) {
+		ASTNode node = oldTree.nodes.get(row);
+		int count = node.getAllChildrenCount() + 1;
+
+		if (oldTree.unmatched[row] == count) {
+			// Delete the whole subtree
+			edits.add(new ASTEdit(ASTEdit.DELETE, node, null, true));
+			return;
+		}
+		if (oldTree.unmatched[row] == 0)
+			return;
+		for (int i = 0; i < node.getChildCount(); i++)
+			addDeletes(oldTree.row(node.getChildAt(i)));
+		if (oldTree.match[row] < 0)
+			edits.add(new ASTEdit(ASTEdit.DELETE, node, null, false));
+	}
+
+	// Internal Classes
+	// ================
+
+	/**
+	 * The nodes of a tree in pre-order with the information for the diff
+	 * (indexed by row relative to the top level node, the rows of the nodes
+	 * aren't changed)
+	 */
+	private class Tree {
+
+		private Vector<ASTNode> nodes = new Vector<ASTNode>();
+
+		/**
+		 * The row of the top level node (which may be part of a larger tree)
+		 */
+		private int base;
+
+		private int[] parent;
+
+		private int[] index;
+
+		private int[] height;
+
+		private int maxHeight;
+
+		private int[] match;
+
+		private int[] unmatched;
+
+		public Tree(ASTNode root) {
+			int i, j, n, child;
+			ASTNode node;
+
+			base = root.getRow();
+			collect(root);
+			n = nodes.size();
+			parent = new int[n];
+			index = new int[n];
+			height = new int[n];
+			match = new int[n];
+			unmatched = new int[n];
+
+			parent[0] = -1;
+			for (i = 0; i < n; i++) {
+				node = nodes.get(i);
+				match[i] = -1;
+				for (j = 0; j < node.getChildCount(); j++) {
+					child = row(node.getChildAt(j));
+					parent[child] = i;
+					index[child] = j;
+				}
+			}
+
+			// Children are behind their parents in pre-order
+			for (i = n - 1; i >= 0; i--) {
+				height[i]++;
+				if (parent[i] >= 0 && height[parent[i]] < height[i])
+					height[parent[i]] = height[i];
+			}
+			maxHeight = height[0];
+		}
+
+		public int size() {
+			return nodes.size();
+		}
+
+		/**
+		 * Get the row of a node of the tree
+		 *
+		 * @param node
+		 *            The node
+		 * @return The row relative to the top level node
+		 */
+		public int row(ASTNode node) {
+			return node.getRow() - base;
+		}
+
+		private void collect(ASTNode node) {
+			nodes.add(node);
+			for (int i = 0; i < node.getChildCount(); i++)
+				collect(node.getChildAt(i));
+		}
+
+		/**
+		 * Count the unmatched nodes of every subtree
+		 */
+		public void countUnmatched() {
+			for (int i = nodes.size() - 1; i >= 0; i--) {
+				if (match[i] < 0)
+					unmatched[i]++;
+				if (parent[i] >= 0)
+					unmatched[parent[i]] += unmatched[i];
+			}
+		}
+
+		public long hash(int row) {
+			return nodes.get(row).getStructuralHash();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+/**
+ * This class holds an edit operation of an edit script between two versions
+ * of an AST (see ASTDiff). Positions refer to the new tree: an inserted or
+ * moved node is placed at the index of the new node in the children of its
+ * new parent.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTEdit {
+
+	/**
+	 * Insert the new node (or its whole subtree)
+	 */
+	public static final int INSERT = 0;
+
+	/**
+	 * Delete the old node (or its whole subtree)
+	 */
+	public static final int DELETE = 1;
+
+	/**
+	 * Replace the syntax name and value of the old node with those of the new
+	 * node (the children are kept)
+	 */
+	public static final int REPLACE = 2;
+
+	/**
+	 * Move the old node with its subtree to the position of the new node
+	 */
+	public static final int MOVE = 3;
+
+	private int type;
+
+	private ASTNode oldNode;
+
+	private ASTNode newNode;
+
+	private boolean subtree;
+
+	/**
+	 * The Constructor
+	 *
+	 * @param type
+	 *            The operation (e.g. INSERT)
+	 * @param oldNode
+	 *            The node of the old tree or null (INSERT)
+	 * @param newNode
+	 *            The node of the new tree or null (DELETE)
+	 * @param subtree
+	 *            True if an inserted or deleted node is inserted or deleted
+	 *            with its whole subtree
+	 */
+	public ASTEdit(int type, ASTNode oldNode, ASTNode newNode, boolean subtree) {
+		this.type = type;
+		this.oldNode = oldNode;
+		this.newNode = newNode;
+		this.subtree = subtree;
+	}
+
+	/**
+	 * Get the operation
+	 *
+	 * @return The operation (e.g. INSERT)
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Get the node of the old tree
+	 *
+	 * @return The node of the old tree or null (INSERT)
+	 */
+	public ASTNode getOldNode() {
+		return oldNode;
+	}
+
+	/**
+	 * Get the node of the new tree
+	 *
+	 * @return The node of the new tree or null (DELETE)
+	 */
+	public ASTNode getNewNode() {
+		return newNode;
+	}
+
+	/**
+	 * True if an inserted or deleted node is inserted or deleted with its
+	 * whole subtree (otherwise only the node itself is affected and its
+	 * children are handled by other edits)
+	 */
+	public boolean isSubtree() {
+		return subtree;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		switch (type) {
+		case INSERT:
+			return "INSERT " + newNode + (subtree ? " (subtree)" : "")
+					+ " at row " + newNode.getRow();
+		case DELETE:
+			return "DELETE " + oldNode + (subtree ? " (subtree)" : "")
+					+ " at row " + oldNode.getRow();
+		case REPLACE:
+			return "REPLACE " + oldNode + " with " + newNode + " at row "
+					+ newNode.getRow();
+		default:
+			return "MOVE " + oldNode + " from row " + oldNode.getRow()
+					+ " to row " + newNode.getRow();
+		}
+	}
+}
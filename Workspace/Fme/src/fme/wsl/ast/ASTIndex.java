@@ -0,0 +1,179 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+import fme.wsl.tables.GrammarEntry;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * This class holds an index of a numbered tree. For every node type it holds
+ * the rows of the nodes of that type and for names and variables (T_Name,
+ * T_Variable and T_Var_Lvalue) the rows of the nodes with a certain value.
+ * All rows are in pre-order.
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class ASTIndex {
+
+	/**
+	 * The node types which are indexed by value
+	 */
+	private static final String[] VALUE_TYPES = { "T_Name", "T_Variable",
+			"T_Var_Lvalue" };
+
+	/**
+	 * No rows
+	 */
+	private static final int[] NO_ROWS = new int[0];
+
+	/**
+	 * The grammar of the lookup table (the table is built again if the
+	 * grammar is parsed again)
+	 */
+	private static Vector<GrammarEntry> grammar;
+
+	/**
+	 * Lookup table of specific types to ids
+	 */
+	private static HashMap<String, Integer> typeIds;
+
+	/**
+	 * The rows of the nodes (via the id of the node type)
+	 */
+	private int[][] typeRows;
+
+	/**
+	 * The rows of the names and variables (via their value)
+	 */
+	private HashMap<String, int[]> valueRows = new HashMap<String, int[]>();
+
+	/**
+	 * The Constructor
+	 * 
+	 * @param nodes
+	 *            The nodes of the tree in pre-order
+	 */
+	public ASTIndex(Vector<ASTNode> nodes) {
+		int i, id, maxId = 0;
+		int[] count, c;
+		boolean[] valueType;
+		HashMap<String, int[]> valueCount = new HashMap<String, int[]>();
+		ASTNode node;
+
+		for (i = 0; i < nodes.size(); i++)
+			maxId = Math.max(maxId, nodes.get(i).getId());
+
+		valueType = new boolean[maxId + 1];
+		for (i = 0; i < VALUE_TYPES.length; i++) {
+			id = getTypeId(VALUE_TYPES[i]);
+			if (id >= 0 && id <= maxId)
+				valueType[id] = true;
+		}
+
+		// Count the nodes of every type and every value
+		count = new int[maxId + 1];
+		for (i = 0; i < nodes.size(); i++) {
+			node = nodes.get(i);
+			id = node.getId();
+			count[id]++;
+			if (valueType[id] && node.getValue() != null) {
+				c = valueCount.get(node.getValue());
+				if (c == null)
+					valueCount.put(node.getValue(), c = new int[1]);
+				c[0]++;
+			}
+		}
+
+		// Fill the rows (the counts are used as fill positions)
+		typeRows = new int[maxId + 1][];
+		for (id = 0; id <= maxId; id++)
+			typeRows[id] = count[id] == 0 ? NO_ROWS : new int[count[id]];
+		Arrays.fill(count, 0);
+		for (String value : valueCount.keySet()) {
+			c = valueCount.get(value);
+			valueRows.put(value, new int[c[0]]);
+			c[0] = 0;
+		}
+		for (i = 0; i < nodes.size(); i++) {
+			node = nodes.get(i);
+			id = node.getId();
+			typeRows[id][count[id]++] = i;
+			if (valueType[id] && node.getValue() != null)
+				valueRows.get(node.getValue())[valueCount.get(node
+						.getValue())[0]++] = i;
+		}
+	}
+
+	/**
+	 * Get the rows of the nodes of certain types
+	 * 
+	 * @param types
+	 *            The specific types of the nodes (e.g. T_Call)
+	 * @return The rows in pre-order (the array must not be changed)
+	 */
+	public int[] getRows(String... types) {
+		int[] ret, rows;
+		int id, size = 0;
+
+		if (types.length == 1) {
+			id = getTypeId(types[0]);
+			return id < 0 || id >= typeRows.length ? NO_ROWS : typeRows[id];
+		}
+
+		ret = NO_ROWS;
+		for (int i = 0; i < types.length; i++) {
+			id = getTypeId(types[i]);
+			if (id < 0 || id >= typeRows.length)
+				continue;
+			rows = typeRows[id];
+			if (size + rows.length > ret.length)
+				ret = Arrays.copyOf(ret, size + rows.length);
+			System.arraycopy(rows, 0, ret, size, rows.length);
+			size += rows.length;
+		}
+		Arrays.sort(ret, 0, size);
+		return ret;
+	}
+
+	/**
+	 * Get the rows of the names and variables with a certain value
+	 * 
+	 * @param value
+	 *            The value (e.g. the name of a variable)
+	 * @return The rows in pre-order (the array must not be changed)
+	 */
+	public int[] getRowsWithValue(String value) {
+		int[] ret = valueRows.get(value);
+		return ret == null ? NO_ROWS : ret;
+	}
+
+	// Internal Methods
+	// ================
+
+	/**
+	 * Get the id of a node type
+	 * 
+	 * @param type
+	 *            The specific type (e.g. T_Call)
+	 * @return The id or -1 if the type is unknown
+	 */
+	private static synchronized int getTypeId(String type) {
+		Integer ret;
+
+		if (grammar != WSLTreeGrammarTable.getGrammar()) {
+			grammar = WSLTreeGrammarTable.getGrammar();
+			typeIds = new HashMap<String, Integer>();
+			for (int i = 0; grammar != null && i < grammar.size(); i++)
+				typeIds.put(grammar.get(i).getName(), Integer.valueOf(grammar
+						.get(i).getId()));
+		}
+		ret = typeIds.get(type);
+		return ret == null ? -1 : ret.intValue();
+	}
+}
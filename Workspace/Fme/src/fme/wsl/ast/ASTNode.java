@@ -4,8 +4,11 @@
 
 package fme.wsl.ast;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,11 +18,14 @@ import javax.swing.tree.TreeNode;
 
 import fme.components.console.Console;
 import fme.gui.MainFrame;
-import fme.wsl.tables.LexerTokenTable;
+import fme.wsl.tables.GrammarEntry;
+import fme.wsl.tables.PrettyPrintTemplate;
 import fme.wsl.tables.WSLTreeGrammarTable;
 
 /**
- * This class represents a node in the AST of a WSL program
+ * This class represents a node in the AST of a WSL program. All data of the
+ * node type (names, general type and PrettyPrint template) is kept in the
+ * shared grammar entry of the type.
  * 
  * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
  */
@@ -31,61 +37,89 @@ public class ASTNode implements TreeNode {
 	private static boolean treeValidationChecking = true;
 
 	/**
-	 * The id of the node
+	 * The children of a leaf
 	 */
-	private int id;
+	private static final ASTNode[] NO_CHILDREN = new ASTNode[0];
 
 	/**
-	 * The specific type of the node
+	 * The parent of a node (null if the node is the top level node)
 	 */
-	private String specificType;
+	private ASTNode parent;
 
 	/**
-	 * The syntax name (These names are printed when using the
-	 * 
-	 * @print_wsl routine)
+	 * The children of a node (the array is trimmed to the number of children
+	 * when the tree is numbered)
 	 */
-	private String syntaxName;
+	private ASTNode[] children = NO_CHILDREN;
 
 	/**
-	 * The general type of a node
+	 * The number of children
 	 */
-	private int generalType;
+	private int childCount;
 
 	/**
-	 * The parent of a node (null if the node is the top level node)
+	 * The value of a node
 	 */
-	private ASTNode parent;
+	private String value;
 
 	/**
-	 * The children of a node
+	 * The number of associated lexer tokens
 	 */
-	private Vector<ASTNode> children;
+	private int lexerTokenCount;
 
 	/**
-	 * The value of a node
+	 * The first associated lexer token
 	 */
-	private String value;
+	private int firstLexerToken = -1;
+
+	/**
+	 * The last associated lexer token
+	 */
+	private int lastLexerToken = -1;
+
+	/**
+	 * The number of lexer token moves of the AST which were applied to the
+	 * lexer tokens
+	 */
+	private int lexerTokenMoves;
+
+	/**
+	 * The grammar of the node (shared by all nodes of the type)
+	 */
+	private GrammarEntry grammar;
+
+	/**
+	 * The row of the node (pre-order index in the tree)
+	 */
+	private int row;
 
 	/**
-	 * True when this node is a grouping node
+	 * The number of all children in the subtree of the node
 	 */
-	private boolean isGroupNode = false;
+	private int allChildrenCount;
 
 	/**
-	 * True if this node is a general node
+	 * The numbering of the tree which set row and allChildrenCount (null if
+	 * the node was never numbered)
 	 */
-	private boolean isGeneralNode = false;
+	private Numbering numbering;
 
 	/**
-	 * Corresponding Lexer tokens
+	 * The structure version of the numbering when row and allChildrenCount
+	 * were set
 	 */
-	private Vector<Integer> lexerTokens;
+	private int rowVersion;
 
 	/**
-	 * The template for PrettyPrint
+	 * The structural hash of the subtree of the node
 	 */
-	private String ppTemplate;
+	private long hash;
+
+	/**
+	 * Indicates if hash is up to date (a change of the subtree invalidates
+	 * the hashes of the node and its ancestors)
+	 */
+	private boolean hashValid;
 
 	/**
 	 * The Constructor for clone
@@ -111,12 +145,9 @@ public class ASTNode implements TreeNode {
 			nodeName = name;
 
 		this.parent = parent;
-		syntaxName = nodeName;
 
-		try {
-			id = Integer.parseInt(WSLTreeGrammarTable.getGrammarOfNode(
-					syntaxName).get(0));
-		} catch (NullPointerException e) {
+		grammar = WSLTreeGrammarTable.getGrammarOfNode(nodeName);
+		if (grammar == null) {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.SEVERE, "Node " + name + " couldn't be constructed");
 
@@ -130,30 +161,15 @@ public class ASTNode implements TreeNode {
 			return;
 		}
 
-		if (id < 10)
-			isGeneralNode = true;
-		else if (id < 100 && id > 9)
-			isGroupNode = true;
-		specificType = WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(1);
-		if (!isGeneralNode && !isGroupNode)
-			generalType = Integer.parseInt(WSLTreeGrammarTable
-					.getGrammarOfNode(syntaxName).get(3));
-		else
-			generalType = id;
-		children = new Vector<ASTNode>();
 		if (nodeValue != null) {
 			value = nodeValue.replace("?", "");
-			if (WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(5).equals(
-					"0")) {
+			if (!grammar.hasValue()) {
 				Logger.getLogger(this.getClass().getCanonicalName()).log(
 						Level.WARNING,
-						"ASTNode " + specificType + " (" + getRow()
+						"ASTNode " + grammar.getName() + " (" + getRow()
 								+ ") shouldn't have a value \"" + value + "\"");
 			}
 		}
-		lexerTokens = new Vector<Integer>();
-
-		ppTemplate = WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(6);
 	}
 
 	/**
@@ -163,9 +179,9 @@ public class ASTNode implements TreeNode {
 	 */
 	public String toString() {
 		if (value == null)
-			return syntaxName;
+			return getSyntaxName();
 		else
-			return syntaxName + " (" + value + ")";
+			return getSyntaxName() + " (" + value + ")";
 	}
 
 	/**
@@ -176,28 +192,24 @@ public class ASTNode implements TreeNode {
 	public String toStringXML() {
 		String ret;
 
-		if (isGroupNode)
-			ret = "<ASTGroupNode ID=\"" + id + "\" Name=\"" + specificType
-					+ "\"";
-		else if (isGeneralNode)
-			ret = "<ASTGeneralNode ID=\"" + id + "\" Name=\"" + specificType
-					+ "\"";
+		if (grammar.isGroup())
+			ret = "<ASTGroupNode ID=\"" + grammar.getId() + "\" Name=\""
+					+ grammar.getName() + "\"";
+		else if (grammar.isGeneral())
+			ret = "<ASTGeneralNode ID=\"" + grammar.getId() + "\" Name=\""
+					+ grammar.getName() + "\"";
 		else
-			ret = "<ASTNode ID=\"" + id + "\" Name=\"" + specificType
-					+ "\" General_Type=\""
-					+ WSLTreeGrammarTable.getGrammarOfNode(generalType).get(1)
-					+ "\"";
-
-		if (value == null
-				&& !WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(4)
-						.equals("")) {
-			String[] children = WSLTreeGrammarTable
-					.getGrammarOfNode(syntaxName).get(4).split(";");
+			ret = "<ASTNode ID=\"" + grammar.getId() + "\" Name=\""
+					+ grammar.getName() + "\" General_Type=\""
+					+ WSLTreeGrammarTable.getGrammarOfNode(
+							grammar.getGeneralType()).getName() + "\"";
+
+		if (value == null && !grammar.isLeaf()) {
 			ret += " AllowedChildren=\"";
-			for (int i = 0; i < children.length; i++) {
+			for (int i = 0; i < grammar.getAllowedChildrenCount(); i++) {
 				ret += WSLTreeGrammarTable.getGrammarOfNode(
-						Integer.parseInt(children[i])).get(1);
-				if (i != children.length - 1)
+						grammar.getAllowedChild(i)).getName();
+				if (i != grammar.getAllowedChildrenCount() - 1)
 					ret += ";";
 			}
 		}
@@ -217,16 +229,11 @@ public class ASTNode implements TreeNode {
 	 */
 	public String toStringSubTree() {
 		StringBuffer buf = new StringBuffer();
-		ASTNode n;
-		Iterator<ASTNode> i;
 
 		buf.append(toStringXML() + "\n");
 
-		i = children.iterator();
-		while (i.hasNext()) {
-			n = i.next();
-			toStringSubTree("  ", n, buf);
-		}
+		for (int i = 0; i < childCount; i++)
+			toStringSubTree("  ", children[i], buf);
 
 		return buf.toString();
 	}
@@ -240,16 +247,17 @@ public class ASTNode implements TreeNode {
 	 * @return The id of the node
 	 */
 	public int getId() {
-		return id;
+		return grammar == null ? 0 : grammar.getId();
 	}
 
 	/**
 	 * Get the children of the node
 	 * 
-	 * @return The children of the node
+	 * @return A read-only view on the children of the node
 	 */
-	public Vector<ASTNode> getChildren() {
-		return children;
+	public List<ASTNode> getChildren() {
+		return Collections.unmodifiableList(Arrays.asList(children).subList(
+				0, childCount));
 	}
 
 	/**
@@ -259,8 +267,8 @@ public class ASTNode implements TreeNode {
 	 */
 	public ASTNode getRightmostChild() {
 		ASTNode child = this;
-		while (child.getChildCount() != 0) {
-			child = child.getChildren().lastElement();
+		while (child.childCount != 0) {
+			child = child.children[child.childCount - 1];
 		}
 		return child;
 	}
@@ -273,14 +281,14 @@ public class ASTNode implements TreeNode {
 	public int getLeftmostLexerTokenPos() {
 		ASTNode child = this;
 		child = this;
-		while (child.getChildCount() != 0 && child.getLexerToken().size() == 0)
-			child = child.getChildren().firstElement();
-		if (child.getLexerToken().size() != 0)
-			return child.getLexerToken().get(0).intValue();
+		while (child.childCount != 0 && child.lexerTokenCount == 0)
+			child = child.children[0];
+		if (child.lexerTokenCount != 0)
+			return child.firstLexerToken;
 		else {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.WARNING,
-					"Node:" + specificType
+					"Node:" + getSpecificType()
 							+ " can't find first lexer token with a value");
 			return -1;
 		}
@@ -293,8 +301,21 @@ public class ASTNode implements TreeNode {
 	 *            The child to add
 	 */
 	public void addChild(ASTNode child) {
-		if (isChildValid(child))
-			children.add(child);
+		if (isChildValid(child)) {
+			if (childCount == children.length) {
+				ASTNode[] t = new ASTNode[Math.max(2, childCount * 2)];
+				System.arraycopy(children, 0, t, 0, childCount);
+				children = t;
+			}
+			children[childCount++] = child;
+			// The rows of both trees are outdated (the child may come from
+			// another tree)
+			if (numbering != null)
+				numbering.version++;
+			if (child.numbering != null)
+				child.numbering.version++;
+			invalidateHash();
+		}
 	}
 
 	/**
@@ -303,7 +324,7 @@ public class ASTNode implements TreeNode {
 	 * @return The general type id of the node
 	 */
 	public int getGeneralType() {
-		return generalType;
+		return grammar == null ? 0 : grammar.getGeneralType();
 	}
 
 	/**
@@ -312,7 +333,7 @@ public class ASTNode implements TreeNode {
 	 * @return The specific type id of the node
 	 */
 	public String getSpecificType() {
-		return specificType;
+		return grammar == null ? null : grammar.getName();
 	}
 
 	/**
@@ -324,6 +345,15 @@ public class ASTNode implements TreeNode {
 		return value;
 	}
 
+	/**
+	 * Get the syntax name of the node (as printed by the FermaT engine)
+	 * 
+	 * @return The syntax name of the node
+	 */
+	String getSyntaxName() {
+		return grammar == null ? null : grammar.getSyntaxName();
+	}
+
 	/**
 	 * Set the value of the node
 	 * 
@@ -331,6 +361,30 @@ public class ASTNode implements TreeNode {
 	 */
 	public void setValue(String value) {
 		this.value = value.replace("?", "");
+		invalidateHash();
+	}
+
+	/**
+	 * Get the structural hash of the subtree of the node. Subtrees with the
+	 * same syntax names, values and shape have the same hash (lexer tokens
+	 * and the position in the tree are not part of the hash).
+	 * 
+	 * @return The structural hash
+	 */
+	public long getStructuralHash() {
+		if (hashValid)
+			return hash;
+
+		long h = (grammar == null ? 0 : grammar.getSyntaxName().hashCode())
+				* 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 29) ^ (value == null ? 0 : value.hashCode() + 1))
+				* 0xBF58476D1CE4E5B9L;
+		for (int i = 0; i < childCount; i++)
+			h = (h ^ (h >>> 31)) * 0x94D049BB133111EBL
+					+ children[i].getStructuralHash();
+		hash = h ^ (h >>> 32);
+		hashValid = true;
+		return hash;
 	}
 
 	/**
@@ -357,24 +411,95 @@ public class ASTNode implements TreeNode {
 		return new ASTNodePreOrderTreeIterator(this);
 	}
 
+	/**
+	 * Visit the nodes of the subtree in pre-order
+	 * 
+	 * @param visitor
+	 *            The visitor
+	 */
+	public void accept(ASTVisitor visitor) {
+		new ASTNodePreOrderTreeIterator(this).accept(visitor);
+	}
+
+	/**
+	 * Visit the nodes of specific types of the subtree in pre-order
+	 * 
+	 * @param visitor
+	 *            The visitor
+	 * @param types
+	 *            The specific types of the nodes to visit (e.g. T_Proc_Call)
+	 */
+	public void accept(ASTVisitor visitor, String... types) {
+		new ASTNodePreOrderTreeIterator(this).accept(visitor, types);
+	}
+
 	/**
 	 * Associate a lexer token (position in the lexer list) with this tree node
 	 * 
 	 * @param lexerToken
 	 *            The lexerToken to associate
 	 */
-	public void addLexerToken(Integer lexerToken) {
-		lexerTokens.add(lexerToken);
+	public void addLexerToken(int lexerToken) {
+		moveLexerTokens();
+		if (lexerTokenCount == 0)
+			firstLexerToken = lexerToken;
+		lastLexerToken = lexerToken;
+		lexerTokenCount++;
 	}
 
 	/**
-	 * Get all associated lexer tokens
+	 * Get the number of associated lexer tokens (usually 1 for a single token
+	 * or 2 for the start and end of a block)
 	 * 
-	 * @param lexerToken
-	 *            The lexerToken to associate
+	 * @return The number of associated lexer tokens
+	 */
+	public int getLexerTokenCount() {
+		return lexerTokenCount;
+	}
+
+	/**
+	 * Get the first associated lexer token
+	 * 
+	 * @return The position in the lexer list or -1
 	 */
-	public Vector<Integer> getLexerToken() {
-		return lexerTokens;
+	public int getFirstLexerToken() {
+		moveLexerTokens();
+		return firstLexerToken;
+	}
+
+	/**
+	 * Get the last associated lexer token
+	 * 
+	 * @return The position in the lexer list or -1
+	 */
+	public int getLastLexerToken() {
+		moveLexerTokens();
+		return lastLexerToken;
+	}
+
+	/**
+	 * Set the associated lexer tokens
+	 * 
+	 * @param count
+	 *            The number of associated lexer tokens
+	 * @param first
+	 *            The first lexer token
+	 * @param last
+	 *            The last lexer token
+	 */
+	void setLexerTokens(int count, int first, int last) {
+		lexerTokenCount = count;
+		firstLexerToken = first;
+		lastLexerToken = last;
+		lexerTokenMoves = AST.getLexerTokenMoves();
+	}
+
+	/**
+	 * Mark the associated lexer tokens as up to date (e.g. after the node
+	 * became part of a new tree)
+	 */
+	void setLexerTokensMoved() {
+		lexerTokenMoves = AST.getLexerTokenMoves();
 	}
 
 	/**
@@ -392,102 +517,106 @@ public class ASTNode implements TreeNode {
 	 * @return The source code this node represents
 	 */
 	public StringBuffer prettyPrint(int in, boolean markingTags) {
-		boolean indent = false;
-		int skip;
-		String c[], t1, t[], t2;
 		StringBuffer code = new StringBuffer();
+		try {
+			new PrettyPrinter(code, markingTags).print(this, in);
+		} catch (IOException e) {
+			// A StringBuffer doesn't throw IOExceptions
+		}
+		return code;
+	}
+
+	/**
+	 * Pretty Print this node into a pretty printer
+	 * 
+	 * @param out
+	 *            The pretty printer
+	 * @param in
+	 *            The indention of the node
+	 */
+	void prettyPrint(PrettyPrinter out, int in) throws IOException {
+		boolean markingTags = out.isMarkingTags();
+		String t1;
 		ASTNode child;
-		Iterator<ASTNode> it;
+		int j;
+		PrettyPrintTemplate template;
 
-		if (ppTemplate == null || ppTemplate == "") {
+		if (grammar.getTemplate() == null || grammar.getTemplate().isEmpty()) {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.WARNING,
-					"Node:" + specificType + " has no PrettyPrint template");
-			return code;
+					"Node:" + grammar.getName() + " has no PrettyPrint template");
+			return;
 		}
 
+		// An indented node starts with its indention and every new line
+		// within the node (but not at its end) is followed by it
+		template = grammar.getPrettyPrintTemplate();
+		if (template.getIndentCount() > 0)
+			out.beginIndent(in + template.getIndentCount());
+
 		if (markingTags)
-			code.append("<#" + getRow() + "|>");
+			out.append("<#" + getRow() + "|>");
 
-		// Chop up the Template
-		c = ppTemplate.split(";");
-		for (int i = 0; i < c.length; i++) {
+		// Go through the compiled Template
+		for (int i = 0; i < template.size(); i++) {
+			switch (template.getOp(i)) {
 
 			// Indention
-			if (c[i].equals("I")) {
+			case PrettyPrintTemplate.INDENT:
 				in += 1;
-				indent = true;
-			}
+				break;
+
 			// If all children should be iterated with a separating token
-			else if (c[i].startsWith("(A")) {
-				skip = 0;
-				if (c[i].startsWith("(A[")) {
-					skip = Integer.parseInt(c[i]
-							.substring(3, c[i].indexOf("]")));
-					c[i] = c[i].substring(0, 2)
-							+ c[i].substring(c[i].indexOf("]") + 1);
-				}
-				t = c[i].substring(3, c[i].length() - 1).split("#");
+			case PrettyPrintTemplate.CHILDREN:
 				// Get the seperating string
-				t1 = "";
-				for (int j = 0; j < t.length; j++) {
-					if (t[j].equals("\\n"))
-						t1 += "\n";
-					else if (!t[j].equals("") && !t[j].equals(" "))
-						t1 += LexerTokenTable.getLexerTokenRepresentation(t[j]);
-					else
-						t1 += t[j];
-				}
+				t1 = template.getText(i);
 				// Iterate through all children
-				it = children.iterator();
-				for (int j = 0; j < skip; j++) {
-					it.next();
-				}
-				while (it.hasNext()) {
-					child = it.next();
-					t2 = child.prettyPrint(in, markingTags).toString();
-					pp_append(t2, code, markingTags);
-					if (it.hasNext()) {
+				j = template.getArg(i);
+				if (j > childCount)
+					throw new java.util.NoSuchElementException();
+				while (j < childCount) {
+					child = children[j++];
+					child.prettyPrint(out, in);
+					if (j < childCount) {
 						// Print seperating string
 
 						// *** FermaT ELSE code ***
-						if (specificType.equals("T_Cond")
-								&& child.equals(children
-										.get(children.size() - 2))) {
+						if (grammar.getName().equals("T_Cond")
+								&& child == children[childCount - 2]) {
 
 							// Check if ELSE needs to be printed at all or
 							// whether it can be omitted.
-							if (children.lastElement().children.size() == 2
-									&& children.lastElement().children.get(1).children
-											.get(0).getSpecificType().equals(
-													"T_Skip")) {
+							if (children[childCount - 1].childCount == 2
+									&& children[childCount - 1].getChildAt(1)
+											.getChildAt(0).getSpecificType()
+											.equals("T_Skip")) {
 								// Special code to write ELSE (within the last
 								// guard node) SKIPs the next space and THEN
 								// statement
-								it.next();
+								j++;
 							} else {
 								// Special code to write ELSE (if there are more
 								// than two guards)
-								pp_append(t1.replace("ELSIF", "ELSE"), code,
-										markingTags);
+								out.append(t1.replace("ELSIF", "ELSE"));
 							}
 						} else {
-							pp_append(t1, code, markingTags);
+							out.append(t1);
 						}
 					}
 				}
-			}
+				break;
+
 			// Print a single token
-			else if (c[i].startsWith("S_")) {
-				t1 = LexerTokenTable.getLexerTokenRepresentation(c[i]);
+			case PrettyPrintTemplate.TOKEN:
+				t1 = template.getText(i);
 
 				// *** FermaT ELSE code ***
-				if (specificType.equals("T_Cond") && t1.equals("ELSIF")
-						&& children.size() == 2) {
+				if (grammar.getName().equals("T_Cond") && t1.equals("ELSIF")
+						&& childCount == 2) {
 					// Check if ELSE needs to be printed at all or whether it
 					// can be omitted.
-					if (children.get(1).children.size() == 2
-							&& children.get(1).children.get(1).children.get(0)
+					if (children[1].childCount == 2
+							&& children[1].getChildAt(1).getChildAt(0)
 									.getSpecificType().equals("T_Skip")) {
 						// Special code to write ELSE (within the last guard
 						// node) SKIPs the next space and THEN statement
@@ -497,123 +626,79 @@ public class ASTNode implements TreeNode {
 
 						// Special code to write ELSE (if there are only 2
 						// guards)
-						pp_append("ELSE", code, markingTags);
+						out.append("ELSE");
 					}
 				} else {
-					pp_append(t1, code, markingTags);
+					out.append(t1);
 				}
-			}
-			// Print a space
-			else if (c[i].startsWith(" ")) {
-				pp_append(" ", code, markingTags);
-			}
-			// Print a single child
-			else if (c[i].startsWith("(C")) {
-				t1 = c[i].substring(2, c[i].length() - 1);
+				break;
 
+			// Print a single child
+			case PrettyPrintTemplate.CHILD:
 				// *** FermaT ELSE code ***
-				if (t1.equals("0") && parent.specificType.equals("T_Cond")
-						&& children.get(0).specificType.equals("T_True")
-						&& parent.children.lastElement().equals(this)) {
+				if (template.getArg(i) == 0
+						&& parent.getSpecificType().equals("T_Cond")
+						&& getChildAt(0).getSpecificType().equals("T_True")
+						&& parent.children[parent.childCount - 1] == this) {
 					// Special code to write ELSE (within the last guard node)
 					// SKIPs the next space and THEN statement
 					i++;
 					i++;
 				} else {
-					pp_append(children.get(Integer.parseInt(t1)).prettyPrint(
-							in, markingTags).toString(), code, markingTags);
+					getChildAt(template.getArg(i)).prettyPrint(out, in);
 				}
-			}
+				break;
+
 			// Print the value
-			else if (c[i].equals("(V)")) {
-				pp_append(value, code, markingTags);
-			}
-			// Print a new line
-			else if (c[i].equals("\\n")) {
-				pp_append("\n", code, markingTags);
-			}
-			// Print a character
-			else if (c[i].startsWith("C:")) {
-				pp_append((char) Integer.parseInt(c[i].substring(2)) + "",
-						code, markingTags);
-			}
+			case PrettyPrintTemplate.VALUE:
+				out.append(value);
+				break;
+
+			// Print a space, a new line or a character
+			case PrettyPrintTemplate.TEXT:
+				out.append(template.getText(i));
+				break;
+
 			// Print token if there is a child sequence
-			else if (c[i].startsWith("CS:")) {
-				if (children.size() > 1) {
-					t1 = LexerTokenTable.getLexerTokenRepresentation(c[i]
-							.substring(3));
-					pp_append(t1, code, markingTags);
-				}
-			}
+			case PrettyPrintTemplate.CHILD_SEQUENCE:
+				if (childCount > 1)
+					out.append(template.getText(i));
+				break;
+
 			// Print token if parent is of a type
-			else if (c[i].startsWith("PARENT(")) {
-				if (children.size() > 1) {
-					t = c[i].substring(7, c[i].length() - 1).split(":");
-					if (parent.specificType.equals(t[0])) {
-						t = t[1].split("#");
-						for (int j = 0; j < t.length; j++) {
-							if (t[j].equals("\\n"))
-								t1 = "\n";
-							else if (t[j].equals(" "))
-								t1 = " ";
-							else
-								t1 = LexerTokenTable
-										.getLexerTokenRepresentation(t[j]);
-							pp_append(t1, code, markingTags);
-						}
-					}
-				}
+			case PrettyPrintTemplate.PARENT:
+				if (childCount > 1
+						&& parent.getSpecificType().equals(template.getType(i)))
+					out.append(template.getText(i));
+				break;
 			}
 		}
 
-		if (indent) {
-			t1 = indent(in) + code.toString();
-			if (t1.endsWith("\n")) {
-				t1 = t1.substring(0, t1.length() - 1);
-				t1 = t1.replace("\n", "\n" + indent(in));
-				t1 = t1 + "\n";
-			} else {
-				t1 = t1.replace("\n", "\n" + indent(in));
-			}
-			code = new StringBuffer(t1);
-		}
+		if (template.getIndentCount() > 0)
+			out.endIndent();
 
 		if (markingTags)
-			code.append("<|" + getRow() + "#>");
-
-		return code;
+			out.append("<|" + getRow() + "#>");
 	}
 
 	// Internal Methods
 	// ================
 
-	private void pp_append(String toAdd, StringBuffer code, boolean markingTags) {
-		code.append(toAdd);
-	}
-
 	private void toStringSubTree(String indent, ASTNode n, StringBuffer buf) {
-		ASTNode c;
-		Iterator<ASTNode> i;
-
 		buf.append(indent + n.toStringXML() + "\n");
 
-		i = n.getChildren().iterator();
-		while (i.hasNext()) {
-			c = i.next();
-			toStringSubTree(indent + "  ", c, buf);
-		}
+		for (int i = 0; i < n.childCount; i++)
+			toStringSubTree(indent + "  ", n.children[i], buf);
 	}
 
 	private boolean isChildValid(ASTNode child) {
-		String[] sp = WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(4)
-				.split(";");
+		int slots = grammar.getChildSlotCount();
 		boolean childFound = false, posVerified = false;
 
-		for (int i = 0; i < sp.length; i++) {
-			if (!sp[i].equals("")
-					&& sp[i].contains("" + child.getGeneralType())) {
+		for (int i = 0; i < slots; i++) {
+			if (grammar.acceptsChild(i, child.getGeneralType())) {
 				childFound = true;
-				if (sp.length > 1 && i != children.size())
+				if (slots > 1 && i != childCount)
 					continue;
 				posVerified = true;
 				break;
@@ -623,7 +708,7 @@ public class ASTNode implements TreeNode {
 		if (!childFound) {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.WARNING,
-					"Node:" + specificType + " (" + getRow()
+					"Node:" + grammar.getName() + " (" + getRow()
 							+ ") shouldn't have a child of type:"
 							+ child.getSpecificType() + ".");
 			if (treeValidationChecking)
@@ -631,7 +716,7 @@ public class ASTNode implements TreeNode {
 		} else if (childFound && !posVerified) {
 			Logger.getLogger(this.getClass().getCanonicalName()).log(
 					Level.WARNING,
-					"Node:" + specificType + " the child of type:"
+					"Node:" + grammar.getName() + " the child of type:"
 							+ child.getSpecificType() + " (" + getRow()
 							+ ") is at a wrong position.");
 			if (treeValidationChecking)
@@ -640,16 +725,6 @@ public class ASTNode implements TreeNode {
 		return true;
 	}
 
-	private String indent(int indent) {
-		String ret = "";
-		if (indent < 0)
-			indent = 0;
-		for (int i = 0; i < indent; i++) {
-			ret += " ";
-		}
-		return ret;
-	}
-
 	// Interface TreeNode
 	// ==================
 
@@ -668,7 +743,7 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#children()
 	 */
 	public Enumeration<ASTNode> children() {
-		return children.elements();
+		return Collections.enumeration(getChildren());
 	}
 
 	/**
@@ -677,10 +752,7 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#getAllowsChildren()
 	 */
 	public boolean getAllowsChildren() {
-		if (WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(4).equals(""))
-			return false;
-		else
-			return true;
+		return !grammar.isLeaf();
 	}
 
 	/**
@@ -689,7 +761,9 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#getChildAt(int)
 	 */
 	public ASTNode getChildAt(int childIndex) {
-		return children.get(childIndex);
+		if (childIndex >= childCount)
+			throw new ArrayIndexOutOfBoundsException(childIndex);
+		return children[childIndex];
 	}
 
 	/**
@@ -698,7 +772,7 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#getChildCount()
 	 */
 	public int getChildCount() {
-		return children.size();
+		return childCount;
 	}
 
 	/**
@@ -707,7 +781,11 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#getIndex(javax.swing.tree.TreeNode)
 	 */
 	public int getIndex(TreeNode node) {
-		return children.indexOf(node);
+		for (int i = 0; i < childCount; i++) {
+			if (children[i] == node)
+				return i;
+		}
+		return -1;
 	}
 
 	/**
@@ -716,10 +794,7 @@ public class ASTNode implements TreeNode {
 	 * @see javax.swing.tree.TreeNode#isLeaf()
 	 */
 	public boolean isLeaf() {
-		if (WSLTreeGrammarTable.getGrammarOfNode(syntaxName).get(4).equals(""))
-			return true;
-		else
-			return false;
+		return grammar.isLeaf();
 	}
 
 	// Own tree routines
@@ -731,7 +806,7 @@ public class ASTNode implements TreeNode {
 		ASTNode par = parent, oldPar;
 
 		if (parent != null)
-			myIndex = parent.children.indexOf(this);
+			myIndex = parent.getIndex(this);
 
 		while (par != null) {
 			for (int i = 0; i < myIndex; i++) {
@@ -741,7 +816,7 @@ public class ASTNode implements TreeNode {
 			oldPar = par;
 			par = par.getParent();
 			if (par != null) {
-				myIndex = par.children.indexOf(oldPar);
+				myIndex = par.getIndex(oldPar);
 			}
 		}
 
@@ -752,29 +827,36 @@ public class ASTNode implements TreeNode {
 	}
 
 	public int getRow() {
+		if (isNumbered())
+			return row;
+
+		// The node isn't part of its parent's children (yet)
 		int myIndex = 0, row = 0;
 		ASTNode par = parent, oldPar;
 
 		if (parent != null)
-			myIndex = parent.children.indexOf(this);
+			myIndex = parent.getIndex(this);
 
 		while (par != null) {
 			row++;
 			for (int i = 0; i < myIndex; i++) {
-				row += par.children.get(i).getAllChildrenCount() + 1;
+				row += par.children[i].getAllChildrenCount() + 1;
 			}
 			oldPar = par;
 			par = par.getParent();
 			if (par != null)
-				myIndex = par.children.indexOf(oldPar);
+				myIndex = par.getIndex(oldPar);
 		}
 		return row;
 	}
 
 	public int getAllChildrenCount() {
-		int c = children.size();
-		for (int i = 0; i < children.size(); i++) {
-			c += children.get(i).getAllChildrenCount();
+		if (isNumbered())
+			return allChildrenCount;
+
+		int c = childCount;
+		for (int i = 0; i < childCount; i++) {
+			c += children[i].getAllChildrenCount();
 		}
 		return c;
 	}
@@ -791,43 +873,129 @@ public class ASTNode implements TreeNode {
 	// Internal Methods
 	// ================
 
+	/**
+	 * Number a subtree in pre-order
+	 * 
+	 * @param row
+	 *            The row of this node
+	 * @param nodes
+	 *            The list which receives the nodes in pre-order or null
+	 * @return The row after the subtree
+	 */
+	int numberSubTree(int row, Vector<ASTNode> nodes) {
+		if (numbering == null)
+			numbering = new Numbering();
+		return numberSubTree(row, nodes, numbering);
+	}
+
+	private int numberSubTree(int row, Vector<ASTNode> nodes,
+			Numbering numbering) {
+		int next = row + 1;
+
+		this.row = row;
+		this.numbering = numbering;
+		rowVersion = numbering.version;
+		if (nodes != null)
+			nodes.add(this);
+		// The tree is complete when it is numbered
+		if (children.length != childCount) {
+			ASTNode[] t = new ASTNode[childCount];
+			System.arraycopy(children, 0, t, 0, childCount);
+			children = t;
+		}
+		for (int i = 0; i < childCount; i++)
+			next = children[i].numberSubTree(next, nodes, numbering);
+		allChildrenCount = next - row - 1;
+		return next;
+	}
+
+	/**
+	 * Apply the lexer token moves of the AST which happened since the lexer
+	 * tokens were set
+	 */
+	private void moveLexerTokens() {
+		int moves = AST.getLexerTokenMoves();
+
+		if (lexerTokenMoves == moves)
+			return;
+		if (lexerTokenCount != 0) {
+			firstLexerToken = AST.moveLexerToken(firstLexerToken,
+					lexerTokenMoves);
+			lastLexerToken = AST.moveLexerToken(lastLexerToken,
+					lexerTokenMoves);
+		}
+		lexerTokenMoves = moves;
+	}
+
+	/**
+	 * Make sure that the rows of the tree are up to date
+	 * 
+	 * @return True if the node has an up to date row
+	 */
+	private boolean isNumbered() {
+		ASTNode root = this;
+
+		if (numbering != null && rowVersion == numbering.version)
+			return true;
+		while (root.parent != null)
+			root = root.parent;
+		root.numberSubTree(0, null);
+		return numbering != null && rowVersion == numbering.version;
+	}
+
+	/**
+	 * Invalidate the structural hashes of the node and its ancestors
+	 */
+	private void invalidateHash() {
+		// The ancestors of a node without a valid hash have no valid hash
+		for (ASTNode n = this; n != null && n.hashValid; n = n.parent)
+			n.hashValid = false;
+	}
+
 	private void cloneNode(ASTNode src, ASTNode dest) {
-		dest.id = src.id;
-		dest.specificType = src.specificType;
-		dest.syntaxName = src.syntaxName;
-		dest.generalType = src.generalType;
+		dest.grammar = src.grammar;
 		dest.parent = null;
-		dest.children = new Vector<ASTNode>();
 		dest.value = src.value;
-		dest.isGroupNode = src.isGroupNode;
-		dest.isGeneralNode = src.isGeneralNode;
-
-		// Copy all lexer tokens
-		dest.lexerTokens = new Vector<Integer>();
-		Iterator<Integer> i = src.lexerTokens.iterator();
-		while (i.hasNext()) {
-			Integer i1 = i.next(), i2;
-			i2 = new Integer(i1.intValue());
-			dest.lexerTokens.add(i2);
-		}
+
+		dest.hash = src.hash;
+		dest.hashValid = src.hashValid;
+
+		dest.lexerTokenCount = src.lexerTokenCount;
+		dest.firstLexerToken = src.firstLexerToken;
+		dest.lastLexerToken = src.lastLexerToken;
+		dest.lexerTokenMoves = src.lexerTokenMoves;
 	}
 
 	private void cloneChildren(ASTNode src, ASTNode dest) {
 
 		ASTNode child, childClone;
 
-		// Clone children vector
-		if (src.children != null && src.children.size() != 0) {
-			Iterator<ASTNode> i = src.children.iterator();
-			while (i.hasNext()) {
-				child = i.next();
+		// Clone children array
+		if (src.childCount != 0) {
+			dest.children = new ASTNode[src.childCount];
+			for (int i = 0; i < src.childCount; i++) {
+				child = src.children[i];
 				childClone = new ASTNode();
 				cloneNode(child, childClone);
 				cloneChildren(child, childClone);
 				childClone.parent = dest;
-				dest.children.add(childClone);
+				dest.children[i] = childClone;
 			}
+			dest.childCount = src.childCount;
 		}
 
 	}
+
+	// Internal Classes
+	// ================
+
+	/**
+	 * The numbering of a tree. Its version is increased on every structural
+	 * change of the tree (rows which were numbered with an older version are
+	 * outdated).
+	 */
+	private static final class Numbering {
+
+		private int version;
+	}
 }
@@ -5,24 +5,62 @@
 package fme.wsl.ast;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Vector;
 
 import javax.swing.tree.TreeNode;
 
+import fme.wsl.tables.GrammarEntry;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
 /**
  * This iterator travels through the whole tree (top down and from left to
- * right)
+ * right). The tree isn't copied: the iterator only keeps the path from the
+ * top node to the current node.
  * 
  * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
  */
 public class ASTNodePreOrderTreeIterator implements Iterator<TreeNode> {
 
-    private Vector<ASTNode> nodes;
+    private ASTNode[] roots;
 
-    private Iterator<ASTNode> i;
+    /**
+     * The index of the current top tree node
+     */
+    private int rootIndex;
+
+    /**
+     * The parents of the current node
+     */
+    private ASTNode[] parents = new ASTNode[16];
+
+    /**
+     * The index of the current node in the children of each parent
+     */
+    private int[] indices = new int[16];
+
+    /**
+     * The number of parents of the current node
+     */
+    private int depth;
 
     private ASTNode lastNode;
 
+    /**
+     * True if the next node is searched in the children of the last node
+     */
+    private boolean descend;
+
+    /**
+     * The next node (if it was already searched by hasNext)
+     */
+    private ASTNode nextNode;
+
+    /**
+     * True if the next node is the first child of the last node
+     */
+    private boolean nextIsChild;
+
     /**
      * The Constructor
      * 
@@ -30,54 +68,162 @@ public class ASTNodePreOrderTreeIterator implements Iterator<TreeNode> {
      *            The top tree node
      */
     public ASTNodePreOrderTreeIterator(ASTNode node) {
-        nodes = new Vector<ASTNode>();
-        nodes.add(node);
-        fillNodes(node);
-        i = nodes.iterator();
+        roots = new ASTNode[] { node };
+        renew();
     }
 
     public ASTNodePreOrderTreeIterator(ASTNode node1, ASTNode node2) {
-        nodes = new Vector<ASTNode>();
-        nodes.add(node1);
-        fillNodes(node1);
-        nodes.add(node2);
-        fillNodes(node2);
-        i = nodes.iterator();
-    }
-
-    private void fillNodes(ASTNode n) {
-        for (int i = 0; i < n.getChildren().size(); i++) {
-            nodes.add(n.getChildren().get(i));
-            fillNodes(n.getChildren().get(i));
-        }
+        roots = new ASTNode[] { node1, node2 };
+        renew();
     }
 
     public boolean hasNext() {
-        return i.hasNext();
+        if (nextNode == null)
+            findNext();
+        return nextNode != null;
     }
 
     public ASTNode next() {
-        lastNode = i.next();
+        if (nextNode == null)
+            findNext();
+        if (nextNode == null)
+            throw new NoSuchElementException();
+        lastNode = nextNode;
+        nextNode = null;
+        descend = true;
         return lastNode;
     }
 
     public void remove() {
-        i.remove();
+        throw new UnsupportedOperationException();
     }
 
+    /**
+     * Continue after the subtree of the last node (the children of the last
+     * node are not visited)
+     */
     public void skipChildren() {
-        int cc = lastNode.getAllChildrenCount();
-        for (int j = 0; j < cc; j++) {
-            i.next();
+        if (nextNode != null && nextIsChild) {
+            parents[--depth] = null;
+            nextNode = null;
         }
+        descend = false;
     }
 
     public void renew() {
-        i = nodes.iterator();
+        rootIndex = -1;
+        depth = 0;
+        lastNode = null;
+        descend = false;
+        nextNode = null;
     }
 
     public Vector<ASTNode> getAllNodes() {
-        return nodes;
+        Vector<ASTNode> ret = new Vector<ASTNode>();
+        ASTNodePreOrderTreeIterator i = roots.length == 1
+            ? new ASTNodePreOrderTreeIterator(roots[0])
+            : new ASTNodePreOrderTreeIterator(roots[0], roots[1]);
+        while (i.hasNext())
+            ret.add(i.next());
+        return ret;
+    }
+
+    /**
+     * Visit the nodes of the tree in pre-order
+     * 
+     * @param visitor
+     *            The visitor
+     */
+    public void accept(ASTVisitor visitor) {
+        while (hasNext()) {
+            if (!visitor.visit(next()))
+                skipChildren();
+        }
+    }
+
+    /**
+     * Visit the nodes of specific types in pre-order. The children of the
+     * other nodes are always visited.
+     * 
+     * @param visitor
+     *            The visitor
+     * @param types
+     *            The specific types of the nodes to visit (e.g. T_Proc_Call)
+     */
+    public void accept(ASTVisitor visitor, String... types) {
+        boolean[] filter = getTypeFilter(types);
+        ASTNode node;
+        int id;
+
+        while (hasNext()) {
+            node = next();
+            id = node.getId();
+            if (id < filter.length && filter[id] && !visitor.visit(node))
+                skipChildren();
+        }
+    }
+
+    // Internal Methods
+    // ================
+
+    /**
+     * Get a lookup table of node ids from a list of specific types
+     */
+    private static boolean[] getTypeFilter(String[] types) {
+        Vector<GrammarEntry> grammar = WSLTreeGrammarTable.getGrammar();
+        boolean[] ret = new boolean[0];
+        GrammarEntry e;
+
+        for (int i = 0; i < grammar.size(); i++) {
+            e = grammar.get(i);
+            for (int j = 0; j < types.length; j++) {
+                if (types[j].equals(e.getName())) {
+                    if (e.getId() >= ret.length) {
+                        boolean[] t = new boolean[e.getId() + 1];
+                        System.arraycopy(ret, 0, t, 0, ret.length);
+                        ret = t;
+                    }
+                    ret[e.getId()] = true;
+                }
+            }
+        }
+        return ret;
     }
 
+    private void findNext() {
+        ASTNode parent;
+        int index;
+
+        nextIsChild = false;
+        if (descend && lastNode.getChildCount() != 0) {
+            if (depth == parents.length) {
+                ASTNode[] p = new ASTNode[depth * 2];
+                int[] i = new int[depth * 2];
+                System.arraycopy(parents, 0, p, 0, depth);
+                System.arraycopy(indices, 0, i, 0, depth);
+                parents = p;
+                indices = i;
+            }
+            parents[depth] = lastNode;
+            indices[depth++] = 0;
+            nextNode = lastNode.getChildAt(0);
+            nextIsChild = true;
+            return;
+        }
+
+        // Go to the next sibling of the last node or of one of its parents
+        while (depth != 0) {
+            parent = parents[depth - 1];
+            index = indices[depth - 1] + 1;
+            if (index < parent.getChildCount()) {
+                indices[depth - 1] = index;
+                nextNode = parent.getChildAt(index);
+                return;
+            }
+            parents[--depth] = null;
+        }
+
+        if (rootIndex + 1 < roots.length)
+            nextNode = roots[++rootIndex];
+    }
 }
@@ -0,0 +1,23 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+/**
+ * This class is an abstract visitor of the nodes of an AST. The nodes are
+ * visited in pre-order (see ASTNode.accept).
+ * 
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public abstract class ASTVisitor {
+
+	/**
+	 * Visit a node
+	 * 
+	 * @param node
+	 *            The node
+	 * @return True if the children of the node should be visited
+	 */
+	public abstract boolean visit(ASTNode node);
+}
@@ -0,0 +1,550 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fme.components.ProjectManager;
+import fme.wsl.tables.GrammarEntry;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * This class holds the AST of a WSL module in a memory-mapped file. The
+ * nodes are stored in pre-order in columns (type id, parent, first child,
+ * next sibling, value offset, end of the subtree, number of children, index
+ * in the children of the parent and offset of the children in the child
+ * table), so the trees of many modules can be kept open without creating
+ * ASTNode objects. The child table holds the rows of the children of every
+ * node one after another, so a child is found by its index. The nodes are
+ * accessed via an ASTCursor. Every version of a module is written to its own
+ * file, so a file is never replaced while it may be mapped (which fails on
+ * Windows).
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class MappedAST {
+
+	/**
+	 * The directory of the mapped trees (relative to the project)
+	 */
+	private static String defaultTreeDir = ".fme/ast";
+
+	/**
+	 * The directory of the mapped trees or null for the directory of the
+	 * project
+	 */
+	private static String treeDir;
+
+	/**
+	 * Magic number of a mapped tree ("FMEM")
+	 */
+	private static final int MAGIC = 0x464D454D;
+
+	/**
+	 * Version of the file format
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * Size of the header in bytes
+	 */
+	private static final int HEADER = 40;
+
+	/**
+	 * The maximum number of tree files
+	 */
+	private static final int MAX_FILES = 256;
+
+	static final int TYPE = 0;
+
+	static final int PARENT = 1;
+
+	static final int FIRST_CHILD = 2;
+
+	static final int NEXT_SIBLING = 3;
+
+	static final int VALUE = 4;
+
+	static final int END = 5;
+
+	static final int CHILD_COUNT = 6;
+
+	static final int INDEX = 7;
+
+	static final int CHILDREN = 8;
+
+	/**
+	 * The child table (not a column of the nodes)
+	 */
+	private static final int CHILD_ROWS = 9;
+
+	private static final int COLUMNS = 10;
+
+	/**
+	 * The open trees (via the path of the module)
+	 */
+	private static HashMap<String, MappedAST> modules = new HashMap<String, MappedAST>();
+
+	/**
+	 * The mapped file
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * The number of nodes
+	 */
+	private int size;
+
+	/**
+	 * The start of the values
+	 */
+	private int values;
+
+	/**
+	 * Set the directory of the mapped trees
+	 *
+	 * @param dirname
+	 *            The directory or null for the directory of the project
+	 */
+	public static synchronized void setTreeDir(String dirname) {
+		treeDir = dirname;
+	}
+
+	/**
+	 * Get the mapped tree of a WSL module. The tree is mapped once and
+	 * shared by all callers.
+	 *
+	 * @param module
+	 *            The WSL file of the module
+	 * @return The tree or null if there is no up to date tree of the module
+	 */
+	public static synchronized MappedAST getModule(File module) {
+		String path = module.getAbsolutePath();
+		MappedAST ret = modules.get(path);
+
+		if (ret != null && ret.isUpToDate(module))
+			return ret;
+		modules.remove(path);
+		if (!isStored(module))
+			return null;
+
+		try {
+			ret = open(getTreeFile(module));
+		} catch (IOException e) {
+			return null;
+		}
+		modules.put(path, ret);
+		return ret;
+	}
+
+	/**
+	 * Check if there is an up to date tree of a WSL module (only the header
+	 * of the tree file is read, the file isn't mapped)
+	 *
+	 * @param module
+	 *            The WSL file of the module
+	 * @return True if the tree of the current version of the module was
+	 *         stored with the current grammar
+	 */
+	public static synchronized boolean isStored(File module) {
+		File file = getTreeFile(module);
+		DataInputStream in = null;
+		byte[] header = new byte[HEADER];
+		ByteBuffer buffer;
+
+		if (!file.exists())
+			return false;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			in.readFully(header);
+			buffer = ByteBuffer.wrap(header);
+			return buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+					&& buffer.getLong(8) == module.length()
+					&& buffer.getLong(16) == module.lastModified()
+					&& buffer.getLong(32) == getGrammarFingerprint();
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Store the tree of a WSL module (unless the module has an up to date
+	 * tree already). The trees of older versions of the module are removed.
+	 *
+	 * @param module
+	 *            The WSL file of the module
+	 * @param root
+	 *            The top level node of the tree of the module
+	 */
+	public static synchronized void store(File module, ASTNode root) {
+		File file = getTreeFile(module);
+
+		if (isStored(module))
+			return;
+		try {
+			write(root, module.length(), module.lastModified(), file);
+		} catch (IOException e) {
+			Logger.getLogger(MappedAST.class.getCanonicalName()).log(
+					Level.WARNING, "Can't write mapped tree " + file + ": " + e);
+			return;
+		}
+		removeFiles(module, file);
+		removeOldFiles(file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Remove the tree of a WSL module (e.g. after the module was deleted)
+	 *
+	 * @param module
+	 *            The WSL file of the module
+	 */
+	public static synchronized void remove(File module) {
+		removeFiles(module, null);
+	}
+
+	/**
+	 * Write a tree into a file
+	 *
+	 * @param root
+	 *            The top level node of the tree
+	 * @param sourceLength
+	 *            The length of the source file of the tree
+	 * @param sourceModified
+	 *            The modification time of the source file of the tree
+	 * @param file
+	 *            The destination file
+	 * @throws IOException
+	 *             If the file can't be written
+	 */
+	public static void write(ASTNode root, long sourceLength,
+			long sourceModified, File file) throws IOException {
+
+		int size = root.getAllChildrenCount() + 1;
+		int[][] columns = new int[COLUMNS][size];
+		ByteArrayOutputStream values = new ByteArrayOutputStream();
+		HashMap<String, Integer> valueOffsets = new HashMap<String, Integer>();
+		ByteBuffer out;
+		FileOutputStream stream = null;
+		File tmp = null;
+
+		fill(root, -1, 0, columns, values, valueOffsets);
+		fillChildTable(columns);
+
+		out = ByteBuffer.allocate(HEADER + COLUMNS * size * 4 + values.size());
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putLong(sourceLength);
+		out.putLong(sourceModified);
+		out.putInt(size);
+		out.putInt(values.size());
+		out.putLong(getGrammarFingerprint());
+		for (int c = 0; c < COLUMNS; c++) {
+			out.asIntBuffer().put(columns[c]);
+			out.position(out.position() + size * 4);
+		}
+		out.put(values.toByteArray());
+
+		// Write a temporary file first so that a broken write never leaves
+		// a half written tree
+		try {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			tmp = File.createTempFile("ast", ".tmp", file.getAbsoluteFile()
+					.getParentFile());
+			stream = new FileOutputStream(tmp);
+			stream.write(out.array());
+			stream.close();
+			stream = null;
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Map a tree file
+	 *
+	 * @param file
+	 *            The tree file
+	 * @return The mapped tree
+	 * @throws IOException
+	 *             If the file can't be read or isn't a tree file
+	 */
+	public static MappedAST open(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		MappedAST ret = new MappedAST();
+
+		try {
+			ret.buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					0, in.length());
+		} finally {
+			// The mapping stays valid
+			in.close();
+		}
+
+		if (ret.buffer.limit() < HEADER || ret.buffer.getInt(0) != MAGIC
+				|| ret.buffer.getInt(4) != VERSION)
+			throw new IOException("Not a tree file " + file);
+
+		// The type ids belong to the grammar which was loaded when the tree
+		// was written
+		if (ret.buffer.getLong(32) != getGrammarFingerprint())
+			throw new IOException("Tree file of another grammar " + file);
+		ret.size = ret.buffer.getInt(24);
+		ret.values = HEADER + COLUMNS * ret.size * 4;
+		if (ret.size < 1
+				|| ret.values + ret.buffer.getInt(28) != ret.buffer.limit())
+			throw new IOException("Invalid tree file " + file);
+		return ret;
+	}
+
+	/**
+	 * Get the number of nodes
+	 *
+	 * @return The number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get a cursor at the top level node
+	 *
+	 * @return A new cursor
+	 */
+	public ASTCursor getCursor() {
+		return new ASTCursor(this, 0);
+	}
+
+	/**
+	 * Check if the tree belongs to the current version of its source file
+	 *
+	 * @param module
+	 *            The source file
+	 * @return True if the length and modification time of the source file
+	 *         are unchanged
+	 */
+	public boolean isUpToDate(File module) {
+		return module.exists() && buffer.getLong(8) == module.length()
+				&& buffer.getLong(16) == module.lastModified();
+	}
+
+	// Internal Methods
+	// ================
+
+	/**
+	 * Get a column of a node
+	 */
+	int get(int column, int row) {
+		return buffer.getInt(HEADER + (column * size + row) * 4);
+	}
+
+	/**
+	 * Get the row of a child of a node
+	 */
+	int getChild(int row, int index) {
+		return get(CHILD_ROWS, get(CHILDREN, row) + index);
+	}
+
+	/**
+	 * Get a value of a node
+	 */
+	String getValue(int row) {
+		int offset = get(VALUE, row);
+		ByteBuffer b;
+		byte[] ret;
+
+		if (offset < 0)
+			return null;
+		offset += values;
+		ret = new byte[buffer.getInt(offset)];
+		b = buffer.duplicate();
+		b.position(offset + 4);
+		b.get(ret);
+		try {
+			return new String(ret, "UTF-8");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get a fingerprint of the type ids of the current grammar
+	 */
+	private static long getGrammarFingerprint() {
+		Vector<GrammarEntry> grammar = WSLTreeGrammarTable.getGrammar();
+		GrammarEntry entry;
+		long ret = 0;
+
+		if (grammar == null)
+			return ret;
+		for (int i = 0; i < grammar.size(); i++) {
+			entry = grammar.get(i);
+			ret = (ret ^ entry.getId()) * 0x100000001B3L
+					+ (entry.getSyntaxName() == null ? 0 : entry
+							.getSyntaxName().hashCode());
+		}
+		return ret;
+	}
+
+	/**
+	 * Delete the tree files of a module. The mapping of an open tree is
+	 * dropped first; a file which is still mapped can't be deleted on Windows
+	 * and is deleted by a later call.
+	 *
+	 * @param keep
+	 *            The tree file which is kept or null
+	 */
+	private static void removeFiles(File module, File keep) {
+		String prefix = getTreePrefix(module);
+		File[] f = getTreeDir().listFiles();
+
+		modules.remove(module.getAbsolutePath());
+		for (int i = 0; f != null && i < f.length; i++) {
+			if (f[i].getName().startsWith(prefix) && !f[i].equals(keep))
+				f[i].delete();
+		}
+	}
+
+	/**
+	 * Delete the oldest tree files if there are more than MAX_FILES
+	 */
+	private static void removeOldFiles(File dir) {
+		File[] f = dir.listFiles();
+		if (f == null || f.length <= MAX_FILES)
+			return;
+		long[] modified = new long[f.length];
+		for (int i = 0; i < f.length; i++)
+			modified[i] = f[i].lastModified();
+		Arrays.sort(modified);
+		long limit = modified[f.length - MAX_FILES];
+		for (int i = 0; i < f.length; i++) {
+			if (f[i].lastModified() < limit && f[i].getName().endsWith(".ast"))
+				f[i].delete();
+		}
+	}
+
+	private static File getTreeDir() {
+		return new File(treeDir != null ? treeDir : ProjectManager
+				.relativeToAbsolute(defaultTreeDir));
+	}
+
+	/**
+	 * Get the start of the names of the tree files of a module
+	 */
+	private static String getTreePrefix(File module) {
+		return module.getName() + "-"
+				+ Integer.toHexString(module.getAbsolutePath().hashCode())
+				+ "-";
+	}
+
+	/**
+	 * Get the tree file of the current version of a module
+	 */
+	private static File getTreeFile(File module) {
+		return new File(getTreeDir(), getTreePrefix(module)
+				+ Long.toHexString(module.lastModified()) + "-"
+				+ Long.toHexString(module.length()) + ".ast");
+	}
+
+	/**
+	 * Fill the columns of a subtree
+	 *
+	 * @return The row after the subtree
+	 */
+	private static int fill(ASTNode node, int parent, int row,
+			int[][] columns, ByteArrayOutputStream values,
+			HashMap<String, Integer> valueOffsets) throws IOException {
+
+		int next = row + 1, child = -1;
+		String value = node.getValue();
+		Integer offset;
+		byte[] b;
+
+		columns[TYPE][row] = node.getId();
+		columns[PARENT][row] = parent;
+		columns[FIRST_CHILD][row] = node.getChildCount() == 0 ? -1 : next;
+		columns[NEXT_SIBLING][row] = -1;
+		columns[CHILD_COUNT][row] = node.getChildCount();
+
+		// Equal values are stored once
+		if (value == null)
+			columns[VALUE][row] = -1;
+		else {
+			offset = valueOffsets.get(value);
+			if (offset == null) {
+				offset = Integer.valueOf(values.size());
+				valueOffsets.put(value, offset);
+				b = value.getBytes("UTF-8");
+				values.write(b.length >>> 24);
+				values.write(b.length >>> 16);
+				values.write(b.length >>> 8);
+				values.write(b.length);
+				values.write(b);
+			}
+			columns[VALUE][row] = offset.intValue();
+		}
+
+		for (int i = 0; i < node.getChildCount(); i++) {
+			if (child >= 0)
+				columns[NEXT_SIBLING][child] = next;
+			child = next;
+			next = fill(node.getChildAt(i), row, next, columns, values,
+					valueOffsets);
+		}
+		columns[END][row] = next;
+		return next;
+	}
+
+	/**
+	 * Fill the child table and the index of every node in the children of
+	 * its parent
+	 */
+	private static void fillChildTable(int[][] columns) {
+		int i, child, pos = 0, size = columns[TYPE].length;
+
+		columns[INDEX][0] = -1;
+		for (int row = 0; row < size; row++) {
+			columns[CHILDREN][row] = pos;
+			i = 0;
+			child = columns[FIRST_CHILD][row];
+			while (child >= 0) {
+				columns[CHILD_ROWS][pos++] = child;
+				columns[INDEX][child] = i++;
+				child = columns[NEXT_SIBLING][child];
+			}
+		}
+	}
+}
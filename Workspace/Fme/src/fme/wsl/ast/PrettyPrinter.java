@@ -0,0 +1,164 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.ast;
+
+import java.io.IOException;
+
+/**
+ * This class writes the source code of an AST into a single Appendable (e.g.
+ * a StringBuilder for the editor or a Writer for a file). Indention is not
+ * applied by rewriting the text of every indented node but is written once at
+ * the start of each line which follows a new line.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class PrettyPrinter {
+
+	/**
+	 * Spaces for writing the indention
+	 */
+	private static final String SPACES = "                                ";
+
+	/**
+	 * The destination of the source code
+	 */
+	private Appendable out;
+
+	/**
+	 * True if the nodes should be marked with their rows
+	 */
+	private boolean markingTags;
+
+	/**
+	 * The indention of the open indented nodes (summed up from the outermost
+	 * node)
+	 */
+	private int[] indention = new int[16];
+
+	/**
+	 * The number of open indented nodes
+	 */
+	private int depth;
+
+	/**
+	 * The number of indented nodes whose indention still has to be written
+	 * after the last new line (-1 if there is no pending indention)
+	 */
+	private int pending = -1;
+
+	/**
+	 * The Constructor
+	 *
+	 * @param out
+	 *            The destination of the source code
+	 * @param markingTags
+	 *            True if the nodes should be marked with their rows
+	 */
+	public PrettyPrinter(Appendable out, boolean markingTags) {
+		this.out = out;
+		this.markingTags = markingTags;
+	}
+
+	/**
+	 * Pretty Print a node and its children into source code
+	 *
+	 * @param node
+	 *            The node
+	 * @param in
+	 *            The indention of the node
+	 * @throws IOException
+	 *             If the destination can't be written
+	 */
+	public void print(ASTNode node, int in) throws IOException {
+		node.prettyPrint(this, in);
+	}
+
+	/**
+	 * True if the nodes should be marked with their rows
+	 */
+	public boolean isMarkingTags() {
+		return markingTags;
+	}
+
+	// Methods for ASTNode
+	// ===================
+
+	/**
+	 * Start an indented node
+	 *
+	 * @param in
+	 *            The indention of the node
+	 */
+	void beginIndent(int in) throws IOException {
+		if (in < 0)
+			in = 0;
+		if (in > 0) {
+			writePending();
+			writeSpaces(in);
+		}
+		if (depth + 1 == indention.length) {
+			int[] t = new int[indention.length * 2];
+			System.arraycopy(indention, 0, t, 0, indention.length);
+			indention = t;
+		}
+		indention[depth + 1] = indention[depth] + in;
+		depth++;
+	}
+
+	/**
+	 * End an indented node. A new line at the end of the node isn't followed
+	 * by the indention of the node.
+	 */
+	void endIndent() {
+		depth--;
+		if (pending > depth)
+			pending = depth;
+	}
+
+	/**
+	 * Append text
+	 *
+	 * @param text
+	 *            The text
+	 */
+	void append(String text) throws IOException {
+		int i, j, len;
+
+		if (text == null)
+			text = "null";
+		len = text.length();
+		for (i = 0; i < len; i = j) {
+			writePending();
+			if (text.charAt(i) == '\n') {
+				out.append('\n');
+				pending = depth;
+				j = i + 1;
+			} else {
+				j = text.indexOf('\n', i);
+				if (j < 0)
+					j = len;
+				out.append(text, i, j);
+			}
+		}
+	}
+
+	// Internal Methods
+	// ================
+
+	private void writePending() throws IOException {
+		if (pending >= 0) {
+			writeSpaces(indention[pending]);
+			pending = -1;
+		}
+	}
+
+	private void writeSpaces(int n) throws IOException {
+		while (n > SPACES.length()) {
+			out.append(SPACES);
+			n -= SPACES.length();
+		}
+		out.append(SPACES, 0, n);
+	}
+}
@@ -0,0 +1,504 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.lexer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import fme.wsl.tables.LexerRuleTable;
+import fme.wsl.tables.LexerTokenTable;
+
+/**
+ * This class holds the lexer rule table and the lexer token table compiled
+ * into flat int arrays. Every check of the rule table becomes a state, every
+ * character is mapped to a character class which selects the checks that
+ * can fire on it, so the lexer does not need any string lookups while it
+ * scans a document.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class LexerAutomaton {
+
+    /**
+     * Return value of a state which did not identify a token
+     */
+    public static final int NO_TOKEN = -1;
+
+    /**
+     * Value modes of a state (Value column of the lexer table)
+     */
+    public static final int VALUE_NONE = 0;
+
+    public static final int VALUE_SCAN = 1;
+
+    public static final int VALUE_QUOTED = 2;
+
+    private static final int CHARS = 65536;
+
+    private static LexerAutomaton automaton;
+
+    /**
+     * The tables this automaton was compiled from
+     */
+    private Vector<Vector<String>> ruleSource, tokenSource;
+
+    // Token table
+    // ===========
+
+    private String[] tokenNames;
+
+    private Integer[] tokenNrs;
+
+    private int whitespaceToken;
+
+    /**
+     * Token of a single character (or NO_TOKEN)
+     */
+    private int[] singleCharToken;
+
+    /**
+     * Characters which terminate an identifier (WHITESPACE or SPECIALCHAR)
+     */
+    private long[] terminatorBitmap;
+
+    /**
+     * Open addressing table of all character sequences (reserved words and
+     * composite tokens)
+     */
+    private char[][] sequenceKeys;
+
+    private int[] sequenceTokens;
+
+    // Rule table (one entry per state)
+    // ================================
+
+    private boolean[] stateTrue;
+
+    private int[] statePassChar;
+
+    private int[] stateRegex;
+
+    private int[] stateGroup;
+
+    private int[] stateIdentified;
+
+    private int[] stateValue;
+
+    private int[] stateFirstChild;
+
+    private int[] stateNextSibling;
+
+    private long[][] regexBitmaps;
+
+    private boolean[][] groupMembers;
+
+    // Character classes
+    // =================
+
+    private char[] charClass;
+
+    private int[][] classStates;
+
+    /**
+     * Get the automaton for the currently loaded lexer tables. The automaton
+     * is compiled again if the tables were parsed again.
+     *
+     * @return The compiled automaton
+     */
+    public static LexerAutomaton getAutomaton() {
+        if (automaton == null
+            || automaton.ruleSource != LexerRuleTable.getLexerTable()
+            || automaton.tokenSource != LexerTokenTable.getLexerTable())
+            compile();
+        return automaton;
+    }
+
+    /**
+     * Compile the currently loaded lexer rule table and lexer token table
+     */
+    public static synchronized void compile() {
+        LexerAutomaton a = new LexerAutomaton();
+        a.ruleSource = LexerRuleTable.getLexerTable();
+        a.tokenSource = LexerTokenTable.getLexerTable();
+        a.compileTokenTable();
+        a.compileRuleTable();
+        a.compileCharClasses();
+        automaton = a;
+        Logger.getLogger(LexerAutomaton.class.getCanonicalName()).log(
+            Level.INFO,
+            "Lexer tables compiled (" + a.stateTrue.length + " states, "
+                + a.classStates.length + " character classes)");
+    }
+
+    // Lexing interface
+    // ================
+
+    /**
+     * Get the lexer checks which may identify a token starting with a given
+     * character (in the order of the lexer table)
+     *
+     * @param c
+     *            The first character
+     * @return The start states of these checks
+     */
+    public int[] getStartStates(char c) {
+        return classStates[charClass[c]];
+    }
+
+    public boolean isTrue(int state) {
+        return stateTrue[state];
+    }
+
+    public int getPassChar(int state) {
+        return statePassChar[state];
+    }
+
+    public boolean hasRegex(int state) {
+        return stateRegex[state] >= 0;
+    }
+
+    public boolean matchesRegex(int state, char c) {
+        return (regexBitmaps[stateRegex[state]][c >> 6] & (1L << c)) != 0;
+    }
+
+    public boolean hasGroup(int state) {
+        return stateGroup[state] >= 0;
+    }
+
+    public boolean isGroupMember(int state, int token) {
+        return groupMembers[stateGroup[state]][token];
+    }
+
+    public int getIdentified(int state) {
+        return stateIdentified[state];
+    }
+
+    public int getValueMode(int state) {
+        return stateValue[state];
+    }
+
+    public int getFirstChild(int state) {
+        return stateFirstChild[state];
+    }
+
+    public int getNextSibling(int state) {
+        return stateNextSibling[state];
+    }
+
+    public int getSingleCharToken(char c) {
+        return singleCharToken[c];
+    }
+
+    public boolean isTerminator(char c) {
+        return (terminatorBitmap[c >> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * Lookup a character sequence (e.g. a reserved word)
+     *
+     * @param seq
+     *            The characters
+     * @param start
+     *            The start of the sequence
+     * @param len
+     *            The length of the sequence
+     * @return The token or NO_TOKEN
+     */
+    public int getSequenceToken(CharSequence seq, int start, int len) {
+        int h = 0, slot;
+        char[] key;
+        for (int i = 0; i < len; i++)
+            h = 31 * h + seq.charAt(start + i);
+        slot = (h ^ (h >>> 16)) & (sequenceKeys.length - 1);
+        while ((key = sequenceKeys[slot]) != null) {
+            if (key.length == len) {
+                int i = 0;
+                while (i < len && key[i] == seq.charAt(start + i))
+                    i++;
+                if (i == len)
+                    return sequenceTokens[slot];
+            }
+            slot = (slot + 1) & (sequenceKeys.length - 1);
+        }
+        return NO_TOKEN;
+    }
+
+    public int getWhitespaceToken() {
+        return whitespaceToken;
+    }
+
+    public String getTokenName(int token) {
+        return tokenNames[token];
+    }
+
+    public Integer getTokenNr(int token) {
+        return tokenNrs[token];
+    }
+
+    public int getTokenCount() {
+        return tokenNames.length;
+    }
+
+    // Internal Methods
+    // ================
+
+    private void compileTokenTable() {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        Vector<String> names = new Vector<String>();
+        Vector<String> tupel;
+        Iterator<String> seqs;
+        String seq;
+        int c;
+
+        for (int i = 0; i < tokenSource.size(); i++)
+            tokenId(tokenSource.get(i).get(0), ids, names);
+        // Tokens which are only named in the rule table
+        for (int i = 0; i < ruleSource.size(); i++)
+            if (ruleSource.get(i).get(7).length() > 0)
+                tokenId(ruleSource.get(i).get(7), ids, names);
+
+        tokenNames = names.toArray(new String[names.size()]);
+        tokenNrs = new Integer[tokenNames.length];
+        for (int i = 0; i < tokenNames.length; i++) {
+            tupel = LexerTokenTable.getLexerToken(tokenNames[i]);
+            if (tupel != null)
+                tokenNrs[i] = Integer.valueOf(Integer.parseInt(tupel.get(4)));
+        }
+        whitespaceToken = tokenId("WHITESPACE", ids, names);
+
+        singleCharToken = new int[CHARS];
+        terminatorBitmap = new long[CHARS / 64];
+        for (c = 0; c < CHARS; c++) {
+            tupel = LexerTokenTable.getLexerTokenSingleChar((char) c);
+            if (tupel == null) {
+                singleCharToken[c] = NO_TOKEN;
+            } else {
+                singleCharToken[c] = ids.get(tupel.get(0)).intValue();
+                if (tupel.get(0).equals("WHITESPACE")
+                    || tupel.get(0).equals("SPECIALCHAR"))
+                    terminatorBitmap[c >> 6] |= 1L << c;
+            }
+        }
+
+        c = 16;
+        while (c < LexerTokenTable.getLexerTokenCharSequences().size() * 4)
+            c <<= 1;
+        sequenceKeys = new char[c][];
+        sequenceTokens = new int[c];
+        seqs = LexerTokenTable.getLexerTokenCharSequences().iterator();
+        while (seqs.hasNext()) {
+            seq = seqs.next();
+            putSequence(seq, ids.get(LexerTokenTable
+                .getLexerTokenCharSequence(seq).get(0)).intValue());
+        }
+    }
+
+    private int tokenId(String name, HashMap<String, Integer> ids,
+        Vector<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = Integer.valueOf(names.size());
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id.intValue();
+    }
+
+    private void putSequence(String seq, int token) {
+        int h = 0, slot;
+        for (int i = 0; i < seq.length(); i++)
+            h = 31 * h + seq.charAt(i);
+        slot = (h ^ (h >>> 16)) & (sequenceKeys.length - 1);
+        while (sequenceKeys[slot] != null)
+            slot = (slot + 1) & (sequenceKeys.length - 1);
+        sequenceKeys[slot] = seq.toCharArray();
+        sequenceTokens[slot] = token;
+    }
+
+    private void compileRuleTable() {
+        HashMap<String, Integer> tokenIds = new HashMap<String, Integer>();
+        HashMap<String, Integer> regexIds = new HashMap<String, Integer>();
+        HashMap<String, Integer> groupIds = new HashMap<String, Integer>();
+        Vector<String> regexes = new Vector<String>();
+        Vector<String> groups = new Vector<String>();
+        Vector<String> tupel;
+        int n = ruleSource.size();
+
+        for (int i = 0; i < tokenNames.length; i++)
+            tokenIds.put(tokenNames[i], Integer.valueOf(i));
+
+        stateTrue = new boolean[n];
+        statePassChar = new int[n];
+        stateRegex = new int[n];
+        stateGroup = new int[n];
+        stateIdentified = new int[n];
+        stateValue = new int[n];
+        stateFirstChild = new int[n];
+        stateNextSibling = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            tupel = ruleSource.get(i);
+
+            stateTrue[i] = tupel.get(2).equals("TRUE");
+
+            // PassingCharacter or its code in the Hex column
+            if (tupel.get(3).length() == 1)
+                statePassChar[i] = tupel.get(3).charAt(0);
+            else if (tupel.get(4).length() > 0)
+                statePassChar[i] = (char) Integer.parseInt(tupel.get(4));
+
+            stateRegex[i] = index(tupel.get(5), regexIds, regexes);
+            stateGroup[i] = index(tupel.get(6), groupIds, groups);
+
+            if (tupel.get(7).length() > 0)
+                stateIdentified[i] = tokenIds.get(tupel.get(7)).intValue();
+            else
+                stateIdentified[i] = NO_TOKEN;
+
+            if (tupel.get(8).equals("SCAN_IDENTIFIER")
+                || tupel.get(8).equals("SCAN_NUMBER"))
+                stateValue[i] = VALUE_SCAN;
+            else if (tupel.get(8).equals("SCAN_STRING")
+                || tupel.get(8).equals("SCAN_COMMENT"))
+                stateValue[i] = VALUE_QUOTED;
+            else
+                stateValue[i] = VALUE_NONE;
+
+            stateFirstChild[i] = state(tupel.get(0) + "." + tupel.get(1)
+                + ".1");
+            stateNextSibling[i] = state(nextLevel(tupel.get(0), tupel
+                .get(1)));
+        }
+
+        regexBitmaps = new long[regexes.size()][];
+        for (int i = 0; i < regexes.size(); i++) {
+            Pattern p = Pattern.compile(regexes.get(i));
+            regexBitmaps[i] = new long[CHARS / 64];
+            for (int c = 0; c < CHARS; c++) {
+                if (p.matcher(Character.toString((char) c)).matches())
+                    regexBitmaps[i][c >> 6] |= 1L << c;
+            }
+        }
+
+        groupMembers = new boolean[groups.size()][tokenNames.length];
+        for (int i = 0; i < groups.size(); i++) {
+            Vector<String> members = LexerTokenTable.getLexerTokenGroup(groups
+                .get(i));
+            if (members == null)
+                continue;
+            for (int j = 0; j < members.size(); j++) {
+                Integer t = tokenIds.get(members.get(j));
+                if (t != null)
+                    groupMembers[i][t.intValue()] = true;
+            }
+        }
+    }
+
+    private int index(String value, HashMap<String, Integer> ids,
+        Vector<String> values) {
+        Integer id;
+        if (value.length() == 0)
+            return -1;
+        if ((id = ids.get(value)) == null) {
+            id = Integer.valueOf(values.size());
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Get the level of the next check on the same level (e.g. 0.2 for 0.1)
+     */
+    private String nextLevel(String id, String level) {
+        int p = level.lastIndexOf('.');
+        if (p < 0)
+            return null;
+        return id + "." + level.substring(0, p + 1)
+            + (Integer.parseInt(level.substring(p + 1)) + 1);
+    }
+
+    private int state(String idLevel) {
+        Vector<String> tupel;
+        if (idLevel == null
+            || (tupel = LexerRuleTable.getLexerCheck(idLevel)) == null)
+            return -1;
+        for (int i = 0; i < ruleSource.size(); i++)
+            if (ruleSource.get(i) == tupel)
+                return i;
+        return -1;
+    }
+
+    private void compileCharClasses() {
+        HashMap<String, Integer> classes = new HashMap<String, Integer>();
+        Vector<int[]> classList = new Vector<int[]>();
+        int[] roots = new int[LexerRuleTable.getSize() + 1];
+        boolean[][] groupFirstChars = new boolean[groupMembers.length][CHARS];
+        int[] states = new int[roots.length];
+        int count, s;
+        StringBuffer key;
+        Integer cl;
+        char[] seq;
+
+        for (int i = 0; i < roots.length; i++) {
+            Vector<String> tupel = LexerRuleTable.getLexerFirstCheck(i);
+            roots[i] = -1;
+            for (int j = 0; tupel != null && j < ruleSource.size(); j++)
+                if (ruleSource.get(j) == tupel)
+                    roots[i] = j;
+        }
+
+        // A group check may identify a sequence if the sequence starts with
+        // the current character
+        for (int i = 0; i < sequenceKeys.length; i++) {
+            if ((seq = sequenceKeys[i]) == null || seq.length == 0)
+                continue;
+            for (int g = 0; g < groupMembers.length; g++)
+                if (groupMembers[g][sequenceTokens[i]])
+                    groupFirstChars[g][seq[0]] = true;
+        }
+
+        charClass = new char[CHARS];
+        for (int c = 0; c < CHARS; c++) {
+            count = 0;
+            for (int i = 0; i < roots.length; i++) {
+                if ((s = roots[i]) < 0)
+                    continue;
+                if (stateTrue[s]) {
+                    states[count++] = s;
+                    break;
+                } else if (c == statePassChar[s]) {
+                    states[count++] = s;
+                } else if (stateRegex[s] >= 0) {
+                    if ((regexBitmaps[stateRegex[s]][c >> 6] & (1L << c)) != 0)
+                        states[count++] = s;
+                } else if (stateGroup[s] >= 0) {
+                    if (singleCharToken[c] != NO_TOKEN) {
+                        if (groupMembers[stateGroup[s]][singleCharToken[c]])
+                            states[count++] = s;
+                    } else if (groupFirstChars[stateGroup[s]][c])
+                        states[count++] = s;
+                }
+            }
+
+            key = new StringBuffer();
+            for (int i = 0; i < count; i++)
+                key.append(states[i]).append(',');
+            if ((cl = classes.get(key.toString())) == null) {
+                int[] cs = new int[count];
+                System.arraycopy(states, 0, cs, 0, count);
+                cl = Integer.valueOf(classList.size());
+                classes.put(key.toString(), cl);
+                classList.add(cs);
+            }
+            charClass[c] = (char) cl.intValue();
+        }
+        classStates = classList.toArray(new int[classList.size()][]);
+    }
+}
@@ -5,59 +5,65 @@
 package fme.wsl.lexer;
 
 import fme.wsl.ast.ASTNode;
-import fme.wsl.tables.LexerTokenTable;
 
 /**
- * This class represents a lexical token
+ * This class represents a lexical token (a view on a token of a token
+ * stream)
  * 
  * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
  */
 public class LexerToken {
 
-    private Integer nr;
+    private TokenStream stream;
 
-    private String name;
+    private int index;
 
-    private String value;
-
-    private int posStart;
-
-    private int posEnd;
-
-    private ASTNode astNode;
-
-    public LexerToken(String name, String value, int posStart, int posEnd) {
-        nr = Integer.parseInt(LexerTokenTable.getLexerToken(name).get(4));
-        this.name = name;
-        if (value != null)
-            this.value = value.replace("?", "");
-        this.posStart = posStart;
-        this.posEnd = posEnd;
+    LexerToken(TokenStream stream, int index) {
+        this.stream = stream;
+        this.index = index;
     }
 
     public String getName() {
-        return name;
+        return stream.getName(index);
     }
 
     public Integer getNr() {
-        return nr;
+        return stream.getNr(index);
     }
 
     public int getPosEnd() {
-        return posEnd;
+        return stream.getEnd(index);
     }
 
     public int getPosStart() {
-        return posStart;
+        return stream.getStart(index);
     }
 
     public String getValue() {
-        return value;
+        return stream.getValue(index);
+    }
+
+    /**
+     * Get the position of this token in the token list
+     * 
+     * @return The index of the token
+     */
+    public int getIndex() {
+        return index;
     }
 
     public String toString() {
-        return "LexerToken:" + name + "(" + nr + ") Value=\"" + value
-            + "\" Pos=" + posStart + "-" + posEnd;
+        return "LexerToken:" + getName() + "(" + getNr() + ") Value=\""
+            + getValue() + "\" Pos=" + getPosStart() + "-" + getPosEnd();
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof LexerToken && ((LexerToken) o).stream == stream
+            && ((LexerToken) o).index == index;
+    }
+
+    public int hashCode() {
+        return stream.hashCode() * 31 + index;
     }
 
     /**
@@ -67,7 +73,8 @@ public class LexerToken {
      *            The ast node
      */
     public void setASTNode(ASTNode astNode) {
-        this.astNode = astNode;
+        stream.setASTRow(index, astNode == null ? TokenStream.NO_ROW : astNode
+            .getRow());
     }
 
     /**
@@ -76,6 +83,6 @@ public class LexerToken {
      * @return The ast ndoe
      */
     public ASTNode getASTNode() {
-        return astNode;
+        return stream.getASTNode(index);
     }
 }
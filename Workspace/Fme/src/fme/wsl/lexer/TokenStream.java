@@ -0,0 +1,442 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.lexer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTNode;
+
+/**
+ * This class holds a list of lexer tokens as parallel primitive arrays (kind,
+ * start position, end position, value and AST row). Values are interned in a
+ * side table. LexerToken objects are only created as views on demand.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class TokenStream {
+
+    /**
+     * Row of a token which is not associated with an AST node
+     */
+    public static final int NO_ROW = -1;
+
+    private LexerAutomaton automaton;
+
+    private int size;
+
+    private int[] kinds;
+
+    private int[] starts;
+
+    private int[] ends;
+
+    private int[] values;
+
+    private int[] astRows;
+
+    private String[] valueTable;
+
+    private int valueCount;
+
+    private HashMap<String, Integer> valueLookup;
+
+    /**
+     * The Constructor
+     *
+     * @param automaton
+     *            The lexer automaton which defines the token kinds
+     */
+    public TokenStream(LexerAutomaton automaton) {
+        this(automaton, 256);
+    }
+
+    /**
+     * The Constructor
+     *
+     * @param automaton
+     *            The lexer automaton which defines the token kinds
+     * @param capacity
+     *            The expected number of tokens
+     */
+    public TokenStream(LexerAutomaton automaton, int capacity) {
+        if (capacity < 16)
+            capacity = 16;
+        this.automaton = automaton;
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        values = new int[capacity];
+        astRows = new int[capacity];
+        valueTable = new String[64];
+        valueLookup = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Add a token at the end of the stream
+     *
+     * @param kind
+     *            The kind of the token (see LexerAutomaton)
+     * @param start
+     *            The start position
+     * @param end
+     *            The end position
+     * @param value
+     *            The value or null
+     * @param astRow
+     *            The row of the associated AST node or NO_ROW
+     * @return The index of the new token
+     */
+    public int add(int kind, int start, int end, String value, int astRow) {
+        if (size == kinds.length)
+            grow(size * 2);
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        values[size] = value == null ? -1 : intern(value.replace("?", ""));
+        astRows[size] = astRow;
+        return size++;
+    }
+
+    /**
+     * Add a copy of a token of another stream at the end of the stream
+     *
+     * @param source
+     *            The other stream
+     * @param index
+     *            The index of the token in the other stream
+     * @param astRow
+     *            The row of the associated AST node or NO_ROW
+     * @return The index of the new token
+     */
+    public int add(TokenStream source, int index, int astRow) {
+        if (size == kinds.length)
+            grow(size * 2);
+        kinds[size] = source.kinds[index];
+        starts[size] = source.starts[index];
+        ends[size] = source.ends[index];
+        values[size] = source.values[index] < 0 ? -1 : intern(source
+            .getValue(index));
+        astRows[size] = astRow;
+        return size++;
+    }
+
+    /**
+     * Replace a range of tokens with the tokens of another stream and shift
+     * the positions of the following tokens
+     *
+     * @param first
+     *            The index of the first token to replace
+     * @param last
+     *            The index after the last token to replace
+     * @param fresh
+     *            The new tokens
+     * @param shift
+     *            The distance by which the following tokens are moved
+     */
+    public void replace(int first, int last, TokenStream fresh, int shift) {
+        int i, n = fresh.size, tail = size - last, newSize = first + n + tail;
+
+        if (newSize > kinds.length)
+            grow(Math.max(newSize, size * 2));
+
+        if (first + n != last) {
+            System.arraycopy(kinds, last, kinds, first + n, tail);
+            System.arraycopy(starts, last, starts, first + n, tail);
+            System.arraycopy(ends, last, ends, first + n, tail);
+            System.arraycopy(values, last, values, first + n, tail);
+            System.arraycopy(astRows, last, astRows, first + n, tail);
+        }
+        if (shift != 0) {
+            for (i = first + n; i < newSize; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+
+        for (i = 0; i < n; i++) {
+            kinds[first + i] = fresh.kinds[i];
+            starts[first + i] = fresh.starts[i];
+            ends[first + i] = fresh.ends[i];
+            values[first + i] = fresh.values[i] < 0 ? -1 : intern(fresh
+                .getValue(i));
+            astRows[first + i] = fresh.astRows[i];
+        }
+        size = newSize;
+    }
+
+    /**
+     * Get the number of tokens
+     *
+     * @return The number of tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    public LexerAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    public int getKind(int index) {
+        return kinds[index];
+    }
+
+    public String getName(int index) {
+        return automaton.getTokenName(kinds[index]);
+    }
+
+    public Integer getNr(int index) {
+        return automaton.getTokenNr(kinds[index]);
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public String getValue(int index) {
+        return values[index] < 0 ? null : valueTable[values[index]];
+    }
+
+    public int getASTRow(int index) {
+        return astRows[index];
+    }
+
+    public void setASTRow(int index, int row) {
+        astRows[index] = row;
+    }
+
+    /**
+     * Get the AST node which is associated with a token
+     *
+     * @param index
+     *            The index of the token
+     * @return The AST node or null
+     */
+    public ASTNode getASTNode(int index) {
+        if (astRows[index] == NO_ROW)
+            return null;
+        return AST.getNodeFromRow(astRows[index]);
+    }
+
+    /**
+     * Get the index of the token which starts at a given position
+     *
+     * @param start
+     *            The start position
+     * @return The index of the token or -1
+     */
+    public int indexOf(int start) {
+        int lo = 0, hi = size - 1, mid;
+        while (lo <= hi) {
+            mid = (lo + hi) >>> 1;
+            if (starts[mid] < start)
+                lo = mid + 1;
+            else if (starts[mid] > start)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the index of the token which contains a given position or the
+     * last token before it
+     *
+     * @param offset
+     *            The position
+     * @return The index of the token or -1 if there is no token before the
+     *         position
+     */
+    public int indexAt(int offset) {
+        int lo = 0, hi = size - 1, mid;
+        while (lo <= hi) {
+            mid = (lo + hi) >>> 1;
+            if (starts[mid] <= offset)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return hi;
+    }
+
+    /**
+     * Get a view on a token
+     *
+     * @param index
+     *            The index of the token
+     * @return The lexer token
+     */
+    public LexerToken getToken(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Token " + index + " of "
+                + size);
+        return new LexerToken(this, index);
+    }
+
+    /**
+     * Get a list view on all tokens
+     *
+     * @return The list of tokens
+     */
+    public List<LexerToken> asList() {
+        return new AbstractList<LexerToken>() {
+            public LexerToken get(int index) {
+                return getToken(index);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Write the tokens in a compact binary form. The token kinds are written
+     * together with their names so that they can be mapped to the kinds of
+     * another automaton.
+     *
+     * @param data
+     *            The destination
+     * @throws IOException
+     *             If the destination can't be written
+     */
+    public void write(DataOutputStream data) throws IOException {
+        int i, count = automaton == null ? 0 : automaton.getTokenCount();
+
+        data.writeInt(count);
+        for (i = 0; i < count; i++)
+            writeString(data, automaton.getTokenName(i));
+        data.writeInt(valueCount);
+        for (i = 0; i < valueCount; i++)
+            writeString(data, valueTable[i]);
+        data.writeInt(size);
+        for (i = 0; i < size; i++) {
+            data.writeInt(kinds[i]);
+            data.writeInt(starts[i]);
+            data.writeInt(ends[i]);
+            data.writeInt(values[i]);
+            data.writeInt(astRows[i]);
+        }
+    }
+
+    /**
+     * Read tokens which were written with write
+     *
+     * @param buffer
+     *            The source
+     * @param automaton
+     *            The lexer automaton which defines the token kinds
+     * @return The tokens
+     * @throws IOException
+     *             If the tokens can't be read or a token kind is unknown to
+     *             the automaton
+     */
+    public static TokenStream read(ByteBuffer buffer, LexerAutomaton automaton)
+        throws IOException {
+
+        int i, j, count;
+        int[] kindMap;
+        String name;
+        HashMap<String, Integer> names = new HashMap<String, Integer>();
+        TokenStream ret;
+
+        for (i = 0; i < automaton.getTokenCount(); i++)
+            names.put(automaton.getTokenName(i), Integer.valueOf(i));
+
+        kindMap = new int[buffer.getInt()];
+        for (i = 0; i < kindMap.length; i++) {
+            name = readString(buffer);
+            kindMap[i] = names.containsKey(name) ? names.get(name).intValue()
+                : LexerAutomaton.NO_TOKEN;
+        }
+
+        count = buffer.getInt();
+        ret = new TokenStream(automaton, 0);
+        ret.valueTable = new String[Math.max(count, 16)];
+        for (i = 0; i < count; i++)
+            ret.intern(readString(buffer));
+
+        count = buffer.getInt();
+        ret.grow(Math.max(count, 16));
+        for (i = 0; i < count; i++) {
+            j = buffer.getInt();
+            if (j >= 0 && (j >= kindMap.length
+                || kindMap[j] == LexerAutomaton.NO_TOKEN))
+                throw new IOException("Unknown token kind " + j);
+            ret.kinds[i] = j < 0 ? j : kindMap[j];
+            ret.starts[i] = buffer.getInt();
+            ret.ends[i] = buffer.getInt();
+            ret.values[i] = buffer.getInt();
+            ret.astRows[i] = buffer.getInt();
+            if (ret.values[i] >= ret.valueCount)
+                throw new IOException("Unknown token value " + ret.values[i]);
+        }
+        ret.size = count;
+        return ret;
+    }
+
+    // Internal Methods
+    // ================
+
+    private int intern(String value) {
+        Integer id = valueLookup.get(value);
+        if (id == null) {
+            if (valueCount == valueTable.length) {
+                String[] t = new String[valueCount * 2];
+                System.arraycopy(valueTable, 0, t, 0, valueCount);
+                valueTable = t;
+            }
+            id = Integer.valueOf(valueCount);
+            valueTable[valueCount++] = value;
+            valueLookup.put(value, id);
+        }
+        return id.intValue();
+    }
+
+    private void grow(int capacity) {
+        kinds = copy(kinds, capacity);
+        starts = copy(starts, capacity);
+        ends = copy(ends, capacity);
+        values = copy(values, capacity);
+        astRows = copy(astRows, capacity);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int len = buffer.getInt();
+        if (len < 0)
+            return null;
+        byte[] b = new byte[len];
+        buffer.get(b);
+        return new String(b, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream data, String s)
+        throws IOException {
+        if (s == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes("UTF-8");
+        data.writeInt(b.length);
+        data.write(b);
+    }
+
+    private int[] copy(int[] a, int capacity) {
+        int[] n = new int[capacity];
+        System.arraycopy(a, 0, n, 0, size);
+        return n;
+    }
+}
@@ -1,17 +1,21 @@
 package fme.wsl.lexer;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.event.DocumentEvent;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Segment;
 
 import fme.wsl.ast.AST;
 import fme.wsl.ast.ASTNode;
-import fme.wsl.tables.LexerRuleTable;
-import fme.wsl.tables.LexerTokenTable;
 
 /**
  * This class parses a given WSL file and constructs a Lexer Token list
@@ -23,22 +27,61 @@ public class WSLLexer {
 
     private static WSLLexer singleton = new WSLLexer();
 
+    private static boolean parallel = false;
+
+    private static int chunkSize = 65536;
+
+    private static ForkJoinPool pool;
+
     private int pos;
 
-    private Vector<String> passingLexTupel;
+    private LexerAutomaton automaton;
+
+    private int passingState;
+
+    private CharSequence text;
+
+    private int length;
+
+    private TokenStream tokens;
 
-    private Document doc;
+    private int documentLength;
 
-    private Vector<LexerToken> tokens;
+    private TokenStream previous;
 
-    private HashMap<Integer, LexerToken> tokenLookUp;
+    private int damageEnd;
+
+    private int shift;
+
+    private int limit;
+
+    private Chunk chunk;
 
     /**
      * The Constructor
      */
     private WSLLexer() {
-        tokens = new Vector<LexerToken>();
-        tokenLookUp = new HashMap<Integer, LexerToken>();
+        tokens = new TokenStream(null);
+        documentLength = -1;
+        limit = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Enables or disables the parallel lexing of large texts. A text is split
+     * into chunks at statement boundaries, the chunks are lexed on a fork
+     * join pool and the results are stitched together. The tokens are the
+     * same as those of the sequential lexer.
+     * 
+     * @param enable
+     *            True if large texts should be lexed in parallel
+     * @param size
+     *            The size of a chunk in characters
+     */
+    public static synchronized void setParallel(boolean enable, int size) {
+        parallel = enable;
+        chunkSize = Math.max(size, 1024);
+        if (parallel && pool == null)
+            pool = new ForkJoinPool();
     }
 
     /**
@@ -50,8 +93,64 @@ public class WSLLexer {
     public static void parseWSL(Document wslfile) {
         Logger.getLogger(WSLLexer.class.getCanonicalName()).log(Level.INFO,
             "Parsing WSL file ...");
-        singleton.doc = wslfile;
+        Segment segment = new Segment();
+        try {
+            wslfile.getText(0, wslfile.getLength(), segment);
+        } catch (BadLocationException e) {
+            Logger.getLogger(WSLLexer.class.getCanonicalName()).log(
+                Level.SEVERE, "Can't read the current document");
+            return;
+        }
+        singleton.text = segment;
+        singleton.length = wslfile.getLength();
+        singleton.parse();
+        singleton.text = null;
+        singleton.documentLength = wslfile.getLength();
+    }
+
+    /**
+     * Updates the token list after a change of the last parsed WSL document.
+     * Only the text from the last safe token before the change up to the
+     * first token which is in sync with the old token list again is lexed.
+     * The positions of all following tokens are shifted.
+     * 
+     * @param change
+     *            The change of the document
+     */
+    public static void update(DocumentEvent change) {
+        singleton.relex(change);
+    }
+
+    /**
+     * Parses a given WSL text. The text is lexed as if it was the content of
+     * a document (which always ends with an implicit newline).
+     * 
+     * @param wsltext
+     *            The text to parse
+     */
+    public static void lex(CharSequence wsltext) {
+        Logger.getLogger(WSLLexer.class.getCanonicalName()).log(Level.INFO,
+            "Parsing WSL text ...");
+        singleton.text = wsltext;
+        singleton.length = wsltext.length();
         singleton.parse();
+        singleton.text = null;
+        singleton.documentLength = -1;
+    }
+
+    /**
+     * Takes over the tokens of a WSL document which were lexed before (e.g.
+     * restored from a cache). The tokens must belong to the current content
+     * of the document.
+     * 
+     * @param wslfile
+     *            The document
+     * @param stream
+     *            The tokens of the document
+     */
+    public static void setTokenStream(Document wslfile, TokenStream stream) {
+        singleton.tokens = stream;
+        singleton.documentLength = wslfile.getLength();
     }
 
     /**
@@ -59,7 +158,16 @@ public class WSLLexer {
      * 
      * @return A list of tokens
      */
-    public static Vector<LexerToken> getTokens() {
+    public static List<LexerToken> getTokens() {
+        return singleton.tokens.asList();
+    }
+
+    /**
+     * Gets a WSL file chopped into tokens
+     * 
+     * @return The token stream
+     */
+    public static TokenStream getTokenStream() {
         return singleton.tokens;
     }
 
@@ -71,52 +179,314 @@ public class WSLLexer {
      * @return The requested lexer token or null
      */
     public static LexerToken getToken(int pos) {
-        return singleton.tokenLookUp.get(new Integer(pos));
+        int i = singleton.tokens.indexOf(pos);
+        return i < 0 ? null : singleton.tokens.getToken(i);
+    }
+
+    /**
+     * Gets the index of the WSL token which contains the position offset (or
+     * the last token which starts before it)
+     * 
+     * @param offset
+     *            The position in the document
+     * @return The index of the token or -1
+     */
+    public static int tokenIndexAt(int offset) {
+        return singleton.tokens.indexAt(offset);
+    }
+
+    /**
+     * Gets the WSL token which contains the position offset (or the last
+     * token which starts before it)
+     * 
+     * @param offset
+     *            The position in the document
+     * @return The requested lexer token or null
+     */
+    public static LexerToken tokenAt(int offset) {
+        int i = singleton.tokens.indexAt(offset);
+        return i < 0 ? null : singleton.tokens.getToken(i);
     }
 
     private void parse() {
+        automaton = LexerAutomaton.getAutomaton();
+        previous = null;
+        if (parallel && length >= 2 * chunkSize && parseChunks())
+            return;
+        tokens = new TokenStream(automaton, length / 4);
+        scan(tokens, 0, 0);
+    }
 
-        int i, j, startpos, nodeRow;
+    /**
+     * Lexes the text in chunks on the fork join pool and stitches the chunks
+     * together. If a chunk doesn't start on a token boundary of the
+     * sequential lexer the text from the end of the previous chunk is lexed
+     * again until the lexer is in sync with the chunk.
+     * 
+     * @return False if the text has to be lexed sequentially
+     */
+    private boolean parseChunks() {
+
+        int i, j, next;
+        Vector<Integer> splits = findSplitPoints();
+        Vector<Callable<Chunk>> tasks = new Vector<Callable<Chunk>>();
+        Chunk[] chunks;
+        Chunk current, gap;
+        WSLLexer lexer;
+        Stitcher stitcher;
+
+        if (splits.size() < 2)
+            return false;
+
+        chunks = new Chunk[splits.size()];
+        for (i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(text, length, automaton, splits.get(i)
+                .intValue(), i + 1 < chunks.length ? splits.get(i + 1)
+                .intValue() : Integer.MAX_VALUE);
+            tasks.add(chunks[i]);
+        }
+
+        try {
+            for (Future<Chunk> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // A chunk which doesn't start on a token boundary may fail in
+            // places where the sequential lexer wouldn't
+            return false;
+        }
+
+        tokens = new TokenStream(automaton, length / 4);
+        stitcher = new Stitcher(tokens);
+        next = 0;
+
+        for (i = 0; i < chunks.length; i++) {
+            current = chunks[i];
+            j = 0;
+
+            // Lex from the end of the last chunk until the tokens of this
+            // chunk are reached
+            if (next != current.start) {
+                gap = new Chunk(text, length, automaton, next,
+                    current.isComplete() ? Integer.MAX_VALUE : current.end);
+                lexer = gap.createLexer();
+                lexer.previous = current.tokens;
+                lexer.damageEnd = next;
+                lexer.shift = 0;
+                j = lexer.scan(gap.tokens, next, 0);
+                gap.end = lexer.pos;
+
+                stitcher.append(gap, 0, next);
+                if (gap.isComplete()) {
+                    stitcher.finish(gap);
+                    return true;
+                }
+                if (j < 0) {
+                    next = gap.end;
+                    continue;
+                }
+                next = current.tokens.getStart(j);
+            }
+
+            stitcher.append(current, j, next);
+            if (current.isComplete()) {
+                stitcher.finish(current);
+                return true;
+            }
+            next = current.end;
+        }
+        return true;
+    }
+
+    /**
+     * Searches split points for the parallel lexing. A text is split after a
+     * ';' at the end of a line (outside of a string) roughly every chunkSize
+     * characters.
+     * 
+     * @return The start positions of the chunks
+     */
+    private Vector<Integer> findSplitPoints() {
+
+        int i, next = chunkSize, end = length - chunkSize / 2;
+        boolean quoted = false;
+        char c, d;
+        Vector<Integer> splits = new Vector<Integer>();
+
+        splits.add(new Integer(0));
+        for (i = 0; i < end; i++) {
+            c = text.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (i >= next && !quoted && (c == '\n' || c == '\r')) {
+                d = text.charAt(i - 1);
+                if (d == ';' || i >= next + chunkSize) {
+                    splits.add(new Integer(i));
+                    next = i + chunkSize;
+                }
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Lexes a part of a changed document and merges the new tokens into the
+     * token list
+     * 
+     * @param change
+     *            The change of the document
+     */
+    private void relex(DocumentEvent change) {
+
+        int i, j, offset, first, last, restart, start, row;
+        TokenStream fresh;
+        Document document = change.getDocument();
+
+        if (change.getType() == DocumentEvent.EventType.INSERT)
+            shift = change.getLength();
+        else if (change.getType() == DocumentEvent.EventType.REMOVE)
+            shift = -change.getLength();
+        else
+            return;
+
+        // The token list must describe the document before the change
+        if (tokens.getAutomaton() == null
+            || tokens.getAutomaton() != LexerAutomaton.getAutomaton()
+            || documentLength != document.getLength() - shift)
+            return;
+
+        offset = change.getOffset();
+        damageEnd = offset + Math.max(shift, 0);
+
+        // Restart one token before the token which contains the change since
+        // the lexer may look beyond the end of a token
+        first = tokens.indexAt(offset) - 1;
+        if (first < 0) {
+            first = 0;
+            restart = 0;
+        } else
+            restart = tokens.getStart(first);
+
+        automaton = tokens.getAutomaton();
+        previous = tokens;
+        fresh = new TokenStream(automaton, 16);
+        text = new DocumentText(document);
+        length = document.getLength();
+        try {
+            last = scan(fresh, restart, first);
+        } catch (RuntimeException e) {
+            // The token list can't be updated until the next full parse
+            Logger.getLogger(this.getClass().getCanonicalName()).log(
+                Level.WARNING, "Can't relex the changed document: " + e);
+            documentLength = -1;
+            return;
+        } finally {
+            text = null;
+            previous = null;
+        }
+        if (last < 0)
+            last = tokens.size();
+
+        // Keep the tree nodes of tokens which survived the change and
+        // associate new tokens with the node of the token before them
+        for (i = 0; i < fresh.size(); i++) {
+            start = fresh.getStart(i);
+            if (start < offset)
+                j = tokens.indexOf(start);
+            else if (start >= damageEnd)
+                j = tokens.indexOf(start - shift);
+            else
+                j = -1;
+
+            if (j >= 0)
+                row = tokens.getASTRow(j);
+            else if (i > 0)
+                row = fresh.getASTRow(i - 1);
+            else if (first < tokens.size())
+                row = tokens.getASTRow(first);
+            else
+                row = 0;
+            fresh.setASTRow(i, row);
+        }
+
+        tokens.replace(first, last, fresh, shift);
+        documentLength = length;
+
+        if (fresh.size() != last - first)
+            AST.moveLexerTokens(first, last, first + fresh.size());
+
+        Logger.getLogger(this.getClass().getCanonicalName()).log(
+            Level.FINE,
+            "Relexed tokens " + first + " to " + last + " as " + fresh.size()
+                + " tokens");
+    }
+
+    /**
+     * Lexes the text from a given position. If an old token list is given
+     * the lexing stops as soon as a token starts behind the damaged area at
+     * the (shifted) position of an old token.
+     * 
+     * @param out
+     *            The token list to fill
+     * @param from
+     *            The position to start from
+     * @param base
+     *            The index of the first token in the complete token list
+     * @return The index of the old token where the lexer got back in sync
+     *         or -1 if the end of the text was reached
+     */
+    private int scan(TokenStream out, int from, int base) {
+
+        int i, j, startpos, nodeRow, token;
         Vector<Integer> nodeRowStack = new Vector<Integer>();
         Vector<ASTNode> nodesForNextLexerToken = new Vector<ASTNode>();
         Vector<ASTNode> nodesEndForNextLexerToken = new Vector<ASTNode>();
 
-        String ppm, st;
-        String token, value;
-        LexerToken lexerToken;
-
-        tokens = new Vector<LexerToken>();
-        tokenLookUp = new HashMap<Integer, LexerToken>();
+        String st;
+        String value;
+        int[] startStates;
 
         try {
 
-            pos = 0;
+            pos = from;
             nodeRow = 0;
-            lexerToken = null;
 
-            while (pos <= doc.getLength()) {
+            while (pos <= length) {
+
+                // Stop if the rest of the text was already lexed
+                if (previous != null && pos >= damageEnd
+                    && (j = previous.indexOf(pos - shift)) >= 0)
+                    return j;
 
-                token = null;
+                // Stop at the end of a chunk
+                if (pos >= limit)
+                    return -1;
+
+                token = LexerAutomaton.NO_TOKEN;
                 value = null;
                 startpos = pos;
 
                 // Ignore PrettyPrint Marks
-                if (pos + 2 < doc.getLength())
-                    ppm = doc.getText(pos, 2);
-                else
-                    ppm = "";
-                while (ppm.equals("<#") || ppm.equals("<|")) {
-                    st = "";
-                    for (j = 0; !st.equals(">"); j++) {
-                        st = doc.getText(pos + j, 1);
-                    }
-                    st = doc.getText(pos, j);
+                while (pos + 2 < length && text.charAt(pos) == '<'
+                    && (text.charAt(pos + 1) == '#'
+                        || text.charAt(pos + 1) == '|')) {
+                    j = 0;
+                    while (charAt(pos + j) != '>')
+                        j++;
+                    j++;
+                    st = getText(pos, j);
                     nodeRow = Integer
                         .parseInt(st.substring(2, st.length() - 2));
 
+                    // Leave the NodeRowStack to the stitching of the chunks
+                    if (chunk != null)
+                        chunk.addMark(out.size(), startpos,
+                            st.charAt(1) == '#', nodeRow);
+
                     // Handle the NodeRowStack
                     // Begin Mark
-                    if (ppm.equals("<#")) {
+                    else if (st.charAt(1) == '#') {
                         nodeRowStack.add(new Integer(nodeRow));
                         nodesForNextLexerToken.add(AST.getNodeFromRow(nodeRow));
                     }
@@ -133,63 +503,52 @@ public class WSLLexer {
                     }
 
                     pos = pos + j;
-
-                    if (pos + 2 < doc.getLength())
-                        ppm = doc.getText(pos, 2);
-                    else
-                        break;
                 }
 
-                for (i = 0; i < LexerRuleTable.getSize() + 1; i++) {
+                // Only try the checks which can fire on the current character
+                startStates = automaton.getStartStates(charAt(pos));
+                for (i = 0; i < startStates.length; i++) {
                     // Get the next token
                     // After this call the pos pointer should point to the
-                    // last
-                    // character of the identified token
-                    token = checkChar(i, "0", pos);
-                    if (token != null)
+                    // last character of the identified token
+                    token = checkChar(startStates[i], pos);
+                    if (token != LexerAutomaton.NO_TOKEN)
                         break;
                 }
 
                 // Optain value of the token if necessary
-                if (token != null && passingLexTupel.get(8).length() > 0) {
+                if (token != LexerAutomaton.NO_TOKEN) {
 
-                    if (passingLexTupel.get(8).equals("SCAN_IDENTIFIER")
-                        || passingLexTupel.get(8).equals("SCAN_NUMBER")) {
+                    if (automaton.getValueMode(passingState) == LexerAutomaton.VALUE_SCAN) {
                         i = scanCharSeq(pos);
-                        value = doc.getText(pos, i);
+                        value = getText(pos, i);
                         pos = pos + i - 1;
-                    } else if (passingLexTupel.get(8).equals("SCAN_STRING")
-                        || passingLexTupel.get(8).equals("SCAN_COMMENT")) {
+                    } else if (automaton.getValueMode(passingState) == LexerAutomaton.VALUE_QUOTED) {
                         i = scanCharSeq(pos + 1, '"');
-                        value = doc.getText(pos + 1, i);
+                        value = getText(pos + 1, i);
                         pos = pos + i + 1;
                     }
                 }
 
-                if (token != null) {
-                    if (!token.equals("WHITESPACE")) {
-                        lexerToken = new LexerToken(token, value, startpos, pos);
-
-                        tokens.add(lexerToken);
-                        tokenLookUp.put(new Integer(startpos), lexerToken);
+                if (token != LexerAutomaton.NO_TOKEN) {
+                    if (token != automaton.getWhitespaceToken()) {
+                        out.add(token, startpos, pos, value, nodeRow);
 
                         // Add start position for astNodes
                         for (int x = 0; x < nodesForNextLexerToken.size(); x++) {
                             nodesForNextLexerToken.get(x).addLexerToken(
-                                tokens.size() - 1);
+                                base + out.size() - 1);
                         }
                         nodesForNextLexerToken.removeAllElements();
 
                         // Add end position for astNodes
                         for (int x = 0; x < nodesEndForNextLexerToken.size(); x++) {
                             nodesEndForNextLexerToken.get(x).addLexerToken(
-                                tokens.size() - 2);
+                                base + out.size() - 2);
                         }
                         nodesEndForNextLexerToken.removeAllElements();
-
-                        lexerToken.setASTNode(AST.getNodeFromRow(nodeRow));
                     }
-                } else {
+                } else if (chunk == null) {
                     Logger.getLogger(this.getClass().getCanonicalName()).log(
                         Level.INFO,
                         "Token on pos:" + pos + " could not be identified!");
@@ -201,103 +560,87 @@ public class WSLLexer {
             // Add end position for last astNodes
             for (int x = 0; x < nodesEndForNextLexerToken.size(); x++) {
                 nodesEndForNextLexerToken.get(x).addLexerToken(
-                    tokens.size() - 1);
-
-//System.out.println("End:" + nodesEndForNextLexerToken.get(x) + " token:" + tokens.get(tokens.size() - 1));
-
+                    base + out.size() - 1);
             }
             nodesEndForNextLexerToken.removeAllElements();
 
+            if (chunk != null)
+                chunk.finished = true;
+
         } catch (BadLocationException e) {
-            Logger.getLogger(this.getClass().getCanonicalName()).log(
-                Level.SEVERE,
-                "Got to an undefined location in the current document");
+            if (chunk != null)
+                chunk.aborted = true;
+            else
+                Logger.getLogger(this.getClass().getCanonicalName()).log(
+                    Level.SEVERE,
+                    "Got to an undefined location in the current document");
         }
+        return -1;
     }
 
     /**
-     * This function tries to identify a parsed char according to a given lexer
-     * table tuple
+     * This function tries to identify a parsed char according to a state of
+     * the compiled lexer table
      * 
-     * @param checkNr
-     *            The check number of the lexer table tuple
-     * @param checkLevel
-     *            The check level of the lexer table tuple
+     * @param state
+     *            The state of the lexer automaton
      * @param charPos
      *            The character position in the document
-     * @return The identified token
+     * @return The identified token or LexerAutomaton.NO_TOKEN
      * @throws BadLocationException
      *             If the document ends unexpected
      */
-    private String checkChar(int checkNr, String checkLevel, int charPos)
-        throws BadLocationException {
-
-        int i;
-        char c, pc;
-        String ret = null, tok;
-        Vector<String> nextTupel, lexTTTupel;
+    private int checkChar(int state, int charPos) throws BadLocationException {
 
-        c = doc.getText(charPos, 1).charAt(0);
+        int i, child, tok, ret = LexerAutomaton.NO_TOKEN;
+        char c;
 
-        if (checkLevel.equals("0"))
-            passingLexTupel = LexerRuleTable.getLexerFirstCheck(checkNr);
-        else
-            passingLexTupel = LexerRuleTable.getLexerCheck(checkNr + "."
-                + checkLevel);
+        c = charAt(charPos);
 
-        // Fill PassingCharacter (PC)
-        pc = 0;
-        if (passingLexTupel.get(3).length() == 1)
-            pc = passingLexTupel.get(3).charAt(0);
-        else if (passingLexTupel.get(4).length() > 0)
-            pc = (char) Integer.parseInt(passingLexTupel.get(4));
+        passingState = state;
 
         // If the condition modifier is true then the item is identified
-        if (passingLexTupel.get(2).equals("TRUE")) {
-            ret = passingLexTupel.get(7);
+        if (automaton.isTrue(state)) {
+            ret = automaton.getIdentified(state);
         }
 
-        // Check the PC (PassingCharacter) of the Lexer Table Tuple is found on
-        // the current position
-        else if (c == pc) {
+        // Check the PC (PassingCharacter) of the state is found on the
+        // current position
+        else if (c == automaton.getPassChar(state)) {
             // Check if it is identified
-            if (passingLexTupel.get(7).length() > 0)
-                ret = passingLexTupel.get(7);
+            if (automaton.getIdentified(state) != LexerAutomaton.NO_TOKEN)
+                ret = automaton.getIdentified(state);
             // If not do further checking
             else {
-                i = 1;
-                while (ret == null
-                    && (nextTupel = LexerRuleTable.getLexerCheck(checkNr + "."
-                        + checkLevel + "." + i)) != null) {
-                    ret = checkChar(checkNr, checkLevel + "." + i, charPos + 1);
-                    i++;
+                child = automaton.getFirstChild(state);
+                while (ret == LexerAutomaton.NO_TOKEN && child != -1) {
+                    ret = checkChar(child, charPos + 1);
 
                     // Set the pos + 1 for every level of the recursion
-                    if (ret != null && !nextTupel.get(2).equals("TRUE"))
+                    if (ret != LexerAutomaton.NO_TOKEN
+                        && !automaton.isTrue(child))
                         pos++;
+
+                    child = automaton.getNextSibling(child);
                 }
             }
         }
 
-        // Check if the Regular Expression of the Lexer Table Tuple matches on
-        // the current position
-        else if (passingLexTupel.get(5).length() > 0) {
-            tok = Character.toString(c);
-
-            if (tok.matches(passingLexTupel.get(5))) {
-                ret = passingLexTupel.get(7);
+        // Check if the Regular Expression of the state matches on the
+        // current position
+        else if (automaton.hasRegex(state)) {
+            if (automaton.matchesRegex(state, c)) {
+                ret = automaton.getIdentified(state);
             }
         }
 
         // Otherwise identify the token and try to find it in the passing group
-        else if (passingLexTupel.get(6).length() > 0) {
+        else if (automaton.hasGroup(state)) {
             i = pos;
-            if ((lexTTTupel = identToken()) != null) {
-                tok = lexTTTupel.get(0);
-                if (LexerTokenTable.getLexerTokenGroup(passingLexTupel.get(6))
-                    .contains(tok)) {
-                    if (passingLexTupel.get(7).length() > 0)
-                        ret = passingLexTupel.get(7);
+            if ((tok = identToken()) != LexerAutomaton.NO_TOKEN) {
+                if (automaton.isGroupMember(state, tok)) {
+                    if (automaton.getIdentified(state) != LexerAutomaton.NO_TOKEN)
+                        ret = automaton.getIdentified(state);
                     else
                         ret = tok;
                 } else
@@ -312,34 +655,27 @@ public class WSLLexer {
      * Identifies a token using the Lexer token table (WHITESPACE or RESERVED
      * WORD)
      * 
-     * @return The token name or null
+     * @return The token or LexerAutomaton.NO_TOKEN
      * @throws BadLocationException
      *             If the end of the document is reached without finding a
      *             terminating whitespace
      */
-    private Vector<String> identToken() throws BadLocationException {
-        int spos;
-        Vector<String> ttTupel, ret = null;
+    private int identToken() throws BadLocationException {
+        int spos, ret;
 
         // First try to lookup a single char
-        if ((ttTupel = LexerTokenTable.getLexerTokenSingleChar(doc.getText(pos,
-            1).charAt(0))) != null) {
-            ret = ttTupel;
-        }
+        ret = automaton.getSingleCharToken(charAt(pos));
 
         // Now try to read a reserved word
-        if (ret == null) {
+        if (ret == LexerAutomaton.NO_TOKEN) {
 
             // Search for the next whitespace
             spos = scanCharSeq(pos);
 
             // Test if it's a reserved word
-            if (LexerTokenTable.getLexerTokenCharSequence(doc
-                .getText(pos, spos)) != null) {
-                ret = LexerTokenTable.getLexerTokenCharSequence(doc.getText(
-                    pos, spos));
+            ret = automaton.getSequenceToken(text, pos, spos);
+            if (ret != LexerAutomaton.NO_TOKEN)
                 pos = pos + spos - 1;
-            }
         }
 
         return ret;
@@ -356,15 +692,9 @@ public class WSLLexer {
      *             terminating whitespace
      */
     private int scanCharSeq(int pos) throws BadLocationException {
-        char c;
         int spos = 0;
-        c = doc.getText(pos + spos, 1).charAt(0);
-        while (LexerTokenTable.getLexerTokenSingleChar(c) == null
-            || (!LexerTokenTable.getLexerTokenSingleChar(c).get(0).equals(
-                "WHITESPACE") && !LexerTokenTable.getLexerTokenSingleChar(c)
-                .get(0).equals("SPECIALCHAR"))) {
+        while (!automaton.isTerminator(charAt(pos + spos))) {
             spos++;
-            c = doc.getText(pos + spos, 1).charAt(0);
         }
         return spos;
     }
@@ -384,11 +714,286 @@ public class WSLLexer {
     private int scanCharSeq(int pos, char sc) throws BadLocationException {
         char c;
         int spos = 0;
-        c = doc.getText(pos + spos, 1).charAt(0);
-        while (LexerTokenTable.getLexerTokenSingleChar(c) == null || c != sc) {
+        c = charAt(pos + spos);
+        while (automaton.getSingleCharToken(c) == LexerAutomaton.NO_TOKEN
+            || c != sc) {
             spos++;
-            c = doc.getText(pos + spos, 1).charAt(0);
+            c = charAt(pos + spos);
         }
         return spos;
     }
+
+    /**
+     * Get a character of the text (the text ends with an implicit newline
+     * like a document)
+     * 
+     * @param pos
+     *            The position of the character
+     * @return The character
+     * @throws BadLocationException
+     *             If the position is not within the text
+     */
+    private char charAt(int pos) throws BadLocationException {
+        if (pos < length)
+            return text.charAt(pos);
+        else if (pos == length)
+            return '\n';
+        throw new BadLocationException("Invalid location", pos);
+    }
+
+    /**
+     * Get a part of the text
+     * 
+     * @param pos
+     *            The start position
+     * @param len
+     *            The length
+     * @return The requested part of the text
+     * @throws BadLocationException
+     *             If the part is not within the text
+     */
+    private String getText(int pos, int len) throws BadLocationException {
+        if (pos + len <= length)
+            return text.subSequence(pos, pos + len).toString();
+        else if (pos + len == length + 1)
+            return text.subSequence(pos, length).toString() + "\n";
+        throw new BadLocationException("Invalid location", pos + len);
+    }
+
+    // Internal Classes
+    // ================
+
+    /**
+     * A part of a text which is lexed on its own. The pretty print marks are
+     * recorded and handled when the chunks are stitched together.
+     */
+    private static class Chunk implements Callable<Chunk> {
+
+        private CharSequence text;
+
+        private int length;
+
+        private LexerAutomaton automaton;
+
+        private int start;
+
+        private int limit;
+
+        private int end;
+
+        private boolean finished;
+
+        private boolean aborted;
+
+        private TokenStream tokens;
+
+        // Marks as (token count, position, begin, row)
+        private int[] marks;
+
+        private int markCount;
+
+        public Chunk(CharSequence text, int length, LexerAutomaton automaton,
+            int start, int limit) {
+            this.text = text;
+            this.length = length;
+            this.automaton = automaton;
+            this.start = start;
+            this.limit = limit;
+            tokens = new TokenStream(automaton, Math.min(limit, length)
+                / 4 - start / 4);
+            marks = new int[16];
+        }
+
+        public Chunk call() {
+            WSLLexer lexer = createLexer();
+            lexer.scan(tokens, start, 0);
+            end = lexer.pos;
+            return this;
+        }
+
+        public WSLLexer createLexer() {
+            WSLLexer lexer = new WSLLexer();
+            lexer.text = text;
+            lexer.length = length;
+            lexer.automaton = automaton;
+            lexer.limit = limit;
+            lexer.chunk = this;
+            return lexer;
+        }
+
+        public boolean isComplete() {
+            return finished || aborted;
+        }
+
+        public void addMark(int token, int position, boolean begin, int row) {
+            if (markCount + 4 > marks.length) {
+                int[] m = new int[marks.length * 2];
+                System.arraycopy(marks, 0, m, 0, markCount);
+                marks = m;
+            }
+            marks[markCount++] = token;
+            marks[markCount++] = position;
+            marks[markCount++] = begin ? 1 : 0;
+            marks[markCount++] = row;
+        }
+    }
+
+    /**
+     * Joins the tokens of chunks and handles their pretty print marks like
+     * the sequential lexer does
+     */
+    private static class Stitcher {
+
+        private TokenStream out;
+
+        private int nodeRow;
+
+        private Vector<Integer> nodeRowStack = new Vector<Integer>();
+
+        private Vector<ASTNode> nodesForNextLexerToken = new Vector<ASTNode>();
+
+        private Vector<ASTNode> nodesEndForNextLexerToken = new Vector<ASTNode>();
+
+        public Stitcher(TokenStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Appends the tokens of a chunk
+         * 
+         * @param chunk
+         *            The chunk
+         * @param first
+         *            The index of the first token to append
+         * @param from
+         *            The position from which on the marks of the chunk are
+         *            handled
+         */
+        public void append(Chunk chunk, int first, int from) {
+            int i, m = 0;
+
+            while (m < chunk.markCount && chunk.marks[m + 1] < from)
+                m += 4;
+
+            for (i = first; i <= chunk.tokens.size(); i++) {
+                while (m < chunk.markCount && chunk.marks[m] == i) {
+                    mark(chunk.marks[m + 2] == 1, chunk.marks[m + 3]);
+                    m += 4;
+                }
+                if (i == chunk.tokens.size())
+                    break;
+
+                out.add(chunk.tokens, i, nodeRow);
+
+                // Add start position for astNodes
+                for (int x = 0; x < nodesForNextLexerToken.size(); x++) {
+                    nodesForNextLexerToken.get(x).addLexerToken(
+                        out.size() - 1);
+                }
+                nodesForNextLexerToken.removeAllElements();
+
+                // Add end position for astNodes
+                for (int x = 0; x < nodesEndForNextLexerToken.size(); x++) {
+                    nodesEndForNextLexerToken.get(x).addLexerToken(
+                        out.size() - 2);
+                }
+                nodesEndForNextLexerToken.removeAllElements();
+            }
+        }
+
+        /**
+         * Handles the end of the text
+         * 
+         * @param chunk
+         *            The last chunk
+         */
+        public void finish(Chunk chunk) {
+            if (chunk.aborted) {
+                Logger.getLogger(WSLLexer.class.getCanonicalName()).log(
+                    Level.SEVERE,
+                    "Got to an undefined location in the current document");
+                return;
+            }
+
+            // Add end position for last astNodes
+            for (int x = 0; x < nodesEndForNextLexerToken.size(); x++) {
+                nodesEndForNextLexerToken.get(x).addLexerToken(
+                    out.size() - 1);
+            }
+            nodesEndForNextLexerToken.removeAllElements();
+        }
+
+        private void mark(boolean begin, int row) {
+            nodeRow = row;
+
+            // Begin Mark
+            if (begin) {
+                nodeRowStack.add(new Integer(nodeRow));
+                nodesForNextLexerToken.add(AST.getNodeFromRow(nodeRow));
+            }
+            // End Mark
+            else {
+                nodeRow = nodeRowStack.get(nodeRowStack.size() - 1)
+                    .intValue();
+                nodeRowStack.removeElementAt(nodeRowStack.size() - 1);
+                nodesEndForNextLexerToken.add(AST.getNodeFromRow(nodeRow));
+                if (nodeRowStack.size() > 0)
+                    nodeRow = nodeRowStack.get(nodeRowStack.size() - 1)
+                        .intValue();
+            }
+        }
+    }
+
+    /**
+     * A character sequence on a document which fetches the text in chunks so
+     * that only the lexed parts of the document are copied
+     */
+    private static class DocumentText implements CharSequence {
+
+        private Document document;
+
+        private Segment segment;
+
+        private int segmentStart;
+
+        private int segmentEnd;
+
+        public DocumentText(Document document) {
+            this.document = document;
+            segment = new Segment();
+            segment.setPartialReturn(true);
+        }
+
+        public int length() {
+            return document.getLength();
+        }
+
+        public char charAt(int index) {
+            if (index < segmentStart || index >= segmentEnd) {
+                try {
+                    document.getText(index, document.getLength() - index,
+                        segment);
+                } catch (BadLocationException e) {
+                    throw new IndexOutOfBoundsException("Invalid location "
+                        + index);
+                }
+                segmentStart = index;
+                segmentEnd = index + segment.count;
+            }
+            return segment.array[segment.offset + index - segmentStart];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            try {
+                return document.getText(start, end - start);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException("Invalid location "
+                    + start);
+            }
+        }
+
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
 }
@@ -0,0 +1,264 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.tables;
+
+/**
+ * This class holds the definition of one node type of the WSL tree grammar
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public final class GrammarEntry {
+
+    /**
+     * The dense index of the entry (order in the grammar file)
+     */
+    private final int index;
+
+    /**
+     * The id of the node type
+     */
+    private final int id;
+
+    /**
+     * The name of the node type (e.g. T_Assignment)
+     */
+    private final String name;
+
+    /**
+     * The syntax name of the node type (e.g. Assignment)
+     */
+    private final String syntaxName;
+
+    /**
+     * The general type of the node type
+     */
+    private final int generalType;
+
+    /**
+     * The ids of the allowed children
+     */
+    private final int[] allowedChildren;
+
+    /**
+     * The allowed children per position as written in the grammar
+     */
+    private final String[] childSlots;
+
+    /**
+     * The general types (0-63) accepted on each position
+     */
+    private final long[] childMasks;
+
+    /**
+     * True if a node of this type has a value
+     */
+    private final boolean hasValue;
+
+    /**
+     * The template for PrettyPrint
+     */
+    private final String template;
+
+    /**
+     * The template for PrettyPrint split into its items
+     */
+    private final String[] templateItems;
+
+    /**
+     * The compiled template for PrettyPrint (created on first use)
+     */
+    private PrettyPrintTemplate compiledTemplate;
+
+    /**
+     * The Constructor
+     *
+     * @param index
+     *            The dense index of the entry
+     * @param id
+     *            The id of the node type
+     * @param name
+     *            The name of the node type
+     * @param syntaxName
+     *            The syntax name of the node type
+     * @param generalType
+     *            The general type as written in the grammar
+     * @param allowedChildren
+     *            The allowed children as written in the grammar
+     * @param hasValue
+     *            The value flag as written in the grammar
+     * @param template
+     *            The template for PrettyPrint
+     */
+    public GrammarEntry(int index, int id, String name, String syntaxName,
+        String generalType, String allowedChildren, String hasValue,
+        String template) {
+
+        int i, g;
+
+        this.index = index;
+        this.id = id;
+        this.name = name;
+        this.syntaxName = syntaxName.intern();
+        if (isGeneral() || isGroup())
+            this.generalType = id;
+        else
+            this.generalType = Integer.parseInt(generalType);
+
+        childSlots = allowedChildren.split(";");
+        childMasks = new long[childSlots.length];
+        for (i = 0; i < childSlots.length; i++) {
+            // A position accepts every general type which is contained in
+            // its text (so "17" accepts 1, 7 and 17)
+            for (g = 0; g < 64; g++) {
+                if (!childSlots[i].equals("")
+                    && childSlots[i].contains("" + g))
+                    childMasks[i] |= 1L << g;
+            }
+        }
+        if (allowedChildren.equals("")) {
+            this.allowedChildren = new int[0];
+        } else {
+            this.allowedChildren = new int[childSlots.length];
+            for (i = 0; i < childSlots.length; i++)
+                this.allowedChildren[i] = Integer.parseInt(childSlots[i]);
+        }
+
+        this.hasValue = !hasValue.equals("0");
+        this.template = template;
+        this.templateItems = template == null ? new String[0] : template
+            .split(";");
+    }
+
+    /**
+     * Get the dense index of the entry
+     *
+     * @return The index (0 to number of entries - 1)
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSyntaxName() {
+        return syntaxName;
+    }
+
+    /**
+     * Get the general type (the id itself for general and group nodes)
+     *
+     * @return The general type
+     */
+    public int getGeneralType() {
+        return generalType;
+    }
+
+    /**
+     * True if this is a general node type (id 0-9)
+     */
+    public boolean isGeneral() {
+        return id < 10;
+    }
+
+    /**
+     * True if this is a group node type (id 10-99)
+     */
+    public boolean isGroup() {
+        return id < 100 && id > 9;
+    }
+
+    /**
+     * True if nodes of this type can't have children
+     */
+    public boolean isLeaf() {
+        return allowedChildren.length == 0;
+    }
+
+    public boolean hasValue() {
+        return hasValue;
+    }
+
+    /**
+     * Get the ids of the allowed children
+     *
+     * @return The ids (a copy)
+     */
+    public int[] getAllowedChildren() {
+        return allowedChildren.clone();
+    }
+
+    /**
+     * Get the number of allowed children
+     *
+     * @return The number of allowed children
+     */
+    public int getAllowedChildrenCount() {
+        return allowedChildren.length;
+    }
+
+    /**
+     * Get the id of an allowed child
+     *
+     * @param i
+     *            The position in the list of allowed children
+     * @return The id
+     */
+    public int getAllowedChild(int i) {
+        return allowedChildren[i];
+    }
+
+    /**
+     * Get the number of child positions of the grammar (1 if every child
+     * has the same type)
+     *
+     * @return The number of positions
+     */
+    public int getChildSlotCount() {
+        return childSlots.length;
+    }
+
+    /**
+     * Test if a child of a general type is accepted on a position
+     *
+     * @param slot
+     *            The position
+     * @param generalType
+     *            The general type of the child
+     * @return True if the child is accepted
+     */
+    public boolean acceptsChild(int slot, int generalType) {
+        if (generalType >= 0 && generalType < 64)
+            return (childMasks[slot] & (1L << generalType)) != 0;
+        return !childSlots[slot].equals("")
+            && childSlots[slot].contains("" + generalType);
+    }
+
+    /**
+     * Get the template for PrettyPrint
+     *
+     * @return The template
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Get the compiled template for PrettyPrint. The template is compiled on
+     * first use because it needs the lexer token table.
+     *
+     * @return The compiled template
+     */
+    public PrettyPrintTemplate getPrettyPrintTemplate() {
+        if (compiledTemplate == null)
+            compiledTemplate = new PrettyPrintTemplate(templateItems);
+        return compiledTemplate;
+    }
+}
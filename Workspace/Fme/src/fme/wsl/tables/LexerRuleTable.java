@@ -4,7 +4,6 @@
 
 package fme.wsl.tables;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
@@ -13,9 +12,7 @@ import java.util.logging.Logger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * This class holds the WSL grammar
@@ -68,15 +65,10 @@ public class LexerRuleTable {
 		lexerCheckNumberLevelLookup = new HashMap<String, Vector<String>>();
 		lexerCheckNumberLookup = new HashMap<Integer, Vector<String>>();
 
-		System.setProperty("org.xml.sax.driver",
-				"org.apache.xerces.parsers.SAXParser");
-
 		try {
-			XMLReader xmlReader = XMLReaderFactory.createXMLReader();
 			DefaultHandler handler = new LexerTableParser(lexerTable,
 					lexerCheckNumberLookup, lexerCheckNumberLevelLookup);
-			xmlReader.setContentHandler(handler);
-			xmlReader.parse(new File(filename).toURI().toURL().toString());
+			TableCache.parse(filename, handler);
 		} catch (SAXException e) {
 			Logger.getLogger(LexerRuleTable.class.getCanonicalName()).log(Level.SEVERE,
 					"SAX: XML Parser Error");
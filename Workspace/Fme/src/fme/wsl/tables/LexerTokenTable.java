@@ -4,18 +4,16 @@
 
 package fme.wsl.tables;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * This class holds the WSL grammar
@@ -59,6 +57,12 @@ public class LexerTokenTable {
      */
     private static HashMap<Integer, Vector<String>> idLookup;
 
+    /**
+     * The string representations of tokens which were already requested (via
+     * token names)
+     */
+    private static HashMap<String, String> representationLookup;
+
     /**
      * Parse the WSL grammer from the default file
      */
@@ -79,15 +83,11 @@ public class LexerTokenTable {
         singleCharLookup = new HashMap<Character, Vector<String>>();
         sequenceCharLookup = new HashMap<String, Vector<String>>();
         idLookup = new HashMap<Integer, Vector<String>>();
-
-        System.setProperty("org.xml.sax.driver",
-            "org.apache.xerces.parsers.SAXParser");
+        representationLookup = new HashMap<String, String>();
 
         try {
-            XMLReader xmlReader = XMLReaderFactory.createXMLReader();
             DefaultHandler handler = new LexerTokenTableParser();
-            xmlReader.setContentHandler(handler);
-            xmlReader.parse(new File(filename).toURI().toURL().toString());
+            TableCache.parse(filename, handler);
         } catch (SAXException e) {
             Logger.getLogger(LexerTokenTable.class.getCanonicalName()).log(
                 Level.SEVERE, "SAX: XML Parser Error");
@@ -172,6 +172,15 @@ public class LexerTokenTable {
         return sequenceCharLookup.get(c);
     }
 
+    /**
+     * Get all character sequences which identify a token
+     * 
+     * @return The character sequences (reserved words and composite tokens)
+     */
+    public static Set<String> getLexerTokenCharSequences() {
+        return sequenceCharLookup.keySet();
+    }
+
     /**
      * Return a tokens string representation
      * 
@@ -181,7 +190,10 @@ public class LexerTokenTable {
      */
     public static String getLexerTokenRepresentation(String token) {
         String t[], ret;
-        Vector<String> tt = getLexerToken(token);
+        Vector<String> tt;
+        if ((ret = representationLookup.get(token)) != null)
+            return ret;
+        tt = getLexerToken(token);
         if (tt == null) {
             Logger.getLogger(LexerTokenTable.class.getCanonicalName()).log(
                 Level.WARNING, "Can't find representation for token " + token);
@@ -196,6 +208,7 @@ public class LexerTokenTable {
                 ret += (char) Integer.parseInt(t[i]);
             }
         }
+        representationLookup.put(token, ret);
         return ret;
     }
 
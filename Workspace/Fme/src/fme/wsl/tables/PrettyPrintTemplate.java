@@ -0,0 +1,219 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.tables;
+
+/**
+ * This class holds a compiled PrettyPrint template of the WSL tree grammar.
+ * The items of the template are parsed once into an array of operations so
+ * that the pretty printer doesn't need to split and parse the template for
+ * every node.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public final class PrettyPrintTemplate {
+
+    /**
+     * Operation which does nothing (unknown template item)
+     */
+    public static final int NOP = 0;
+
+    /**
+     * Operation which indents the node (I)
+     */
+    public static final int INDENT = 1;
+
+    /**
+     * Operation which prints all children starting with the child given by
+     * the argument and separated by the text ((A[skip],separator))
+     */
+    public static final int CHILDREN = 2;
+
+    /**
+     * Operation which prints the representation of a token (S_...)
+     */
+    public static final int TOKEN = 3;
+
+    /**
+     * Operation which prints the child given by the argument ((Cn))
+     */
+    public static final int CHILD = 4;
+
+    /**
+     * Operation which prints the value of the node ((V))
+     */
+    public static final int VALUE = 5;
+
+    /**
+     * Operation which prints a fixed text (space, new line or C:n)
+     */
+    public static final int TEXT = 6;
+
+    /**
+     * Operation which prints the text if the node has more than one child
+     * (CS:token)
+     */
+    public static final int CHILD_SEQUENCE = 7;
+
+    /**
+     * Operation which prints the text if the node has more than one child and
+     * the parent is of the given type (PARENT(type:tokens))
+     */
+    public static final int PARENT = 8;
+
+    private final int[] ops;
+
+    private final int[] args;
+
+    private final String[] texts;
+
+    private final String[] types;
+
+    private final int indentCount;
+
+    /**
+     * The Constructor
+     *
+     * @param items
+     *            The items of the template (the template split at ';')
+     */
+    public PrettyPrintTemplate(String[] items) {
+
+        String c, t[];
+        int indents = 0;
+
+        ops = new int[items.length];
+        args = new int[items.length];
+        texts = new String[items.length];
+        types = new String[items.length];
+
+        for (int i = 0; i < items.length; i++) {
+            c = items[i];
+
+            if (c.equals("I")) {
+                ops[i] = INDENT;
+                indents++;
+            } else if (c.startsWith("(A")) {
+                ops[i] = CHILDREN;
+                if (c.startsWith("(A[")) {
+                    args[i] = Integer.parseInt(c.substring(3, c.indexOf("]")));
+                    c = c.substring(0, 2) + c.substring(c.indexOf("]") + 1);
+                }
+                t = c.substring(3, c.length() - 1).split("#");
+                texts[i] = "";
+                for (int j = 0; j < t.length; j++) {
+                    if (t[j].equals("\\n"))
+                        texts[i] += "\n";
+                    else if (!t[j].equals("") && !t[j].equals(" "))
+                        texts[i] += LexerTokenTable
+                            .getLexerTokenRepresentation(t[j]);
+                    else
+                        texts[i] += t[j];
+                }
+            } else if (c.startsWith("S_")) {
+                ops[i] = TOKEN;
+                texts[i] = LexerTokenTable.getLexerTokenRepresentation(c);
+            } else if (c.startsWith(" ")) {
+                ops[i] = TEXT;
+                texts[i] = " ";
+            } else if (c.startsWith("(C")) {
+                ops[i] = CHILD;
+                args[i] = Integer.parseInt(c.substring(2, c.length() - 1));
+            } else if (c.equals("(V)")) {
+                ops[i] = VALUE;
+            } else if (c.equals("\\n")) {
+                ops[i] = TEXT;
+                texts[i] = "\n";
+            } else if (c.startsWith("C:")) {
+                ops[i] = TEXT;
+                texts[i] = (char) Integer.parseInt(c.substring(2)) + "";
+            } else if (c.startsWith("CS:")) {
+                ops[i] = CHILD_SEQUENCE;
+                texts[i] = LexerTokenTable.getLexerTokenRepresentation(c
+                    .substring(3));
+            } else if (c.startsWith("PARENT(")) {
+                ops[i] = PARENT;
+                t = c.substring(7, c.length() - 1).split(":");
+                types[i] = t[0];
+                t = t[1].split("#");
+                texts[i] = "";
+                for (int j = 0; j < t.length; j++) {
+                    if (t[j].equals("\\n"))
+                        texts[i] += "\n";
+                    else if (t[j].equals(" "))
+                        texts[i] += " ";
+                    else
+                        texts[i] += LexerTokenTable
+                            .getLexerTokenRepresentation(t[j]);
+                }
+            } else {
+                ops[i] = NOP;
+            }
+        }
+        indentCount = indents;
+    }
+
+    /**
+     * Get the number of operations
+     *
+     * @return The number of operations
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * Get the number of INDENT operations (the amount by which the node is
+     * indented)
+     *
+     * @return The number of INDENT operations
+     */
+    public int getIndentCount() {
+        return indentCount;
+    }
+
+    /**
+     * Get an operation
+     *
+     * @param i
+     *            The number of the operation
+     * @return The operation (e.g. TOKEN)
+     */
+    public int getOp(int i) {
+        return ops[i];
+    }
+
+    /**
+     * Get the child number of an operation (CHILD and CHILDREN)
+     *
+     * @param i
+     *            The number of the operation
+     * @return The child number
+     */
+    public int getArg(int i) {
+        return args[i];
+    }
+
+    /**
+     * Get the text of an operation
+     *
+     * @param i
+     *            The number of the operation
+     * @return The text or null
+     */
+    public String getText(int i) {
+        return texts[i];
+    }
+
+    /**
+     * Get the parent type of an operation (PARENT)
+     *
+     * @param i
+     *            The number of the operation
+     * @return The parent type or null
+     */
+    public String getType(int i) {
+        return types[i];
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Project: fme
+ */
+
+package fme.wsl.tables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * This class holds a binary snapshot of the parsed XML tables. The start
+ * elements of every table are stored together with a hash of the XML file.
+ * If the hash of a table still matches, the stored elements are passed to
+ * the table parser instead of parsing the XML file again.
+ *
+ * @author <A href="http://www.ladkau.de" target=newframe>M. Ladkau</A>
+ */
+public class TableCache {
+
+    /**
+     * The default cache file
+     */
+    private static String defaultCacheFile = "engine/.cache/tables.bin";
+
+    /**
+     * Magic number of a cache file ("FMET")
+     */
+    private static final int MAGIC = 0x464D4554;
+
+    /**
+     * Version of the cache file format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The cache file
+     */
+    private static File cacheFile = new File(defaultCacheFile);
+
+    /**
+     * The tables of the cache file (via file names)
+     */
+    private static Map<String, Table> tables;
+
+    /**
+     * Set the cache file
+     *
+     * @param filename
+     *            The cache file or null to disable the cache
+     */
+    public static synchronized void setCacheFile(String filename) {
+        cacheFile = filename == null ? null : new File(filename);
+        tables = null;
+    }
+
+    /**
+     * Parse an XML table. The start elements of the table are taken from the
+     * cache if the XML file didn't change, otherwise the XML file is parsed
+     * and the cache is updated.
+     *
+     * @param filename
+     *            The XML file
+     * @param handler
+     *            The table parser which receives the start elements
+     * @throws SAXException
+     *             If the XML file can't be parsed
+     * @throws IOException
+     *             If the XML file can't be read
+     */
+    public static synchronized void parse(String filename,
+        DefaultHandler handler) throws SAXException, IOException {
+
+        Table table;
+        byte[] hash;
+
+        if (cacheFile == null) {
+            parseXML(filename, handler);
+            return;
+        }
+
+        hash = hash(new File(filename));
+
+        if (tables == null)
+            tables = load();
+
+        table = tables.get(filename);
+        if (table != null && Arrays.equals(table.hash, hash)) {
+            table.replay(handler);
+            return;
+        }
+
+        table = new Table(hash);
+        parseXML(filename, new Recorder(table, handler));
+        tables.put(filename, table);
+        store();
+    }
+
+    // Internal Methods
+    // ================
+
+    private static void parseXML(String filename, DefaultHandler handler)
+        throws SAXException, IOException {
+
+        System.setProperty("org.xml.sax.driver",
+            "org.apache.xerces.parsers.SAXParser");
+
+        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(new File(filename).toURI().toURL().toString());
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(
+                Files.readAllBytes(file.toPath()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("No SHA-1 available");
+        }
+    }
+
+    /**
+     * Read all tables of the cache file
+     */
+    private static Map<String, Table> load() {
+
+        int i, count;
+        String name;
+        Table table;
+        ByteBuffer buffer;
+        Map<String, Table> ret = new LinkedHashMap<String, Table>();
+
+        if (!cacheFile.exists())
+            return ret;
+
+        try {
+            // The file is read into the heap; a mapped file can't be replaced
+            // on Windows until the mapping is garbage collected
+            buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Logger.getLogger(TableCache.class.getCanonicalName()).log(
+                    Level.INFO, "Ignoring outdated table cache " + cacheFile);
+                return ret;
+            }
+
+            count = buffer.getInt();
+            for (i = 0; i < count; i++) {
+                name = readString(buffer);
+                table = Table.read(buffer);
+                ret.put(name, table);
+            }
+        } catch (Exception e) {
+            Logger.getLogger(TableCache.class.getCanonicalName()).log(
+                Level.WARNING, "Can't read table cache " + cacheFile + ": " + e);
+            ret.clear();
+        }
+        return ret;
+    }
+
+    /**
+     * Write all tables to the cache file
+     */
+    private static void store() {
+
+        File tmp = null;
+        FileOutputStream out = null;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(tables.size());
+            for (Map.Entry<String, Table> e : tables.entrySet()) {
+                writeString(data, e.getKey());
+                e.getValue().write(data);
+            }
+            data.flush();
+
+            // Write a temporary file first so that concurrent starts never
+            // see a half written cache
+            cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+            tmp = File.createTempFile("tables", ".tmp", cacheFile
+                .getAbsoluteFile().getParentFile());
+            out = new FileOutputStream(tmp);
+            bytes.writeTo(out);
+            out.close();
+            out = null;
+            Files.move(tmp.toPath(), cacheFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException e) {
+            Logger.getLogger(TableCache.class.getCanonicalName()).log(
+                Level.WARNING, "Can't write table cache " + cacheFile + ": "
+                    + e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int len = buffer.getInt();
+        if (len < 0)
+            return null;
+        byte[] b = new byte[len];
+        buffer.get(b);
+        return new String(b, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream data, String s)
+        throws IOException {
+        if (s == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes("UTF-8");
+        data.writeInt(b.length);
+        data.write(b);
+    }
+
+    // Internal Classes
+    // ================
+
+    /**
+     * The start elements of an XML table
+     */
+    private static class Table {
+
+        private byte[] hash;
+
+        private Vector<String> names = new Vector<String>();
+
+        private Vector<String[]> attributes = new Vector<String[]>();
+
+        public Table(byte[] hash) {
+            this.hash = hash;
+        }
+
+        public void add(String qName, Attributes a) {
+            String[] t = new String[a.getLength() * 2];
+            for (int i = 0; i < a.getLength(); i++) {
+                t[i * 2] = a.getQName(i);
+                t[i * 2 + 1] = a.getValue(i);
+            }
+            names.add(qName);
+            attributes.add(t);
+        }
+
+        public void replay(DefaultHandler handler) throws SAXException {
+            AttributesImpl a = new AttributesImpl();
+            String[] t;
+            for (int i = 0; i < names.size(); i++) {
+                a.clear();
+                t = attributes.get(i);
+                for (int j = 0; j < t.length; j += 2)
+                    a.addAttribute("", t[j], t[j], "CDATA", t[j + 1]);
+                handler.startElement("", names.get(i), names.get(i), a);
+            }
+        }
+
+        public static Table read(ByteBuffer buffer) throws IOException {
+            int i, j, count;
+            String[] t;
+            byte[] hash = new byte[buffer.getInt()];
+            buffer.get(hash);
+            Table table = new Table(hash);
+            count = buffer.getInt();
+            for (i = 0; i < count; i++) {
+                table.names.add(readString(buffer));
+                t = new String[buffer.getInt()];
+                for (j = 0; j < t.length; j++)
+                    t[j] = readString(buffer);
+                table.attributes.add(t);
+            }
+            return table;
+        }
+
+        public void write(DataOutputStream data) throws IOException {
+            String[] t;
+            data.writeInt(hash.length);
+            data.write(hash);
+            data.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                writeString(data, names.get(i));
+                t = attributes.get(i);
+                data.writeInt(t.length);
+                for (int j = 0; j < t.length; j++)
+                    writeString(data, t[j]);
+            }
+        }
+    }
+
+    /**
+     * Records the start elements of an XML table while passing them to the
+     * table parser
+     */
+    private static class Recorder extends DefaultHandler {
+
+        private Table table;
+
+        private DefaultHandler handler;
+
+        public Recorder(Table table, DefaultHandler handler) {
+            this.table = table;
+            this.handler = handler;
+        }
+
+        public void startElement(String uri, String localName, String qName,
+            Attributes attributes) throws SAXException {
+            table.add(qName, attributes);
+            handler.startElement(uri, localName, qName, attributes);
+        }
+    }
+}
@@ -4,7 +4,6 @@
 
 package fme.wsl.tables;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
@@ -13,9 +12,7 @@ import java.util.logging.Logger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * This class holds the WSL grammar
@@ -32,17 +29,17 @@ public class WSLTreeGrammarTable {
     /**
      * The grammar as list
      */
-    private static Vector<Vector<String>> grammar;
+    private static Vector<GrammarEntry> grammar;
 
     /**
      * The grammar as lookup table (via syntax names)
      */
-    private static HashMap<String, Vector<String>> grammarSyntaxNameLookup;
+    private static HashMap<String, GrammarEntry> grammarSyntaxNameLookup;
 
     /**
      * The grammar as lookup table (via id numbers)
      */
-    private static HashMap<Integer, Vector<String>> grammarIDLookup;
+    private static GrammarEntry[] grammarIDLookup;
 
     /**
      * Parse the WSL grammer from the default file
@@ -59,19 +56,14 @@ public class WSLTreeGrammarTable {
      */
     public static void parseWSLGrammer(String filename) {
 
-        grammar = new Vector<Vector<String>>();
-        grammarSyntaxNameLookup = new HashMap<String, Vector<String>>();
-        grammarIDLookup = new HashMap<Integer, Vector<String>>();
-
-        System.setProperty("org.xml.sax.driver",
-            "org.apache.xerces.parsers.SAXParser");
+        grammar = new Vector<GrammarEntry>();
+        grammarSyntaxNameLookup = new HashMap<String, GrammarEntry>();
+        grammarIDLookup = new GrammarEntry[0];
 
         try {
-            XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-            DefaultHandler handler = new WSLGrammarParser(grammar, grammarIDLookup,
+            DefaultHandler handler = new WSLGrammarParser(grammar,
                 grammarSyntaxNameLookup);
-            xmlReader.setContentHandler(handler);
-            xmlReader.parse(new File(filename).toURI().toURL().toString());
+            TableCache.parse(filename, handler);
         } catch (SAXException e) {
             Logger.getLogger(WSLTreeGrammarTable.class.getCanonicalName()).log(Level.SEVERE,
                 "SAX: XML Parser Error");
@@ -81,6 +73,17 @@ public class WSLTreeGrammarTable {
                 "SAX: IO Error");
             e.printStackTrace();
         }
+
+        // Index the grammar via id numbers
+        for (GrammarEntry e : grammar) {
+            if (e.getId() >= grammarIDLookup.length) {
+                GrammarEntry[] t = new GrammarEntry[e.getId() + 1];
+                System.arraycopy(grammarIDLookup, 0, t, 0,
+                    grammarIDLookup.length);
+                grammarIDLookup = t;
+            }
+            grammarIDLookup[e.getId()] = e;
+        }
     }
 
     /**
@@ -88,7 +91,7 @@ public class WSLTreeGrammarTable {
      * 
      * @return The grammar
      */
-    public static Vector<Vector<String>> getGrammar() {
+    public static Vector<GrammarEntry> getGrammar() {
         return grammar;
     }
 
@@ -97,7 +100,7 @@ public class WSLTreeGrammarTable {
      * 
      * @return The grammar
      */
-    public static Vector<String> getGrammarOfNode(String syntaxName) {
+    public static GrammarEntry getGrammarOfNode(String syntaxName) {
         return grammarSyntaxNameLookup.get(syntaxName);
     }
 
@@ -106,8 +109,10 @@ public class WSLTreeGrammarTable {
      * 
      * @return The grammar
      */
-    public static Vector<String> getGrammarOfNode(int id) {
-        return grammarIDLookup.get(new Integer(id));
+    public static GrammarEntry getGrammarOfNode(int id) {
+        if (id < 0 || id >= grammarIDLookup.length)
+            return null;
+        return grammarIDLookup[id];
     }
 
     // Internal Classes
@@ -116,32 +121,28 @@ public class WSLTreeGrammarTable {
     private static class WSLGrammarParser
         extends DefaultHandler {
 
-        private Vector<Vector<String>> grammar;
-
-        private HashMap<String, Vector<String>> grammarSyntaxNameLookup;
+        private Vector<GrammarEntry> grammar;
 
-        private HashMap<Integer, Vector<String>> grammarIDLookup;
+        private HashMap<String, GrammarEntry> grammarSyntaxNameLookup;
 
-        public WSLGrammarParser(Vector<Vector<String>> grammar,
-            HashMap<Integer, Vector<String>> grammarIDLookup,
-            HashMap<String, Vector<String>> grammarSyntaxNameLookup) {
+        public WSLGrammarParser(Vector<GrammarEntry> grammar,
+            HashMap<String, GrammarEntry> grammarSyntaxNameLookup) {
             this.grammar = grammar;
-            this.grammarIDLookup = grammarIDLookup;
             this.grammarSyntaxNameLookup = grammarSyntaxNameLookup;
         }
 
         public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
-            Vector<String> tupel;
+            GrammarEntry entry;
             if (qName.equals("ASTNode")) {
 
-                tupel = new Vector<String>();
-                for (int i = 0; i < 7; i++) {
-                    tupel.add(attributes.getValue(i));
-                }
-                grammar.add(tupel);
-                grammarIDLookup.put(new Integer(attributes.getValue(0)), tupel);
-                grammarSyntaxNameLookup.put(attributes.getValue(2), tupel);
+                entry = new GrammarEntry(grammar.size(), Integer
+                    .parseInt(attributes.getValue(0)), attributes.getValue(1),
+                    attributes.getValue(2), attributes.getValue(3), attributes
+                        .getValue(4), attributes.getValue(5), attributes
+                        .getValue(6));
+                grammar.add(entry);
+                grammarSyntaxNameLookup.put(entry.getSyntaxName(), entry);
             }
         }
     }
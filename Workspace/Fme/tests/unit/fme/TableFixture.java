@@ -0,0 +1,55 @@
+package unit.fme;
+
+import java.util.Vector;
+
+import fme.wsl.ast.AST;
+import fme.wsl.lexer.TokenStream;
+import fme.wsl.tables.LexerRuleTable;
+import fme.wsl.tables.LexerTokenTable;
+import fme.wsl.tables.TableCache;
+import fme.wsl.tables.WSLTreeGrammarTable;
+
+/**
+ * Loads the grammar and lexer tables from the XML files (not from the table
+ * snapshot) for the tests which build or lex trees, and describes lexer
+ * tokens for comparisons.
+ */
+public class TableFixture {
+
+    private static boolean loaded;
+
+    public static synchronized void load() {
+        if (loaded)
+            return;
+        TableCache.setCacheFile(null);
+        WSLTreeGrammarTable.parseWSLGrammer();
+        LexerTokenTable.parseLexerTable();
+        LexerRuleTable.parseLexerTable();
+        loaded = true;
+    }
+
+    /**
+     * Describe the lexer token indices of every node of the current AST
+     */
+    public static Vector<String> nodeTokens() {
+        Vector<String> ret = new Vector<String>();
+        for (int i = 0; i <= AST.getAST().getAllChildrenCount(); i++)
+            ret.add(AST.getNodeFromRow(i).getLexerTokenCount() + " "
+                + AST.getNodeFromRow(i).getFirstLexerToken() + " "
+                + AST.getNodeFromRow(i).getLastLexerToken());
+        return ret;
+    }
+
+    /**
+     * Describe the tokens of a lexer token stream (with the AST row of every
+     * token if astRows is set)
+     */
+    public static Vector<String> tokens(TokenStream stream, boolean astRows) {
+        Vector<String> ret = new Vector<String>();
+        for (int i = 0; i < stream.size(); i++)
+            ret.add(stream.getName(i) + " " + stream.getStart(i) + " "
+                + stream.getEnd(i) + " " + stream.getValue(i)
+                + (astRows ? " " + stream.getASTRow(i) : ""));
+        return ret;
+    }
+}
@@ -0,0 +1,145 @@
+package unit.fme.components.catalogue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+
+import fme.components.catalogue.ApplicabilityCache;
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTNode;
+
+import unit.fme.TableFixture;
+
+public class ApplicabilityCacheTest {
+
+    private static final String TREE = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Variable y\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Variable y\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable z\n"
+        + "#t\n";
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testKeyedByProgramAndPosition() {
+        ApplicabilityCache cache = new ApplicabilityCache(100);
+        ASTNode root = tree();
+
+        cache.put(root.getChildAt(0), "TR_Delete", "", false, "No");
+
+        // The same position in an equal program has the same result
+        ApplicabilityCache.Entry e = cache.get(tree().getChildAt(0),
+            "TR_Delete", "");
+        assertThat(e.isApplicable(), is(false));
+        assertThat(e.getMessage(), is("No"));
+
+        // An equal subtree at another position has other neighbours
+        assertThat(cache.get(root.getChildAt(1), "TR_Delete", ""),
+            is(nullValue()));
+        assertThat(cache.get(root.getChildAt(2), "TR_Delete", ""),
+            is(nullValue()));
+        assertThat(cache.get(root.getChildAt(0), "TR_Delete", "1"),
+            is(nullValue()));
+        assertThat(cache.get(root.getChildAt(0), "TR_Reverse", ""),
+            is(nullValue()));
+    }
+
+    @org.junit.Test
+    public void testEditElsewhere() {
+        ApplicabilityCache cache = new ApplicabilityCache(100);
+        ASTNode root = tree();
+        ASTNode subtree = root.getChildAt(0);
+
+        cache.put(subtree, "TR_Delete", "", true, null);
+
+        // A change outside of the subtree may change the result
+        root.getChildAt(2).getChildAt(0).getChildAt(0).setValue("w");
+        assertThat(cache.get(subtree, "TR_Delete", ""), is(nullValue()));
+
+        // The result is valid again for the original program
+        root.getChildAt(2).getChildAt(0).getChildAt(0).setValue("z");
+        assertThat(cache.get(subtree, "TR_Delete", "").isApplicable(),
+            is(true));
+
+        // A new neighbour at the same position changes the result as well
+        root.addChild(root.getChildAt(1).clone());
+        assertThat(cache.get(subtree, "TR_Delete", ""), is(nullValue()));
+    }
+
+    @org.junit.Test
+    public void testLeastRecentlyUsedAreDropped() {
+        ApplicabilityCache cache = new ApplicabilityCache(2);
+        ASTNode root = tree();
+
+        cache.put(root, "A", "", true, null);
+        cache.put(root, "B", "", true, null);
+        cache.get(root, "A", "");
+        cache.put(root, "C", "", true, null);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(root, "B", ""), is(nullValue()));
+        assertThat(cache.get(root, "A", "").isApplicable(), is(true));
+        assertThat(cache.get(root, "C", "").isApplicable(), is(true));
+    }
+
+    @org.junit.Test
+    public void testSaveAndLoad() throws Exception {
+        ApplicabilityCache cache = new ApplicabilityCache(100);
+        ASTNode root = tree();
+        File file = File.createTempFile("applicability", "");
+        file.deleteOnExit();
+
+        cache.put(root.getChildAt(2), "TR_Delete", "", false, "No");
+        cache.putApplicable(root.getChildAt(0), new int[] { 3, 1, 4 });
+        cache.save(file);
+
+        cache = new ApplicabilityCache(100);
+        cache.load(file);
+        root = tree();
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(root.getChildAt(2), "TR_Delete", "")
+            .getMessage(), is("No"));
+        assertThat(Arrays.toString(cache.getApplicable(root.getChildAt(0))),
+            is("[3, 1, 4]"));
+        assertThat(cache.getApplicable(root.getChildAt(1)), is(nullValue()));
+        assertThat(cache.getApplicable(root), is(nullValue()));
+    }
+
+    @org.junit.Test
+    public void testOtherTransformationsAreDiscarded() throws Exception {
+        ApplicabilityCache cache = new ApplicabilityCache(100, new byte[] {
+            1, 2 });
+        ASTNode root = tree();
+        File file = File.createTempFile("applicability", "");
+        file.deleteOnExit();
+
+        cache.putApplicable(root, new int[] { 3, 1, 4 });
+        cache.save(file);
+
+        cache = new ApplicabilityCache(100, new byte[] { 1, 3 });
+        cache.load(file);
+        assertThat(cache.size(), is(0));
+        cache = new ApplicabilityCache(100, new byte[] { 1, 2 });
+        cache.load(file);
+        assertThat(cache.size(), is(1));
+    }
+
+    private static ASTNode tree() {
+        assertThat(AST.parseTree(TREE), is(true));
+        return AST.getAST();
+    }
+}
@@ -0,0 +1,177 @@
+package unit.fme.components.console;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fme.components.console.ConsoleObserver;
+
+public class ConsoleObserverTest {
+
+    /**
+     * An observer which is connected with a fake engine
+     */
+    private static class TestObserver extends ConsoleObserver {
+    }
+
+    private TestObserver observer;
+
+    private Thread engine;
+
+    @org.junit.Before
+    public void startEngine() throws Exception {
+        startEngine(false);
+    }
+
+    private void startEngine(boolean merged) throws Exception {
+        final PipedInputStream commands = new PipedInputStream();
+        final PipedOutputStream out = new PipedOutputStream();
+        final PipedOutputStream err = merged ? out : new PipedOutputStream();
+
+        observer = new TestObserver();
+        observer.connect(new PipedInputStream(out),
+            merged ? null : new PipedInputStream(err), new PipedOutputStream(
+                commands));
+
+        // The engine replies to every line and reports commands starting
+        // with "(error" on its error stream (which may be merged into its
+        // output stream). Like the Scheme REPL it prints the value of
+        // (display ...) after the text.
+        engine = new Thread() {
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(commands));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        OutputStream o = line.startsWith("(error") ? err
+                            : out;
+                        if (line.startsWith("(display \""))
+                            o.write((line.substring(10, line.length() - 2)
+                                + "\n#<unspecified>\n").getBytes());
+                        else
+                            o.write(("reply " + line + "\n#t\n").getBytes());
+                        o.flush();
+                    }
+                } catch (Exception e) {
+                }
+            }
+        };
+        engine.setDaemon(true);
+        engine.start();
+    }
+
+    @org.junit.After
+    public void stopEngine() {
+        engine.interrupt();
+    }
+
+    @org.junit.Test
+    public void testReplyEndsWithSentinel() throws Exception {
+        StringBuilder listener = new StringBuilder();
+        Future<String> reply = observer.sendRequest("(x)\n", "\n#t",
+            listener);
+
+        assertThat(reply.get(5, TimeUnit.SECONDS), is("reply (x)\n#t\n"));
+        assertThat(listener.toString(), is("reply (x)\n#t\n"));
+        assertThat(observer.isBusy(), is(false));
+        observer.setSendToBuffer(false);
+    }
+
+    @org.junit.Test
+    public void testErrorEndsReply() throws Exception {
+        Future<String> reply = observer.sendRequest("(error)\n",
+            "never sent", null);
+
+        String text = reply.get(5, TimeUnit.SECONDS);
+        assertThat(text.contains("==ERROR Stream"), is(true));
+        assertThat(text.contains("reply (error)"), is(true));
+        observer.setSendToBuffer(false);
+    }
+
+    @org.junit.Test
+    public void testRoundTripsDontWait() throws Exception {
+        // Polling observers needed at least 100ms per round trip
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            Future<String> reply = observer.sendRequest("(" + i + ")\n",
+                "#t", null);
+            assertThat(reply.get(5, TimeUnit.SECONDS).startsWith("reply ("
+                + i + ")"), is(true));
+            observer.setSendToBuffer(false);
+        }
+        assertThat(System.currentTimeMillis() - start < 5000, is(true));
+    }
+
+    @org.junit.Test
+    public void testPipelinedReplies() throws Exception {
+        Vector<CompletableFuture<String>> replies = observer.submitAll(
+            "(a)\n", "(b)\n", "(c)\n");
+
+        // The replies don't contain the end markers or their echo
+        assertThat(replies.get(2).get(5, TimeUnit.SECONDS),
+            is("reply (c)\n#t\n"));
+        assertThat(replies.get(0).get(), is("reply (a)\n#t\n"));
+        assertThat(replies.get(1).get(), is("reply (b)\n#t\n"));
+    }
+
+    @org.junit.Test
+    public void testPipelinedListener() throws Exception {
+        StringBuilder listener = new StringBuilder();
+        Future<String> reply = observer.submit("(a)\n", listener);
+
+        observer.submit("(b)\n", null);
+        observer.flush();
+        assertThat(reply.get(5, TimeUnit.SECONDS), is("reply (a)\n#t\n"));
+        assertThat(listener.toString(), is("reply (a)\n#t\n"));
+    }
+
+    @org.junit.Test
+    public void testPipelinedError() throws Exception {
+        stopEngine();
+        startEngine(true);
+        Vector<CompletableFuture<String>> replies = observer.submitAll(
+            "(error)\n", "(b)\n");
+
+        assertThat(replies.get(0).get(5, TimeUnit.SECONDS),
+            is("reply (error)\n#t\n"));
+        assertThat(replies.get(1).get(5, TimeUnit.SECONDS),
+            is("reply (b)\n#t\n"));
+    }
+
+    @org.junit.Test
+    public void testSeparateErrorStreamDoesntEndRequests() throws Exception {
+        Vector<CompletableFuture<String>> replies = observer.submitAll(
+            "(error)\n", "(b)\n", "(c)\n");
+
+        // The error text can't be attributed reliably (it may even arrive
+        // after the last end marker) but every request waits for its own
+        // end marker
+        String text = replies.get(0).get(5, TimeUnit.SECONDS)
+            + replies.get(1).get(5, TimeUnit.SECONDS)
+            + replies.get(2).get(5, TimeUnit.SECONDS);
+        assertThat(text.replaceAll("(?s)\\s*==ERROR Stream.*?\n=+\\s*", ""),
+            is("reply (b)\n#t\nreply (c)\n#t\n"));
+    }
+
+    @org.junit.Test
+    public void testPipelinedRoundTrips() throws Exception {
+        Vector<CompletableFuture<String>> replies = new Vector<CompletableFuture<String>>();
+
+        for (int i = 0; i < 1000; i++)
+            replies.add(observer.submit("(" + i + ")\n", null));
+        observer.flush();
+        for (int i = 0; i < 1000; i++)
+            assertThat(replies.get(i).get(5, TimeUnit.SECONDS), is("reply ("
+                + i + ")\n#t\n"));
+    }
+}
@@ -0,0 +1,118 @@
+package unit.fme.components.console;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import fme.components.console.EnginePool;
+
+public class EnginePoolTest {
+
+    private EnginePool pool;
+
+    @org.junit.Before
+    public void startPool() {
+        pool = new EnginePool(new String[] {
+            System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java", "-cp",
+            System.getProperty("java.class.path"),
+            FakeEngine.class.getName() }, 2, 2000);
+    }
+
+    @org.junit.After
+    public void stopPool() {
+        pool.shutdown();
+    }
+
+    @org.junit.Test
+    public void testWorkersHaveOwnState() throws Exception {
+        EnginePool.Worker w1 = pool.lease();
+        EnginePool.Worker w2 = pool.lease();
+
+        // The engines are initialised like the console engine and the
+        // first reply doesn't contain the startup output
+        assertThat(w1.request("ds\n"), is("\"" + File.separator + "\"\n"));
+
+        w1.request("(define x 1)\n");
+        w2.request("(define x 2)\n");
+        assertThat(w1.request("x\n"), is("1\n"));
+        assertThat(w2.request("x\n"), is("2\n"));
+
+        // Both workers are leased
+        assertThat(pool.lease(100, TimeUnit.MILLISECONDS) == null, is(true));
+        w1.release();
+        assertThat(pool.lease(100, TimeUnit.MILLISECONDS) == w1, is(true));
+        w1.release();
+        w2.release();
+    }
+
+    @org.junit.Test
+    public void testDoubleReleaseIsIgnored() throws Exception {
+        EnginePool.Worker w = pool.lease();
+
+        w.release();
+        w.release();
+        EnginePool.Worker w1 = pool.lease(100, TimeUnit.MILLISECONDS);
+        EnginePool.Worker w2 = pool.lease(100, TimeUnit.MILLISECONDS);
+        assertThat(w1 != null && w2 != null && w1 != w2, is(true));
+        assertThat(pool.lease(100, TimeUnit.MILLISECONDS) == null, is(true));
+        w1.release();
+        w2.release();
+    }
+
+    @org.junit.Test
+    public void testRestartAfterCrash() throws Exception {
+        EnginePool.Worker w = pool.lease();
+
+        w.request("(define x 1)\n");
+        try {
+            w.request("(exit)\n");
+            fail("The crash wasn't detected");
+        } catch (IOException e) {
+        }
+
+        // The new engine has lost the program state
+        assertThat(w.request("x\n"), is("#<unbound>\n"));
+        assertThat(w.getRestarts(), is(1));
+        w.release();
+    }
+
+    @org.junit.Test
+    public void testRestartAfterTimeout() throws Exception {
+        EnginePool.Worker w = pool.lease();
+
+        try {
+            w.request("(hang)\n");
+            fail("The timeout wasn't detected");
+        } catch (IOException e) {
+        }
+        assertThat(w.request("(display \"OK\")\n"), is("OK"));
+        assertThat(w.getRestarts(), is(1));
+        w.release();
+    }
+
+    @org.junit.Test
+    public void testErrorStaysWithRequest() throws Exception {
+        EnginePool.Worker w = pool.lease();
+
+        assertThat(w.request("(error)\n"), is("error\n"));
+        assertThat(w.request("(display \"OK\")\n"), is("OK"));
+        w.release();
+    }
+
+    @org.junit.Test
+    public void testWorkQueue() throws Exception {
+        Vector<CompletableFuture<String>> replies = new Vector<CompletableFuture<String>>();
+
+        for (int i = 0; i < 20; i++)
+            replies.add(pool.submit("(display \"" + i + "\")\n"));
+        for (int i = 0; i < 20; i++)
+            assertThat(replies.get(i).get(5, TimeUnit.SECONDS), is("" + i));
+    }
+}
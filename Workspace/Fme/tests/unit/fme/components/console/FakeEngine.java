@@ -0,0 +1,56 @@
+package unit.fme.components.console;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A tiny Scheme REPL which stands in for the FermaT engine. It prints a
+ * banner on startup and understands
+ * (define name value), (display "text"), bare names, (error) which writes to
+ * the error stream, (exit) which crashes the engine and (hang) which never
+ * replies. Every other form evaluates to #t.
+ */
+public class FakeEngine {
+
+    private static final Pattern FORM = Pattern
+        .compile("\\((\\w+)\\s*([^()]*)\\)|([\\w-]+)");
+
+    public static void main(String[] args) throws Exception {
+        HashMap<String, String> variables = new HashMap<String, String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            System.in));
+        String line, value;
+        String[] define;
+        Matcher m;
+
+        System.out.print("Fake engine\n");
+        System.out.flush();
+        while ((line = in.readLine()) != null) {
+            m = FORM.matcher(line);
+            while (m.find()) {
+                if (m.group(3) != null) {
+                    value = variables.get(m.group(3));
+                    System.out.print((value == null ? "#<unbound>" : value)
+                        + "\n");
+                } else if (m.group(1).equals("define")) {
+                    define = m.group(2).trim().split("\\s+", 2);
+                    variables.put(define[0], define[1]);
+                } else if (m.group(1).equals("display"))
+                    System.out.print(m.group(2).trim().replace("\"", ""));
+                else if (m.group(1).equals("error")) {
+                    System.err.print("error\n");
+                    System.err.flush();
+                } else if (m.group(1).equals("exit"))
+                    System.exit(1);
+                else if (m.group(1).equals("hang"))
+                    Thread.sleep(Long.MAX_VALUE);
+                else
+                    System.out.print("#t\n");
+            }
+            System.out.flush();
+        }
+    }
+}
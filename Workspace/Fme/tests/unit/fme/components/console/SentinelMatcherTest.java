@@ -0,0 +1,51 @@
+package unit.fme.components.console;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import fme.components.console.SentinelMatcher;
+
+public class SentinelMatcherTest {
+
+    @org.junit.Test
+    public void testSentinelSplitAcrossChunks() {
+        SentinelMatcher m = new SentinelMatcher("***EndOfOperation***");
+
+        assertThat(m.feed("some output\n***End"), is(false));
+        assertThat(m.feed("Of"), is(false));
+        assertThat(m.feed("Operation**"), is(false));
+        assertThat(m.feed("*\n"), is(true));
+        assertThat(m.isMatched(), is(true));
+
+        m.reset();
+        assertThat(m.isMatched(), is(false));
+        assertThat(m.feed("***EndOf***EndOfOperation***"), is(true));
+    }
+
+    @org.junit.Test
+    public void testOverlappingPrefix() {
+        SentinelMatcher m = new SentinelMatcher("aab");
+
+        assertThat(m.feed("a"), is(false));
+        assertThat(m.feed("a"), is(false));
+        assertThat(m.feed("a"), is(false));
+        assertThat(m.feed("b"), is(true));
+
+        m = new SentinelMatcher("abab");
+        char[] text = "xabaabab".toCharArray();
+        assertThat(m.feed(text, 0, 5), is(false));
+        assertThat(m.feed(text, 5, 3), is(true));
+    }
+
+    @org.junit.Test
+    public void testFindEveryOccurrence() {
+        SentinelMatcher m = new SentinelMatcher("***END-");
+        char[] text = "a***END-1***b***EN".toCharArray();
+        char[] rest = "D-2***".toCharArray();
+
+        assertThat(m.find(text, 0, text.length), is(8));
+        assertThat(m.find(text, 8, text.length - 8), is(-1));
+        assertThat(m.getMatchedLength(), is(5));
+        assertThat(m.find(rest, 0, rest.length), is(2));
+    }
+}
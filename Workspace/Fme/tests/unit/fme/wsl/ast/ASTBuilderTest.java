@@ -0,0 +1,136 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTBuilder;
+import fme.wsl.ast.ASTNode;
+
+import unit.fme.TableFixture;
+
+public class ASTBuilderTest {
+
+    /**
+     * Recorded reply of the FermaT engine to (@Print_WSL (@Program) "")
+     */
+    private static final String REPLY = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  While\n"
+        + ":  :  Less\n"
+        + ":  :  :  Variable x\n"
+        + ":  :  :  Number 10\n"
+        + ":  :  Statements\n"
+        + ":  :  :  Assignment\n"
+        + ":  :  :  :  Assign\n"
+        + ":  :  :  :  :  Var_Lvalue x\n"
+        + ":  :  :  :  :  Plus\n"
+        + ":  :  :  :  :  :  Variable x\n"
+        + ":  :  :  :  :  :  Number 1\n"
+        + ":  :  :  Comment \"count\n"
+        + "up\"\n"
+        + ":  Cond\n"
+        + ":  :  Guarded\n"
+        + ":  :  :  Equal\n"
+        + ":  :  :  :  Variable x\n"
+        + ":  :  :  :  Number 10\n"
+        + ":  :  :  Statements\n"
+        + ":  :  :  :  Print\n"
+        + ":  :  :  :  :  Expressions\n"
+        + ":  :  :  :  :  :  String \"done\"\n"
+        + ":  :  Guarded\n"
+        + ":  :  :  True\n"
+        + ":  :  :  Statements\n"
+        + ":  :  :  :  Skip\n"
+        + "#t\n";
+
+    /**
+     * A stand-in for the engine process which replays the recorded reply in
+     * small pieces
+     */
+    public static class Replay {
+        public static void main(String[] args) throws Exception {
+            Writer out = new OutputStreamWriter(System.out);
+            String reply = args.length > 0 ? REPLY.replace("\n", "\r\n")
+                : REPLY;
+            for (int i = 0; i < reply.length(); i += 7) {
+                out.write(reply, i, Math.min(7, reply.length() - i));
+                out.flush();
+                Thread.sleep(1);
+            }
+            out.write("> ");
+            out.flush();
+        }
+    }
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testAppendedTextEqualsParsedTree() {
+        ASTBuilder builder = new ASTBuilder();
+
+        for (int i = 0; i < REPLY.length(); i++)
+            builder.append(REPLY.charAt(i));
+
+        assertThat(AST.parseTree(REPLY), is(true));
+        assertThat(builder.finish().toStringSubTree(), is(AST.getAST()
+            .toStringSubTree()));
+    }
+
+    @org.junit.Test
+    public void testTreeFromReplayedProcess() throws Exception {
+        assertThat(AST.parseTree(REPLY), is(true));
+        String expected = AST.getAST().toStringSubTree();
+
+        assertThat(buildFromProcess(false).toStringSubTree(), is(expected));
+        assertThat(buildFromProcess(true).toStringSubTree(), is(expected));
+    }
+
+    @org.junit.Test
+    public void testLinesSplitAcrossChunks() {
+        ASTBuilder builder = new ASTBuilder();
+        builder.append("Statements\n:  Sk");
+        builder.append("ip\n:  Sk");
+        builder.append("ip\n#t\n:  Skip\n");
+
+        assertThat(builder.hasFailed(), is(false));
+        assertThat(builder.finish().getChildCount(), is(2));
+
+        builder = new ASTBuilder();
+        builder.append("Statements\n#t\n:  Skip\n");
+
+        assertThat(builder.finish() == null, is(true));
+    }
+
+    private ASTNode buildFromProcess(boolean crlf) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(System.getProperty("java.home")
+            + File.separator + "bin" + File.separator + "java", "-cp", System
+            .getProperty("java.class.path"), Replay.class.getName());
+        if (crlf)
+            pb.command().add("crlf");
+        Process p = pb.start();
+
+        ASTBuilder builder = new ASTBuilder();
+        Reader in = new InputStreamReader(p.getInputStream());
+        char[] buf = new char[64];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            builder.append(new String(buf, 0, n));
+        p.waitFor();
+
+        assertThat(builder.hasFailed(), is(false));
+        return builder.finish();
+    }
+}
@@ -0,0 +1,177 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Vector;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.PlainDocument;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTCache;
+import fme.wsl.lexer.WSLLexer;
+
+import unit.fme.TableFixture;
+
+public class ASTCacheTest {
+
+    private static final String REPLY = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  Comment \"two\n"
+        + "lines\"\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + "#t\n";
+
+    private File dir;
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Before
+    public void createCacheDir() throws Exception {
+        dir = File.createTempFile("astcache", "");
+        dir.delete();
+        dir.mkdirs();
+        ASTCache.setCacheDir(new File(dir, "cache").getPath());
+    }
+
+    @org.junit.After
+    public void removeCacheDir() {
+        ASTCache.setCacheDir(null);
+        delete(dir);
+    }
+
+    @org.junit.Test
+    public void testRestoredTreeEqualsParsedTree() throws Exception {
+        PlainDocument document = new PlainDocument();
+        File file = new File(dir, "test.wsl");
+
+        String source = load(document);
+        write(file, source);
+        String tree = AST.getAST().toStringSubTree();
+        Vector<String> nodeTokens = TableFixture.nodeTokens();
+        Vector<String> tokens = TableFixture.tokens(WSLLexer.getTokenStream(),
+            true);
+        ASTCache.store(file, source);
+
+        assertThat(AST.parseTree("Statements\n:  Skip\n#t\n"), is(true));
+        assertThat(ASTCache.load(file), is(true));
+        assertThat(AST.getAST().toStringSubTree(), is(tree));
+        assertThat(TableFixture.nodeTokens(), is(nodeTokens));
+
+        // The document isn't lexed again
+        final Vector<String> messages = new Vector<String>();
+        Handler handler = new Handler() {
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(WSLLexer.class.getCanonicalName());
+        WSLLexer.lex("SKIP");
+        logger.addHandler(handler);
+        try {
+            AST.identifyTokens(document);
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertThat(messages.size(), is(0));
+        assertThat(TableFixture.tokens(WSLLexer.getTokenStream(), true),
+            is(tokens));
+        assertThat(TableFixture.nodeTokens(), is(nodeTokens));
+    }
+
+    @org.junit.Test
+    public void testSetTextBeforeLinkingKeepsRestoredTokens()
+        throws Exception {
+        PlainDocument document = new PlainDocument();
+        File file = new File(dir, "test.wsl");
+
+        String source = load(document);
+        write(file, source);
+        Vector<String> nodeTokens = TableFixture.nodeTokens();
+        ASTCache.store(file, source);
+        assertThat(ASTCache.load(file), is(true));
+
+        // The editor replaces its text before the tree is linked and the
+        // lexer follows the edits of the document
+        document.addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                WSLLexer.update(e);
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                WSLLexer.update(e);
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        document.remove(0, document.getLength());
+        document.insertString(0, source, null);
+        AST.identifyTokens(document);
+        assertThat(TableFixture.nodeTokens(), is(nodeTokens));
+    }
+
+    @org.junit.Test
+    public void testChangedFileIsNotRestored() throws Exception {
+        PlainDocument document = new PlainDocument();
+        File file = new File(dir, "test.wsl");
+
+        String source = load(document);
+        write(file, source);
+        ASTCache.store(file, source);
+        assertThat(ASTCache.isCached(file), is(true));
+
+        write(file, source + "\n");
+        assertThat(ASTCache.isCached(file), is(false));
+        assertThat(ASTCache.load(file), is(false));
+        assertThat(ASTCache.load(new File(dir, "other.wsl")), is(false));
+
+        // The outdated snapshot is replaced
+        ASTCache.store(file, source + "\n");
+        assertThat(ASTCache.isCached(file), is(true));
+    }
+
+    private String load(PlainDocument document) throws Exception {
+        assertThat(AST.parseTree(REPLY), is(true));
+        StringBuilder code = new StringBuilder();
+        AST.prettyPrint(code);
+        document.insertString(0, code.toString(), null);
+        AST.identifyTokens(document);
+        return code.toString();
+    }
+
+    private void write(File file, String text) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (int i = 0; i < children.length; i++)
+                delete(children[i]);
+        f.delete();
+    }
+}
@@ -0,0 +1,116 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Vector;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTDiff;
+import fme.wsl.ast.ASTEdit;
+import fme.wsl.ast.ASTNode;
+
+import unit.fme.TableFixture;
+
+public class ASTDiffTest {
+
+    private static final String A = ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n";
+
+    private static final String B = ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n";
+
+    private static final String C = ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue y\n"
+        + ":  :  :  Plus\n"
+        + ":  :  :  :  Variable x\n"
+        + ":  :  :  :  Number 1\n";
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testEqualTrees() {
+        assertThat(diff(A + B + C, A + B + C).size(), is(0));
+    }
+
+    @org.junit.Test
+    public void testReplace() {
+        Vector<ASTEdit> edits = diff(A + B + C, A + B.replace("Variable x", "Variable z") + C);
+        assertThat(edits.size(), is(1));
+        assertThat(edits.get(0).getType(), is(ASTEdit.REPLACE));
+        assertThat(edits.get(0).getNewNode().getValue(), is("z"));
+    }
+
+    @org.junit.Test
+    public void testInsertAndDelete() {
+        Vector<ASTEdit> edits = diff(A + C, A + B + C);
+        assertThat(edits.size(), is(1));
+        assertThat(edits.get(0).getType(), is(ASTEdit.INSERT));
+        assertThat(edits.get(0).isSubtree(), is(true));
+        assertThat(edits.get(0).getNewNode().getSpecificType(), is("T_Print"));
+
+        edits = diff(A + B + C, A + C);
+        assertThat(edits.size(), is(1));
+        assertThat(edits.get(0).getType(), is(ASTEdit.DELETE));
+        assertThat(edits.get(0).isSubtree(), is(true));
+        assertThat(edits.get(0).getOldNode().getSpecificType(), is("T_Print"));
+    }
+
+    @org.junit.Test
+    public void testMove() {
+        Vector<ASTEdit> edits = diff(A + B + C, A + C + B);
+        assertThat(edits.size(), is(1));
+        assertThat(edits.get(0).getType(), is(ASTEdit.MOVE));
+    }
+
+    @org.junit.Test
+    public void testLargeTree() {
+        StringBuilder old = new StringBuilder();
+        StringBuilder changed = new StringBuilder();
+        for (int i = 0; i < 12500; i++) {
+            old.append(A.replace("0", "" + i));
+            changed.append(A.replace("0", "" + i));
+            if (i == 6000)
+                changed.append(B);
+        }
+
+        Vector<ASTEdit> edits = diff(old.toString(), changed.toString());
+        assertThat(edits.size(), is(1));
+        assertThat(edits.get(0).getType(), is(ASTEdit.INSERT));
+    }
+
+    @org.junit.Test
+    public void testSubtreesKeepTheirRows() {
+        assertThat(AST.parseTree("Statements\n" + A + B + C + "#t\n"),
+            is(true));
+        ASTNode root = AST.getAST();
+        ASTNode print = root.getChildAt(1);
+        assertThat(AST.parseTree("Statements\n" + A + B.replace(
+            "Variable x", "Variable z") + C + "#t\n"), is(true));
+
+        ASTDiff diff = new ASTDiff(print, AST.getAST().getChildAt(1));
+        assertThat(diff.getEdits().size(), is(1));
+        assertThat(diff.getNewNode(print.getChildAt(0)) == AST.getAST()
+            .getChildAt(1).getChildAt(0), is(true));
+
+        // The rows of the diffed subtrees still belong to their trees
+        assertThat(print.getRow(), is(5));
+        assertThat(AST.getNodeFromRow(6) == AST.getAST().getChildAt(1)
+            .getChildAt(0), is(true));
+        assertThat(AST.getAST().getChildAt(1).getChildAt(0).getRow(), is(6));
+    }
+
+    private Vector<ASTEdit> diff(String oldTree, String newTree) {
+        assertThat(AST.parseTree("Statements\n" + oldTree + "#t\n"), is(true));
+        ASTNode oldRoot = AST.getAST();
+        assertThat(AST.parseTree("Statements\n" + newTree + "#t\n"), is(true));
+        return new ASTDiff(oldRoot, AST.getAST()).getEdits();
+    }
+}
@@ -0,0 +1,66 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Vector;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTNode;
+
+import unit.fme.TableFixture;
+
+public class ASTIndexTest {
+
+    private static final String TREE = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Variable y\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + ":  :  :  Variable y\n"
+        + ":  Skip\n"
+        + "#t\n";
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testNodesOfType() {
+        assertThat(AST.parseTree(TREE), is(true));
+
+        assertThat(rows(AST.nodesOfType("T_Variable")), is("[4, 7, 8]"));
+        assertThat(rows(AST.nodesOfType("T_Skip")), is("[9]"));
+        assertThat(rows(AST.nodesOfType("T_Call")), is("[]"));
+        assertThat(rows(AST.nodesOfType("T_Unknown")), is("[]"));
+        // Several types are merged in pre-order
+        assertThat(rows(AST.nodesOfType("T_Variable", "T_Print",
+            "T_Var_Lvalue")), is("[3, 4, 5, 7, 8]"));
+    }
+
+    @org.junit.Test
+    public void testNodesWithValue() {
+        assertThat(AST.parseTree(TREE), is(true));
+
+        assertThat(rows(AST.nodesWithValue("x")), is("[3, 7]"));
+        assertThat(rows(AST.nodesWithValue("y")), is("[4, 8]"));
+        assertThat(rows(AST.nodesWithValue("z")), is("[]"));
+
+        // The index belongs to the current tree
+        assertThat(AST.parseTree(TREE.replace("Variable y", "Variable z")),
+            is(true));
+        assertThat(rows(AST.nodesWithValue("y")), is("[]"));
+        assertThat(rows(AST.nodesWithValue("z")), is("[4, 8]"));
+    }
+
+    private String rows(Vector<ASTNode> nodes) {
+        Vector<Integer> ret = new Vector<Integer>();
+        for (int i = 0; i < nodes.size(); i++)
+            ret.add(nodes.get(i).getRow());
+        return ret.toString();
+    }
+}
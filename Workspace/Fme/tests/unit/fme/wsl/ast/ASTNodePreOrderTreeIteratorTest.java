@@ -0,0 +1,103 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Vector;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTNode;
+import fme.wsl.ast.ASTNodePreOrderTreeIterator;
+import fme.wsl.ast.ASTVisitor;
+
+import unit.fme.TableFixture;
+
+public class ASTNodePreOrderTreeIteratorTest {
+
+    private static final String TREE = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + ":  :  :  Variable y\n"
+        + ":  Skip\n"
+        + "#t\n";
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testPreOrder() {
+        assertThat(AST.parseTree(TREE), is(true));
+        ASTNode root = AST.getAST();
+
+        ASTNodePreOrderTreeIterator it = root.getTreeIterator();
+        for (int row = 0; row <= root.getAllChildrenCount(); row++) {
+            assertThat(it.hasNext(), is(true));
+            assertThat(it.next() == AST.getNodeFromRow(row), is(true));
+        }
+        assertThat(it.hasNext(), is(false));
+
+        it.renew();
+        assertThat(it.getAllNodes().size(), is(10));
+        assertThat(it.next() == root, is(true));
+    }
+
+    @org.junit.Test
+    public void testSkipChildren() {
+        assertThat(AST.parseTree(TREE), is(true));
+        ASTNode root = AST.getAST();
+
+        Vector<String> types = new Vector<String>();
+        ASTNodePreOrderTreeIterator it = root.getTreeIterator();
+        while (it.hasNext()) {
+            ASTNode node = it.next();
+            types.add(node.getSpecificType());
+            // Skipping is possible after hasNext was asked
+            if (it.hasNext() && node.getSpecificType().equals("T_Assignment"))
+                it.skipChildren();
+            else if (node.getSpecificType().equals("T_Expressions"))
+                it.skipChildren();
+        }
+        assertThat(types.toString(), is("[T_Statements, T_Assignment, "
+            + "T_Print, T_Expressions, T_Skip]"));
+
+        // Two top nodes
+        types.clear();
+        it = new ASTNodePreOrderTreeIterator(root.getChildAt(0), root
+            .getChildAt(2));
+        while (it.hasNext())
+            types.add(it.next().getSpecificType());
+        assertThat(types.size(), is(5));
+        assertThat(types.lastElement(), is("T_Skip"));
+    }
+
+    @org.junit.Test
+    public void testVisitorWithTypeFilter() {
+        assertThat(AST.parseTree(TREE), is(true));
+        final Vector<String> values = new Vector<String>();
+
+        AST.getAST().accept(new ASTVisitor() {
+            public boolean visit(ASTNode node) {
+                values.add(node.getValue());
+                return true;
+            }
+        }, "T_Variable", "T_Var_Lvalue");
+        assertThat(values.toString(), is("[x, x, y]"));
+
+        values.clear();
+        AST.getAST().accept(new ASTVisitor() {
+            public boolean visit(ASTNode node) {
+                values.add(node.getSpecificType());
+                return !node.getSpecificType().equals("T_Print");
+            }
+        });
+        assertThat(values.size(), is(7));
+        assertThat(values.lastElement(), is("T_Skip"));
+    }
+}
@@ -0,0 +1,85 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTNode;
+
+import unit.fme.TableFixture;
+
+public class ASTNodeTest {
+
+    private static final String VERSION1 = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + "#t\n";
+
+    private static final String VERSION2 = VERSION1.replace(
+        ":  :  :  Variable x\n", ":  :  :  Variable y\n");
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testEqualSubtreesHaveEqualHashes() {
+        assertThat(AST.parseTree(VERSION1), is(true));
+        ASTNode tree1 = AST.getAST();
+        // The second assignment is the same as the first one
+        assertThat(tree1.getChildAt(0).getStructuralHash(), is(tree1
+            .getChildAt(2).getStructuralHash()));
+        assertThat(tree1.getChildAt(2).clone().getStructuralHash(), is(tree1
+            .getChildAt(0).getStructuralHash()));
+
+        assertThat(AST.parseTree(VERSION2), is(true));
+        ASTNode tree2 = AST.getAST();
+        assertThat(tree2.getChildAt(0).getStructuralHash(), is(tree1
+            .getChildAt(0).getStructuralHash()));
+        assertThat(tree2.getChildAt(1).getStructuralHash() == tree1
+            .getChildAt(1).getStructuralHash(), is(false));
+    }
+
+    @org.junit.Test
+    public void testHashFollowsChanges() {
+        assertThat(AST.parseTree(VERSION1), is(true));
+        ASTNode root = AST.getAST();
+        long hash = root.getStructuralHash();
+
+        root.getChildAt(1).getChildAt(0).getChildAt(0).setValue("y");
+        assertThat(root.getStructuralHash() == hash, is(false));
+
+        root.getChildAt(1).getChildAt(0).getChildAt(0).setValue("x");
+        assertThat(root.getStructuralHash(), is(hash));
+    }
+
+    @org.junit.Test
+    public void testChangesOfOtherTreesKeepRowsAndHashes() {
+        assertThat(AST.parseTree(VERSION1), is(true));
+        ASTNode tree1 = AST.getAST();
+        long hash = tree1.getStructuralHash();
+        assertThat(AST.parseTree(VERSION2), is(true));
+        ASTNode tree2 = AST.getAST();
+        ASTNode print = tree1.getChildAt(1);
+        assertThat(print.getRow(), is(5));
+
+        // A subtree of the first tree is added to the second tree
+        tree2.getChildAt(1).getChildAt(0).getChildAt(0).setValue("z");
+        tree2.addChild(tree1.getChildAt(2).clone());
+        assertThat(tree1.getStructuralHash(), is(hash));
+        assertThat(print.getRow(), is(5));
+        assertThat(tree2.getAllChildrenCount(), is(15));
+        assertThat(tree2.getChildAt(3).getRow(), is(12));
+        assertThat(tree2.getChildAt(3).getChildAt(0).getRow(), is(13));
+    }
+}
@@ -0,0 +1,223 @@
+package unit.fme.wsl.ast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import fme.components.tree.MappedTreeModel;
+import fme.wsl.ast.AST;
+import fme.wsl.ast.ASTCursor;
+import fme.wsl.ast.ASTNode;
+import fme.wsl.ast.MappedAST;
+
+import unit.fme.TableFixture;
+
+public class MappedASTTest {
+
+    private static final String TREE = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + ":  :  :  String \"\u00e4\"\n"
+        + ":  Skip\n"
+        + "#t\n";
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Test
+    public void testCursorEqualsTree() throws Exception {
+        MappedAST mapped = write();
+        ASTNode root = AST.getAST();
+
+        assertThat(mapped.size(), is(root.getAllChildrenCount() + 1));
+
+        // Pre-order travel
+        ASTCursor c = mapped.getCursor();
+        int row = 0;
+        do {
+            ASTNode node = AST.getNodeFromRow(row);
+            assertThat(c.getRow(), is(row));
+            assertThat(c.getIndex(), is(node.getParent() == null ? -1
+                : node.getParent().getIndex(node)));
+            assertThat(c.getSpecificType(), is(node.getSpecificType()));
+            assertThat(c.getValue(), is(node.getValue()));
+            assertThat(c.getChildCount(), is(node.getChildCount()));
+            assertThat(c.getAllChildrenCount(), is(node
+                .getAllChildrenCount()));
+            row++;
+        } while (c.next());
+        assertThat(row, is(mapped.size()));
+
+        // Navigation
+        c.moveTo(0);
+        assertThat(c.toParent(), is(false));
+        assertThat(c.toChild(1), is(true));
+        assertThat(c.getSpecificType(), is("T_Print"));
+        assertThat(c.getIndex(), is(1));
+        assertThat(c.toFirstChild(), is(true));
+        assertThat(c.toFirstChild(), is(true));
+        assertThat(c.getValue(), is("x"));
+        assertThat(c.toNextSibling(), is(true));
+        assertThat(c.getValue(), is(AST.getNodeFromRow(8).getValue()));
+        assertThat(c.toNextSibling(), is(false));
+        assertThat(c.toFirstChild(), is(false));
+        c.moveTo(0);
+        assertThat(c.getValue(), nullValue());
+    }
+
+    @org.junit.Test
+    public void testSkipChildren() throws Exception {
+        ASTCursor c = write().getCursor();
+        StringBuilder types = new StringBuilder();
+        do {
+            types.append(c.getSpecificType()).append(' ');
+            if (c.getSpecificType().equals("T_Assignment")
+                || c.getSpecificType().equals("T_Expressions"))
+                c.skipChildren();
+        } while (c.next());
+        assertThat(types.toString(), is("T_Statements T_Assignment T_Print "
+            + "T_Expressions T_Skip "));
+
+        // A cursor travels through the subtree of its node only
+        c = new ASTCursor(write(), 5);
+        int count = 1;
+        while (c.next())
+            count++;
+        assertThat(count, is(4));
+    }
+
+    @org.junit.Test
+    public void testTreeModel() throws Exception {
+        MappedTreeModel model = new MappedTreeModel(write());
+        Object root = model.getRoot();
+
+        assertThat(model.getChildCount(root), is(3));
+        Object print = model.getChild(root, 1);
+        assertThat(print.toString(), is("Print"));
+        assertThat(model.getIndexOfChild(root, print), is(1));
+        assertThat(model.getIndexOfChild(print, root), is(-1));
+        Object var = model.getChild(model.getChild(print, 0), 0);
+        assertThat(var.toString(), is("Variable (x)"));
+        assertThat(model.isLeaf(var), is(true));
+        assertThat(model.getChild(root, 1).equals(print), is(true));
+    }
+
+    @org.junit.Test
+    public void testChildrenOfWideNode() throws Exception {
+        StringBuilder tree = new StringBuilder("Statements\n");
+        for (int i = 0; i < 1000; i++)
+            tree.append(":  Print\n:  :  Expressions\n:  :  :  Variable x" + i
+                + "\n");
+        assertThat(AST.parseTree(tree + "#t\n"), is(true));
+        File file = File.createTempFile("mapped", ".ast");
+        file.deleteOnExit();
+        MappedAST.write(AST.getAST(), 0, 0, file);
+        MappedTreeModel model = new MappedTreeModel(MappedAST.open(file));
+
+        Object root = model.getRoot();
+        for (int i = 0; i < 1000; i++) {
+            Object print = model.getChild(root, i);
+            assertThat(model.getIndexOfChild(root, print), is(i));
+            assertThat(model.getChild(model.getChild(print, 0), 0)
+                .toString(), is("Variable (x" + i + ")"));
+        }
+        assertThat(model.getChild(root, 1000) == null, is(true));
+    }
+
+    @org.junit.Test
+    public void testTreeOfAnotherGrammarIsRejected() throws Exception {
+        assertThat(AST.parseTree(TREE), is(true));
+        File file = File.createTempFile("mapped", ".ast");
+        file.deleteOnExit();
+        MappedAST.write(AST.getAST(), 0, 0, file);
+
+        // Change the grammar fingerprint
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(32);
+        int b = out.read();
+        out.seek(32);
+        out.write(b ^ 1);
+        out.close();
+
+        try {
+            MappedAST.open(file);
+            fail("The tree of another grammar was opened");
+        } catch (IOException e) {
+        }
+    }
+
+    @org.junit.Test
+    public void testEveryVersionHasItsOwnFile() throws Exception {
+        File dir = File.createTempFile("mapped", "");
+        dir.delete();
+        File module = new File(dir, "module.wsl");
+        MappedAST.setTreeDir(new File(dir, "ast").getPath());
+        try {
+            assertThat(dir.mkdirs(), is(true));
+            write(module, "SKIP");
+            assertThat(MappedAST.isStored(module), is(false));
+            assertThat(MappedAST.getModule(module), nullValue());
+
+            assertThat(AST.parseTree(TREE), is(true));
+            MappedAST.store(module, AST.getAST());
+            assertThat(MappedAST.isStored(module), is(true));
+            MappedAST old = MappedAST.getModule(module);
+            assertThat(old.size(), is(10));
+            File[] files = new File(dir, "ast").listFiles();
+            assertThat(files.length, is(1));
+
+            // The mapped file of the old version isn't replaced
+            write(module, "SKIP;\nSKIP");
+            module.setLastModified(module.lastModified() + 2000);
+            assertThat(MappedAST.isStored(module), is(false));
+            assertThat(MappedAST.getModule(module), nullValue());
+            assertThat(AST.parseTree("Statements\n:  Skip\n:  Skip\n#t\n"),
+                is(true));
+            MappedAST.store(module, AST.getAST());
+            assertThat(MappedAST.getModule(module).size(), is(3));
+            assertThat(old.getCursor().getSpecificType(), is("T_Statements"));
+            assertThat(old.size(), is(10));
+            assertThat(new File(dir, "ast").list().length, is(1));
+            assertThat(files[0].exists(), is(false));
+
+            MappedAST.remove(module);
+            assertThat(MappedAST.isStored(module), is(false));
+            assertThat(new File(dir, "ast").list().length, is(0));
+        } finally {
+            MappedAST.setTreeDir(null);
+            File[] files = new File(dir, "ast").listFiles();
+            for (int i = 0; files != null && i < files.length; i++)
+                files[i].delete();
+            new File(dir, "ast").delete();
+            module.delete();
+            dir.delete();
+        }
+    }
+
+    private void write(File file, String text) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private MappedAST write() throws Exception {
+        assertThat(AST.parseTree(TREE), is(true));
+        File file = File.createTempFile("mapped", ".ast");
+        file.deleteOnExit();
+        MappedAST.write(AST.getAST(), 0, 0, file);
+        return MappedAST.open(file);
+    }
+}
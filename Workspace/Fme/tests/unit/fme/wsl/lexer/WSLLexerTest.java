@@ -0,0 +1,105 @@
+package unit.fme.wsl.lexer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.Vector;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.PlainDocument;
+
+import fme.wsl.ast.AST;
+import fme.wsl.lexer.WSLLexer;
+
+import unit.fme.TableFixture;
+
+public class WSLLexerTest {
+
+    private static final String REPLY = "Statements\n"
+        + ":  Assignment\n"
+        + ":  :  Assign\n"
+        + ":  :  :  Var_Lvalue x\n"
+        + ":  :  :  Number 0\n"
+        + ":  Comment \"two\n"
+        + "lines\"\n"
+        + ":  Print\n"
+        + ":  :  Expressions\n"
+        + ":  :  :  Variable x\n"
+        + "#t\n";
+
+    private static final String[] SNIPPETS = { "y := 1;\n", " ", "\n", ";",
+        "\"", "C:\" a comment \";\n", "PRINT(y)", "IF x = 0 THEN SKIP FI;\n",
+        "12", "a", ":=" };
+
+    private PlainDocument document;
+
+    @org.junit.BeforeClass
+    public static void loadTables() {
+        TableFixture.load();
+    }
+
+    @org.junit.Before
+    public void loadDocument() throws Exception {
+        assertThat(AST.parseTree(REPLY), is(true));
+        StringBuilder code = new StringBuilder();
+        AST.prettyPrint(code);
+        document = new PlainDocument();
+        document.insertString(0, code.toString(), null);
+        AST.identifyTokens(document);
+
+        // The lexer follows the edits like in the editor
+        document.addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                WSLLexer.update(e);
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                WSLLexer.update(e);
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    @org.junit.Test
+    public void testUpdateEqualsFullRelex() throws Exception {
+        Random random = new Random(42);
+        Vector<String> tokens;
+        int offset;
+
+        for (int i = 0; i < 500; i++) {
+            offset = random.nextInt(document.getLength() + 1);
+            if (random.nextInt(3) == 0 && offset < document.getLength())
+                document.remove(offset, 1 + random.nextInt(Math.min(8,
+                    document.getLength() - offset)));
+            else
+                document.insertString(offset, SNIPPETS[random
+                    .nextInt(SNIPPETS.length)], null);
+
+            tokens = TableFixture.tokens(WSLLexer.getTokenStream(), false);
+            WSLLexer.parseWSL(document);
+            assertThat("Edit " + i, tokens, is(TableFixture.tokens(WSLLexer
+                .getTokenStream(), false)));
+        }
+    }
+
+    @org.junit.Test
+    public void testNodeTokensMoveLazily() throws Exception {
+        Vector<String> expected = null;
+
+        // Reading the node tokens after every edit applies every move at
+        // once. More edits than the recorded moves are made.
+        for (int i = 0; i < 600; i++) {
+            document.insertString(i % 7 * 3, "SKIP;\n", null);
+            expected = TableFixture.nodeTokens();
+        }
+
+        loadDocument();
+        for (int i = 0; i < 600; i++)
+            document.insertString(i % 7 * 3, "SKIP;\n", null);
+        assertThat(TableFixture.nodeTokens(), is(expected));
+    }
+}